@@ -0,0 +1,47 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.glaydson.devicesapi.DevicesapiApplication;
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceBulkService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.stream.IntStream;
+
+/**
+ * Starts the application on its default in-memory H2 database, without the web server,
+ * and seeds it for the service benchmarks.
+ */
+final class BenchmarkApplication {
+
+    // Brands are "Brand0" to "Brand19" and the states cycle, so every brand has devices in every state
+    static final int BRANDS = 20;
+    // The seed script inserts ids 1 to 10, the seeded devices come after them
+    static final long FIRST_SEEDED_ID = 11;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... args) {
+        String[] defaults = {
+                "--spring.main.web-application-type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"
+        };
+        String[] allArgs = new String[defaults.length + args.length];
+        System.arraycopy(defaults, 0, allArgs, 0, defaults.length);
+        System.arraycopy(args, 0, allArgs, defaults.length, args.length);
+        return new SpringApplicationBuilder(DevicesapiApplication.class).run(allArgs);
+    }
+
+    static void seed(ConfigurableApplicationContext context, int devices) {
+        context.getBean(DeviceBulkService.class).createDevices(IntStream.range(0, devices)
+                .mapToObj(BenchmarkApplication::device)
+                .toList());
+    }
+
+    static DeviceRequest device(int i) {
+        return new DeviceRequest("Device" + i, "Brand" + (i % BRANDS), Device.State.values()[i % Device.State.values().length]);
+    }
+}
@@ -0,0 +1,74 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files, typically the previous release against the current build,
+ * and exits with status 1 when a benchmark got slower than the allowed percentage.
+ * <pre>
+ * ./mvnw -f benchmarks/pom.xml exec:java@compare \
+ *     -Dexec.args="baseline.json target/jmh-result.json [maxRegressionPercent]"
+ * </pre>
+ */
+public final class BenchmarkComparison {
+
+    private static final double DEFAULT_MAX_REGRESSION_PERCENT = 10;
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [maxRegressionPercent]");
+            System.exit(2);
+        }
+        double maxRegression = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_MAX_REGRESSION_PERCENT;
+        Map<String, JsonNode> baseline = read(Path.of(args[0]));
+        Map<String, JsonNode> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            double baselineScore = before.path("primaryMetric").path("score").asDouble();
+            double currentScore = entry.getValue().path("primaryMetric").path("score").asDouble();
+            // Positive means slower, whatever the mode: lower is better for times, higher for throughput
+            double change = (currentScore - baselineScore) / baselineScore * 100;
+            if (entry.getValue().path("mode").asText().equals("thrpt")) {
+                change = -change;
+            }
+            boolean regressed = change > maxRegression;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%%s%n", entry.getKey(), baselineScore, currentScore, change,
+                    regressed ? "  REGRESSION" : "");
+        }
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.1f%%%n", regressions, maxRegression);
+            System.exit(1);
+        }
+    }
+
+    // Keyed by benchmark name and parameters, so each parameter combination is compared with itself
+    private static Map<String, JsonNode> read(Path file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                    .replace("com.glaydson.devicesapi.benchmark.", ""));
+            result.path("params").fields().forEachRemaining(param ->
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,48 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeviceService.getDeviceById on random ids, with the Caffeine cache of the application
+ * and with caching disabled, which measures the findById path through JPA and H2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceLookupBenchmark {
+
+    @Param({"caffeine", "none"})
+    public String cache;
+
+    @Param("10000")
+    public int devices;
+
+    private ConfigurableApplicationContext context;
+    private DeviceService deviceService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("--spring.cache.type=" + cache);
+        BenchmarkApplication.seed(context, devices);
+        deviceService = context.getBean(DeviceService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Device getDeviceById() {
+        return deviceService.getDeviceById(BenchmarkApplication.FIRST_SEEDED_ID + ThreadLocalRandom.current().nextInt(devices));
+    }
+}
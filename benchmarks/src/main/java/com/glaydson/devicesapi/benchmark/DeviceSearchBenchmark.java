@@ -0,0 +1,59 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeviceService.getDevicesByCriteria for every shape of the criteria: brand and state,
+ * brand only, state only (one run per state) and no criteria at all. "ANY" leaves the field null.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceSearchBenchmark {
+
+    private static final String ANY = "ANY";
+
+    @Param({"Brand0", ANY})
+    public String brand;
+
+    @Param({"AVAILABLE", "IN_USE", "INACTIVE", ANY})
+    public String state;
+
+    @Param("10000")
+    public int devices;
+
+    private ConfigurableApplicationContext context;
+    private DeviceService deviceService;
+    private DeviceSearchCriteria criteria;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        BenchmarkApplication.seed(context, devices);
+        deviceService = context.getBean(DeviceService.class);
+        criteria = new DeviceSearchCriteria(ANY.equals(brand) ? null : brand,
+                ANY.equals(state) ? null : Device.State.valueOf(state));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<DeviceView> getDevicesByCriteria() {
+        return deviceService.getDevicesByCriteria(criteria, DeviceField.all());
+    }
+}
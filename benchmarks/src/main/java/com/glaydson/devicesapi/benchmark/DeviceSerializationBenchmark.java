@@ -0,0 +1,82 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.glaydson.devicesapi.model.Device;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Jackson serialization of Device lists the way the controller writes them: a whole list as
+ * one JSON array (search, pages) and one document per line (the NDJSON stream).
+ * The output is counted and dropped, so only the encoding is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DeviceSerializationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    // Configured like the ObjectMapper Spring Boot gives the controller
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private List<Device> devices;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime now = LocalDateTime.now();
+        devices = IntStream.range(0, size)
+                .mapToObj(i -> {
+                    Device device = new Device((long) i, "Device" + i, "Brand" + (i % BenchmarkApplication.BRANDS),
+                            Device.State.values()[i % Device.State.values().length], now);
+                    device.setVersion(0L);
+                    return device;
+                })
+                .toList();
+    }
+
+    @Benchmark
+    public long writeJsonArray() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        objectMapper.writeValue(out, devices);
+        return out.count;
+    }
+
+    @Benchmark
+    public long writeNdjson() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            for (Device device : devices) {
+                generator.writeObject(device);
+                generator.writeRaw('\n');
+            }
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
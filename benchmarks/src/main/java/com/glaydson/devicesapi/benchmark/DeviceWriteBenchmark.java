@@ -0,0 +1,62 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * DeviceService.createDevice and updateDevice, each one transaction against H2.
+ * The table grows while createDevice runs, which does not change the cost of an insert here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceWriteBenchmark {
+
+    @Param("10000")
+    public int devices;
+
+    private ConfigurableApplicationContext context;
+    private DeviceService deviceService;
+    // Seeded devices that are not IN_USE, so renaming them never fails the IN_USE rule
+    private long[] updatableIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        BenchmarkApplication.seed(context, devices);
+        deviceService = context.getBean(DeviceService.class);
+        updatableIds = IntStream.range(0, devices)
+                .filter(i -> BenchmarkApplication.device(i).getState() != Device.State.IN_USE)
+                .mapToLong(i -> BenchmarkApplication.FIRST_SEEDED_ID + i)
+                .toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Device createDevice() {
+        return deviceService.createDevice(BenchmarkApplication.device(next++));
+    }
+
+    // Walks the updatable devices and renames them, each call changes the row so the UPDATE is issued
+    @Benchmark
+    public Device updateDevice() {
+        long id = updatableIds[next++ % updatableIds.length];
+        DeviceRequest request = new DeviceRequest("Device" + id + "-" + next, "Brand" + (id % BenchmarkApplication.BRANDS),
+                Device.State.AVAILABLE);
+        return deviceService.updateDevice(id, request, null);
+    }
+}
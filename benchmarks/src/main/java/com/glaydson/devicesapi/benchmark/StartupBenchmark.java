@@ -0,0 +1,192 @@
+package com.glaydson.devicesapi.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the packaged application several times in each mode and measures the time until it
+ * answers {@code /actuator/health}, the latency of the first {@code GET /api/v1/devices/1} and
+ * the resident memory after it. JMH does not fit here, each sample is a new process.
+ * <ul>
+ *     <li>{@code jvm}: the jar built by {@code ./mvnw package}</li>
+ *     <li>{@code cds}: the AOT-processed jar with its CDS archive, from {@code ./mvnw -Pcds package}</li>
+ *     <li>{@code native}: the GraalVM executable, from {@code ./mvnw -Pnative native:compile}</li>
+ * </ul>
+ * Modes that were not built are skipped. Every run is written to {@code benchmarks/target/startup/results.csv}.
+ * <pre>
+ * ./mvnw -f benchmarks/pom.xml compile exec:java@startup -Dexec.args="[runs] [modes...]"
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private static final int DEFAULT_RUNS = 5;
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(5);
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private StartupBenchmark() {
+    }
+
+    // How a mode is started, and the file that tells whether it was built
+    private record Launch(Path directory, Path artifact, List<String> command) {
+    }
+
+    private record Run(String mode, int run, double readyMillis, double firstRequestMillis, long rssKilobytes) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+        List<String> modes = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : List.of("jvm", "cds", "native");
+        Path target = Path.of(System.getProperty("startup.app-dir", "..")).resolve("target").toAbsolutePath().normalize();
+        String jar = System.getProperty("startup.jar", "devicesapi-0.0.1-SNAPSHOT.jar");
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        Map<String, Launch> launches = Map.of(
+                "jvm", new Launch(target, target.resolve(jar), List.of(java, "-jar", jar)),
+                "cds", new Launch(target.resolve("cds"), target.resolve("cds/application.jsa"),
+                        List.of(java, "-XX:SharedArchiveFile=application.jsa", "-Dspring.aot.enabled=true", "-jar", jar)),
+                "native", new Launch(target, target.resolve("devicesapi"), List.of(target.resolve("devicesapi").toString())));
+
+        List<Run> results = new ArrayList<>();
+        for (String mode : modes) {
+            Launch launch = launches.get(mode);
+            if (launch == null) {
+                throw new IllegalArgumentException("Unknown mode " + mode + ", expected one of " + launches.keySet());
+            }
+            if (!Files.exists(launch.artifact())) {
+                System.out.printf("Skipping %s, %s was not built%n", mode, launch.artifact());
+                continue;
+            }
+            for (int run = 1; run <= runs; run++) {
+                results.add(measure(mode, run, launch));
+            }
+        }
+        print(results, modes);
+        write(results, Path.of(System.getProperty("startup.results", "target/startup/results.csv")));
+    }
+
+    private static Run measure(String mode, int run, Launch launch) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>(launch.command());
+        command.add("--server.port=" + port);
+        command.add("--spring.docker.compose.enabled=false");
+        String base = "http://localhost:" + port;
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(launch.directory().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            awaitHealthy(process, base + "/actuator/health", start);
+            double ready = millisSince(start);
+
+            long requestStart = System.nanoTime();
+            HttpResponse<String> response = CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/api/v1/devices/1")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            double firstRequest = millisSince(requestStart);
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(mode + ": first request answered " + response.statusCode());
+            }
+            return new Run(mode, run, ready, firstRequest, rss(process.pid()));
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static void awaitHealthy(Process process, String url, long start) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).build();
+        while (System.nanoTime() - start < STARTUP_TIMEOUT.toNanos()) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The application exited with status " + process.exitValue());
+            }
+            try {
+                if (CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        throw new IllegalStateException("The application was not healthy after " + STARTUP_TIMEOUT);
+    }
+
+    // Resident set size from /proc, -1 where there is none
+    private static long rss(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return -1;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    // Medians, the first runs of a mode also pay for a cold page cache
+    private static void print(List<Run> results, List<String> modes) {
+        System.out.printf("%-8s %6s %12s %18s %10s%n", "mode", "runs", "ready (ms)", "first request (ms)", "rss (MB)");
+        for (String mode : modes) {
+            List<Run> runs = results.stream().filter(run -> run.mode().equals(mode)).toList();
+            if (runs.isEmpty()) {
+                continue;
+            }
+            System.out.printf("%-8s %6d %12.0f %18.1f %10.0f%n", mode, runs.size(),
+                    median(runs.stream().mapToDouble(Run::readyMillis).toArray()),
+                    median(runs.stream().mapToDouble(Run::firstRequestMillis).toArray()),
+                    median(runs.stream().mapToDouble(run -> run.rssKilobytes() / 1024.0).toArray()));
+        }
+    }
+
+    private static double median(double[] values) {
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private static void write(List<Run> results, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("mode,run,ready_ms,first_request_ms,rss_kb");
+            for (Run run : results) {
+                out.printf("%s,%d,%.1f,%.2f,%d%n", run.mode(), run.run(), run.readyMillis(), run.firstRequestMillis(),
+                        run.rssKilobytes());
+            }
+        }
+        System.out.println("Results written to " + file.toAbsolutePath());
+    }
+}
@@ -0,0 +1,116 @@
+package com.glaydson.devicesapi.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Every media type and content coding the API negotiates, on a list of devices as the list and
+ * search endpoints return it: encode to bytes, and decode them back as a client would.
+ * The payload size of each combination is reported as the {@code bytes} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class WireFormatBenchmark {
+
+    private static final TypeReference<List<DeviceView>> DEVICE_LIST = new TypeReference<>() {
+    };
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    @Param({"identity", "gzip", "zstd"})
+    public String coding;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private List<DeviceView> devices;
+    private byte[] payload;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        // Configured like the converters Spring Boot registers for each media type
+        objectMapper = switch (format) {
+            case "json" -> Jackson2ObjectMapperBuilder.json().build();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        LocalDateTime now = LocalDateTime.now();
+        devices = IntStream.range(0, size)
+                .mapToObj(i -> new DeviceView((long) i, "Device" + i, "Brand" + (i % BenchmarkApplication.BRANDS),
+                        Device.State.values()[i % Device.State.values().length], now, 0L))
+                .toList();
+        payload = write();
+    }
+
+    @Benchmark
+    public byte[] encode(Payload counter) throws IOException {
+        byte[] bytes = write();
+        counter.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public List<DeviceView> decode() throws IOException {
+        try (InputStream in = decoding(new ByteArrayInputStream(payload))) {
+            return objectMapper.readValue(in, DEVICE_LIST);
+        }
+    }
+
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = encoding(bytes)) {
+            objectMapper.writeValue(out, devices);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The levels ResponseCompressionFilter uses by default
+    private OutputStream encoding(OutputStream out) throws IOException {
+        return switch (coding) {
+            case "identity" -> out;
+            case "gzip" -> new GZIPOutputStream(out, 8192);
+            case "zstd" -> new ZstdOutputStream(out, 3);
+            default -> throw new IllegalArgumentException("Unknown coding " + coding);
+        };
+    }
+
+    private InputStream decoding(InputStream in) throws IOException {
+        return switch (coding) {
+            case "identity" -> in;
+            case "gzip" -> new GZIPInputStream(in, 8192);
+            case "zstd" -> new ZstdInputStream(in);
+            default -> throw new IllegalArgumentException("Unknown coding " + coding);
+        };
+    }
+}
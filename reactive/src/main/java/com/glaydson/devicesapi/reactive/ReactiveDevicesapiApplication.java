@@ -0,0 +1,18 @@
+package com.glaydson.devicesapi.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@Slf4j
+@SpringBootApplication
+@ConfigurationPropertiesScan
+public class ReactiveDevicesapiApplication {
+
+    public static void main(String[] args) {
+        log.info("Starting Reactive Devices API");
+        SpringApplication.run(ReactiveDevicesapiApplication.class, args);
+    }
+
+}
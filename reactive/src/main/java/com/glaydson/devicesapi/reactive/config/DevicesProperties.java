@@ -0,0 +1,22 @@
+package com.glaydson.devicesapi.reactive.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Tunables for the reactive devices API, bound from the {@code devices.*} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "devices")
+public class DevicesProperties {
+
+    private final Pagination pagination = new Pagination();
+
+    @Data
+    public static class Pagination {
+        // Page size used when the client does not send a limit
+        private int defaultLimit = 50;
+        // Upper bound for the limit a client can request
+        private int maxLimit = 500;
+    }
+}
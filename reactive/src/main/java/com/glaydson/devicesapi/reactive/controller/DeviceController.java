@@ -0,0 +1,85 @@
+package com.glaydson.devicesapi.reactive.controller;
+
+import com.glaydson.devicesapi.reactive.dto.DevicePage;
+import com.glaydson.devicesapi.reactive.dto.DeviceRequest;
+import com.glaydson.devicesapi.reactive.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.reactive.model.Device;
+import com.glaydson.devicesapi.reactive.service.DeviceService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Same /api/v1/devices contract as the servlet DeviceController, without the bulk,
+// batch search and conditional request endpoints
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/devices")
+public class DeviceController {
+
+    private final DeviceService deviceService;
+
+    public DeviceController(DeviceService deviceService) {
+        this.deviceService = deviceService;
+    }
+
+    @PostMapping
+    public Mono<Device> createDevice(@RequestBody DeviceRequest deviceRequest) {
+        log.info("Creating device: {}", deviceRequest);
+        return deviceService.createDevice(deviceRequest);
+    }
+
+    @PutMapping("/{id}")
+    public Mono<Device> updateDevice(@PathVariable Long id, @RequestBody DeviceRequest deviceRequest) {
+        log.info("Updating device with id: {}", id);
+        return deviceService.updateDevice(id, deviceRequest);
+    }
+
+    @GetMapping("/{id}")
+    public Mono<Device> getDeviceById(@PathVariable Long id) {
+        log.info("Getting device with id: {}", id);
+        return deviceService.getDeviceById(id);
+    }
+
+    @GetMapping("/search")
+    public Flux<Device> getDevicesByCriteria(@ModelAttribute DeviceSearchCriteria criteria) {
+        log.info("Getting devices by criteria: {}", criteria);
+        return deviceService.getDevicesByCriteria(criteria);
+    }
+
+    @PostMapping("/search")
+    public Flux<Device> searchDevices(@RequestBody DeviceSearchCriteria criteria) {
+        log.info("Searching devices by criteria: {}", criteria);
+        return deviceService.getDevicesByCriteria(criteria);
+    }
+
+    @GetMapping
+    public Mono<DevicePage> getDevicesPage(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer limit) {
+        log.info("Getting devices page, cursor: {}, limit: {}", cursor, limit);
+        return deviceService.getDevicesPage(cursor, limit);
+    }
+
+    // WebFlux writes one line per device as it is emitted and flushes each one
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Device> streamAllDevicesAsNdjson() {
+        log.info("Streaming all devices as NDJSON");
+        return deviceService.streamAllDevices();
+    }
+
+    // Encoded as a single JSON array, still written incrementally as the devices arrive
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<Device> streamAllDevicesAsJson() {
+        log.info("Streaming all devices as a JSON array");
+        return deviceService.streamAllDevices();
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteDevice(@PathVariable Long id) {
+        log.info("Deleting device with id: {}", id);
+        return deviceService.deleteDevice(id);
+    }
+}
@@ -0,0 +1,15 @@
+package com.glaydson.devicesapi.reactive.dto;
+
+import com.glaydson.devicesapi.reactive.model.Device;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+// A page of devices ordered by id; nextCursor is null on the last page
+public class DevicePage {
+    private List<Device> devices;
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.glaydson.devicesapi.reactive.dto;
+
+import com.glaydson.devicesapi.reactive.model.Device;
+import lombok.Data;
+
+@Data
+public class DeviceRequest {
+    private String name;
+    private String brand;
+    private Device.State state;
+
+    public DeviceRequest(String name, String brand, Device.State state) {
+        this.name = name;
+        this.brand = brand;
+        this.state = state;
+    }
+}
@@ -0,0 +1,14 @@
+package com.glaydson.devicesapi.reactive.dto;
+
+import com.glaydson.devicesapi.reactive.model.Device;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+// At this time, we are searching only by brand and state
+public class DeviceSearchCriteria {
+    private String brand;
+    private Device.State state;
+
+}
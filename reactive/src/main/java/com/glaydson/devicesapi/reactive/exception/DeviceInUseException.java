@@ -0,0 +1,7 @@
+package com.glaydson.devicesapi.reactive.exception;
+
+public class DeviceInUseException extends RuntimeException {
+    public DeviceInUseException(String message) {
+        super(message);
+    }
+}
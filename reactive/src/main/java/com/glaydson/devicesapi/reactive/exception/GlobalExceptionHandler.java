@@ -0,0 +1,51 @@
+package com.glaydson.devicesapi.reactive.exception;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+
+// Same mapping as the GlobalExceptionHandler of the servlet application; WebFlux applies it
+// to errors signalled by the Mono/Flux returned from the controller as well
+@RestControllerAdvice
+public class GlobalExceptionHandler {
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<String> resourceNotFoundException(ResourceNotFoundException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(DeviceInUseException.class)
+    public ResponseEntity<String> deviceInUseException(DeviceInUseException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(MissingFieldsException.class)
+    public ResponseEntity<String> missingFieldsException(MissingFieldsException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> invalidCursorException(InvalidCursorException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    // Another request changed the device between our read and our write
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> optimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        return new ResponseEntity<>("Device was modified concurrently, reload it and retry", HttpStatus.CONFLICT);
+    }
+
+    // Routing and decoding errors raised by WebFlux itself (unknown path, unreadable body, ...)
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<String> responseStatusException(ResponseStatusException ex) {
+        return new ResponseEntity<>(ex.getReason(), ex.getStatusCode());
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<String> globalExceptionHandler(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+}
@@ -0,0 +1,7 @@
+package com.glaydson.devicesapi.reactive.exception;
+
+public class MissingFieldsException extends RuntimeException {
+    public MissingFieldsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.glaydson.devicesapi.reactive.exception;
+
+public class ResourceNotFoundException extends RuntimeException {
+    public ResourceNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,59 @@
+package com.glaydson.devicesapi.reactive.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+// Maps the same devices table as the JPA entity of the servlet application
+@Table("devices")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class Device {
+    // Left null on insert, the column default takes the next value of devices_id_seq
+    @Id
+    private Long id;
+
+    @Column("name")
+    private String name;
+
+    @Column("brand")
+    private String brand;
+
+    @Column("state")
+    private State state;
+
+    @Column("creation_time")
+    private LocalDateTime creationTime;
+
+    @Version
+    @Column("version")
+    private Long version;
+
+    public Device(Long id, String name, String brand, State state, LocalDateTime creationTime) {
+        this.id = id;
+        this.name = name;
+        this.brand = brand;
+        this.state = state;
+        this.creationTime = creationTime;
+    }
+
+    public Device(String name, String brand, State state) {
+        this.name = name;
+        this.brand = brand;
+        this.state = state;
+        this.creationTime = LocalDateTime.now();
+    }
+
+    public enum State {
+        AVAILABLE,
+        IN_USE,
+        INACTIVE
+    }
+}
@@ -0,0 +1,14 @@
+package com.glaydson.devicesapi.reactive.repository;
+
+import com.glaydson.devicesapi.reactive.model.Device;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface DeviceRepository extends R2dbcRepository<Device, Long> {
+
+    // Keyset pagination: seeks on the primary key index instead of scanning with OFFSET
+    Flux<Device> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+}
@@ -0,0 +1,35 @@
+package com.glaydson.devicesapi.reactive.service;
+
+import com.glaydson.devicesapi.reactive.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor, same format as the servlet application so a client can switch
+ * between the two: the id of the last device of a page, fetched next with {@code id > cursor}.
+ */
+final class DeviceCursor {
+
+    private static final String PREFIX = "id:";
+
+    private DeviceCursor() {
+    }
+
+    static String encode(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new InvalidCursorException("Invalid cursor :: " + cursor);
+            }
+            return Long.parseLong(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor :: " + cursor);
+        }
+    }
+}
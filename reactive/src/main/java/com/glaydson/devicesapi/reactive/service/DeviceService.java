@@ -0,0 +1,144 @@
+package com.glaydson.devicesapi.reactive.service;
+
+import com.glaydson.devicesapi.reactive.config.DevicesProperties;
+import com.glaydson.devicesapi.reactive.dto.DevicePage;
+import com.glaydson.devicesapi.reactive.dto.DeviceRequest;
+import com.glaydson.devicesapi.reactive.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.reactive.exception.DeviceInUseException;
+import com.glaydson.devicesapi.reactive.exception.MissingFieldsException;
+import com.glaydson.devicesapi.reactive.exception.ResourceNotFoundException;
+import com.glaydson.devicesapi.reactive.model.Device;
+import com.glaydson.devicesapi.reactive.repository.DeviceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of the servlet DeviceService: same rules and error messages,
+ * but every operation returns a Mono or Flux backed by R2DBC, so no thread waits on the database.
+ */
+@Slf4j
+@Service
+public class DeviceService {
+
+    public static final String DEVICE_NOT_FOUND_FOR_THIS_ID = "Device not found for this id :: ";
+    private final DeviceRepository deviceRepository;
+    private final R2dbcEntityTemplate template;
+    private final DevicesProperties properties;
+
+    public DeviceService(DeviceRepository deviceRepository, R2dbcEntityTemplate template, DevicesProperties properties) {
+        this.deviceRepository = deviceRepository;
+        this.template = template;
+        this.properties = properties;
+    }
+
+    public Mono<Device> createDevice(DeviceRequest deviceRequest) {
+        return Mono.fromRunnable(() -> requireMandatoryFields(deviceRequest))
+                .then(Mono.defer(() -> deviceRepository.save(
+                        new Device(deviceRequest.getName(), deviceRequest.getBrand(), deviceRequest.getState()))));
+    }
+
+    public Mono<Device> getDeviceById(Long id) {
+        return deviceRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException(DEVICE_NOT_FOUND_FOR_THIS_ID + id)));
+    }
+
+    public Mono<DevicePage> getDevicesPage(String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            int pageSize = resolvePageSize(limit);
+            long afterId = cursor == null ? 0L : DeviceCursor.decode(cursor);
+            // Fetch one extra row to know if there is a next page without a count query
+            return deviceRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize + 1))
+                    .collectList()
+                    .map(devices -> {
+                        if (devices.size() <= pageSize) {
+                            return new DevicePage(devices, null);
+                        }
+                        List<Device> page = devices.subList(0, pageSize);
+                        return new DevicePage(page, DeviceCursor.encode(page.getLast().getId()));
+                    });
+        });
+    }
+
+    // The rows are emitted as the driver reads them and R2DBC propagates the subscriber's
+    // demand, so a slow client slows the read down instead of growing a buffer
+    public Flux<Device> streamAllDevices() {
+        return template.select(Device.class)
+                .matching(Query.empty().sort(Sort.by("id")))
+                .all();
+    }
+
+    public Flux<Device> getDevicesByCriteria(DeviceSearchCriteria criteria) {
+        // Brand first, then state, so the predicate matches the (brand, state) index
+        Criteria where = Criteria.empty();
+        if (criteria.getBrand() != null) {
+            where = where.and("brand").is(criteria.getBrand());
+        }
+        if (criteria.getState() != null) {
+            where = where.and("state").is(criteria.getState().name());
+        }
+        return template.select(Device.class)
+                .matching(Query.query(where).sort(Sort.by("id")))
+                .all();
+    }
+
+    // The UPDATE checks the version, so a concurrent change fails with OptimisticLockingFailureException
+    @Transactional
+    public Mono<Device> updateDevice(Long id, DeviceRequest device) {
+        return Mono.fromRunnable(() -> requireMandatoryFields(device))
+                .then(getDeviceById(id))
+                .flatMap(existingDevice -> {
+                    checkUpdateAllowed(existingDevice, device);
+                    existingDevice.setName(device.getName());
+                    existingDevice.setBrand(device.getBrand());
+                    existingDevice.setState(device.getState());
+                    return deviceRepository.save(existingDevice);
+                });
+    }
+
+    @Transactional
+    public Mono<Void> deleteDevice(Long id) {
+        return getDeviceById(id)
+                .flatMap(existingDevice -> {
+                    checkDeleteAllowed(existingDevice);
+                    return deviceRepository.delete(existingDevice);
+                });
+    }
+
+    private int resolvePageSize(Integer limit) {
+        DevicesProperties.Pagination pagination = properties.getPagination();
+        if (limit == null) {
+            return pagination.getDefaultLimit();
+        }
+        return Math.max(1, Math.min(limit, pagination.getMaxLimit()));
+    }
+
+    private static void requireMandatoryFields(DeviceRequest deviceRequest) {
+        if (deviceRequest.getBrand() == null || deviceRequest.getName() == null || deviceRequest.getState() == null) {
+            throw new MissingFieldsException("Device brand, name and state are mandatory");
+        }
+    }
+
+    private static void checkUpdateAllowed(Device existingDevice, DeviceRequest device) {
+        if (existingDevice.getState() == Device.State.IN_USE && (!existingDevice.getName().equals(device.getName()) || !existingDevice.getBrand().equals(device.getBrand()))) {
+            log.error("Device in use cannot have name and brand updated");
+            throw new DeviceInUseException("Name and brand cannot be updated if the device is in use");
+        }
+    }
+
+    private static void checkDeleteAllowed(Device existingDevice) {
+        if (existingDevice.getState() == Device.State.IN_USE) {
+            log.error("Devices in use cannot be removed");
+            throw new DeviceInUseException("Devices in use cannot be removed");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.glaydson.devicesapi.reactive;
+
+import com.glaydson.devicesapi.reactive.dto.DevicePage;
+import com.glaydson.devicesapi.reactive.dto.DeviceRequest;
+import com.glaydson.devicesapi.reactive.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.reactive.model.Device;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs against the H2 schema and data shared with the servlet application
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReactiveDevicesapiApplicationTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void pagesThroughTheSeedData() {
+        DevicePage page = webTestClient.get().uri("/api/v1/devices?limit=4")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(DevicePage.class).returnResult().getResponseBody();
+
+        assertNotNull(page);
+        assertEquals(4, page.getDevices().size());
+        assertEquals(1L, page.getDevices().getFirst().getId());
+        assertNotNull(page.getNextCursor());
+    }
+
+    @Test
+    void searchesByBrandAndState() {
+        webTestClient.get().uri("/api/v1/devices/search?brand=BrandA&state=AVAILABLE")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Device.class).hasSize(1);
+
+        webTestClient.post().uri("/api/v1/devices/search")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new DeviceSearchCriteria("BrandA", Device.State.AVAILABLE))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Device.class).hasSize(1);
+    }
+
+    @Test
+    void createsUpdatesAndDeletesADevice() {
+        Device created = webTestClient.post().uri("/api/v1/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new DeviceRequest("Reactive", "BrandR", Device.State.AVAILABLE))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Device.class).returnResult().getResponseBody();
+        assertNotNull(created);
+        assertTrue(created.getId() > 10, "The id comes from devices_id_seq, after the seed data");
+
+        webTestClient.put().uri("/api/v1/devices/" + created.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new DeviceRequest("Reactive", "BrandR", Device.State.INACTIVE))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("INACTIVE")
+                .jsonPath("$.version").isEqualTo(created.getVersion() + 1);
+
+        webTestClient.delete().uri("/api/v1/devices/" + created.getId())
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient.get().uri("/api/v1/devices/" + created.getId())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,95 @@
+package com.glaydson.devicesapi.reactive.controller;
+
+import com.glaydson.devicesapi.reactive.dto.DeviceRequest;
+import com.glaydson.devicesapi.reactive.exception.GlobalExceptionHandler;
+import com.glaydson.devicesapi.reactive.exception.ResourceNotFoundException;
+import com.glaydson.devicesapi.reactive.model.Device;
+import com.glaydson.devicesapi.reactive.service.DeviceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class DeviceControllerTest {
+
+    @Mock
+    private DeviceService deviceService;
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        webTestClient = WebTestClient.bindToController(new DeviceController(deviceService))
+                .controllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void getDeviceById() {
+        when(deviceService.getDeviceById(1L)).thenReturn(Mono.just(
+                new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now())));
+
+        webTestClient.get().uri("/api/v1/devices/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Device1");
+    }
+
+    @Test
+    void getDeviceByIdNotFound() {
+        when(deviceService.getDeviceById(1L)).thenReturn(Mono.error(new ResourceNotFoundException("Device not found for this id :: 1")));
+
+        webTestClient.get().uri("/api/v1/devices/1")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Device not found for this id :: 1");
+    }
+
+    @Test
+    void updateDeviceConcurrentlyModified() {
+        when(deviceService.updateDevice(eq(1L), any(DeviceRequest.class)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("stale")));
+
+        webTestClient.put().uri("/api/v1/devices/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+
+    @Test
+    void streamAllDevicesAsNdjson() {
+        when(deviceService.streamAllDevices()).thenReturn(Flux.just(
+                new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now()),
+                new Device(2L, "Device2", "Brand2", Device.State.IN_USE, LocalDateTime.now())));
+
+        webTestClient.get().uri("/api/v1/devices/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Device.class).hasSize(2);
+    }
+
+    @Test
+    void deleteDevice() {
+        when(deviceService.deleteDevice(1L)).thenReturn(Mono.empty());
+
+        webTestClient.delete().uri("/api/v1/devices/1")
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+}
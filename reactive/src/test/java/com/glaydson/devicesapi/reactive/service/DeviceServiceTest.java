@@ -0,0 +1,147 @@
+package com.glaydson.devicesapi.reactive.service;
+
+import com.glaydson.devicesapi.reactive.config.DevicesProperties;
+import com.glaydson.devicesapi.reactive.dto.DeviceRequest;
+import com.glaydson.devicesapi.reactive.exception.DeviceInUseException;
+import com.glaydson.devicesapi.reactive.exception.InvalidCursorException;
+import com.glaydson.devicesapi.reactive.exception.MissingFieldsException;
+import com.glaydson.devicesapi.reactive.exception.ResourceNotFoundException;
+import com.glaydson.devicesapi.reactive.model.Device;
+import com.glaydson.devicesapi.reactive.repository.DeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DeviceServiceTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private R2dbcEntityTemplate template;
+
+    private DeviceService deviceService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deviceService = new DeviceService(deviceRepository, template, new DevicesProperties());
+    }
+
+    @Test
+    void createDevice() {
+        Device device = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+        when(deviceRepository.save(any(Device.class))).thenReturn(Mono.just(device));
+
+        StepVerifier.create(deviceService.createDevice(new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE)))
+                .expectNext(device)
+                .verifyComplete();
+    }
+
+    @Test
+    void createDeviceWithMissingFields() {
+        StepVerifier.create(deviceService.createDevice(new DeviceRequest(null, "Brand1", Device.State.AVAILABLE)))
+                .expectError(MissingFieldsException.class)
+                .verify();
+        verify(deviceRepository, never()).save(any(Device.class));
+    }
+
+    @Test
+    void getDeviceByIdNotFound() {
+        when(deviceRepository.findById(1L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(deviceService.getDeviceById(1L))
+                .expectErrorMessage(DeviceService.DEVICE_NOT_FOUND_FOR_THIS_ID + 1)
+                .verify();
+    }
+
+    @Test
+    void getDevicesPageReturnsCursorWhenThereAreMoreDevices() {
+        when(deviceRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(3))).thenReturn(Flux.just(
+                new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now()),
+                new Device(2L, "Device2", "Brand1", Device.State.AVAILABLE, LocalDateTime.now()),
+                new Device(3L, "Device3", "Brand1", Device.State.AVAILABLE, LocalDateTime.now())));
+
+        StepVerifier.create(deviceService.getDevicesPage(null, 2))
+                .assertNext(page -> {
+                    assertEquals(2, page.getDevices().size());
+                    assertEquals(DeviceCursor.encode(2L), page.getNextCursor());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void getDevicesPageLastPageHasNoCursor() {
+        when(deviceRepository.findByIdGreaterThanOrderByIdAsc(2L, Limit.of(3))).thenReturn(Flux.just(
+                new Device(3L, "Device3", "Brand1", Device.State.AVAILABLE, LocalDateTime.now())));
+
+        StepVerifier.create(deviceService.getDevicesPage(DeviceCursor.encode(2L), 2))
+                .assertNext(page -> assertNull(page.getNextCursor()))
+                .verifyComplete();
+    }
+
+    @Test
+    void getDevicesPageWithInvalidCursor() {
+        StepVerifier.create(deviceService.getDevicesPage("not-a-cursor", 2))
+                .expectError(InvalidCursorException.class)
+                .verify();
+    }
+
+    @Test
+    void updateDeviceInUseCannotChangeBrand() {
+        Device existingDevice = new Device(1L, "Device1", "Brand1", Device.State.IN_USE, LocalDateTime.now());
+        when(deviceRepository.findById(1L)).thenReturn(Mono.just(existingDevice));
+
+        StepVerifier.create(deviceService.updateDevice(1L, new DeviceRequest("Device1", "Brand2", Device.State.IN_USE)))
+                .expectError(DeviceInUseException.class)
+                .verify();
+        verify(deviceRepository, never()).save(any(Device.class));
+    }
+
+    @Test
+    void updateDevice() {
+        Device existingDevice = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+        when(deviceRepository.findById(1L)).thenReturn(Mono.just(existingDevice));
+        when(deviceRepository.save(existingDevice)).thenReturn(Mono.just(existingDevice));
+
+        StepVerifier.create(deviceService.updateDevice(1L, new DeviceRequest("Device2", "Brand2", Device.State.IN_USE)))
+                .assertNext(device -> {
+                    assertEquals("Device2", device.getName());
+                    assertEquals(Device.State.IN_USE, device.getState());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteDeviceInUse() {
+        Device existingDevice = new Device(1L, "Device1", "Brand1", Device.State.IN_USE, LocalDateTime.now());
+        when(deviceRepository.findById(1L)).thenReturn(Mono.just(existingDevice));
+
+        StepVerifier.create(deviceService.deleteDevice(1L))
+                .expectError(DeviceInUseException.class)
+                .verify();
+        verify(deviceRepository, never()).delete(any(Device.class));
+    }
+
+    @Test
+    void deleteDeviceNotFound() {
+        when(deviceRepository.findById(1L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(deviceService.deleteDevice(1L))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+}
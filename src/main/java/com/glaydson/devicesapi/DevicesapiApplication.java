@@ -1,12 +1,23 @@
 package com.glaydson.devicesapi;
 
+import com.glaydson.devicesapi.config.DevicesRuntimeHints;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Slf4j
 @SpringBootApplication
+@ConfigurationPropertiesScan
+// Caching wraps the transaction, so cache entries are only evicted after the write has committed
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
+@EnableScheduling
+@ImportRuntimeHints(DevicesRuntimeHints.class)
 public class DevicesapiApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,22 @@
+package com.glaydson.devicesapi.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "devices.access-log", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AccessLogConfig {
+
+    @Bean
+    FilterRegistrationBean<AccessLogFilter> accessLogFilter(DevicesProperties properties) {
+        FilterRegistrationBean<AccessLogFilter> registration =
+                new FilterRegistrationBean<>(new AccessLogFilter(properties.getAccessLog()));
+        registration.addUrlPatterns("/api/v1/devices", "/api/v1/devices/*");
+        // Outside of every other filter, so requests rejected by the limits are logged too
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,181 @@
+package com.glaydson.devicesapi.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Writes one JSON line per request to the {@code devices.access} logger: method, path pattern,
+ * operation (the controller method), device id, status, latency and, for searches, the criteria
+ * shape. Successful reads are sampled at {@code devices.access-log.read-sample-rate}, the share
+ * is written with each line so counts can be scaled back. The line is built with a single StringBuilder and handed to an
+ * async appender (see logback-spring.xml), the request never waits for the console.
+ */
+@Slf4j(topic = "devices.access")
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final String CRITERIA_ATTRIBUTE = AccessLogFilter.class.getName() + ".criteria";
+
+    private final DevicesProperties.AccessLog properties;
+    private final long slowThresholdNanos;
+    private final DoubleSupplier random;
+
+    public AccessLogFilter(DevicesProperties.AccessLog properties) {
+        this(properties, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    AccessLogFilter(DevicesProperties.AccessLog properties, DoubleSupplier random) {
+        this.properties = properties;
+        this.slowThresholdNanos = properties.getSlowThreshold().toNanos();
+        this.random = random;
+    }
+
+    /**
+     * Records which fields the current search filters on, which the access log cannot tell from
+     * the request itself. Does nothing outside of a request.
+     */
+    public static void criteria(String shape) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(CRITERIA_ATTRIBUTE, shape, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!log.isInfoEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (request.isAsyncStarted()) {
+                // Streams and the change feed are logged when they end, with their whole duration
+                request.getAsyncContext().addListener(new CompletionListener(request, response, start));
+            } else {
+                // An exception that escaped the handlers becomes a 500 of the container
+                record(request, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), start);
+            }
+        }
+    }
+
+    void record(HttpServletRequest request, int status, long start) {
+        long latency = System.nanoTime() - start;
+        double sampleRate = sampleRate(request, status, latency);
+        if (sampleRate < 1 && random.getAsDouble() >= sampleRate) {
+            return;
+        }
+        log.info(format(request, status, latency, sampleRate));
+    }
+
+    // 1 for what is always logged, the configured rate for successful reads that were not slow
+    private double sampleRate(HttpServletRequest request, int status, long latency) {
+        boolean read = request.getMethod().equals("GET") || request.getMethod().equals("HEAD")
+                || RequestLimitFilter.isSearchPost(request);
+        if (!read || status >= 400 || latency >= slowThresholdNanos) {
+            return 1;
+        }
+        return Math.min(1, Math.max(0, properties.getReadSampleRate()));
+    }
+
+    private static String format(HttpServletRequest request, int status, long latency, double sampleRate) {
+        StringBuilder line = new StringBuilder(224);
+        line.append("{\"time\":\"").append(Instant.now()).append('"');
+        appendField(line, "method", request.getMethod());
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        appendField(line, "path", pattern != null ? pattern.toString() : request.getRequestURI());
+        appendField(line, "operation", operation(request));
+        if (request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE) instanceof Map<?, ?> variables
+                && variables.get("id") instanceof String id) {
+            appendField(line, "id", id);
+        }
+        line.append(",\"status\":").append(status);
+        line.append(",\"latencyMs\":").append(Math.round(latency / 1_000.0) / 1_000.0);
+        Object criteria = request.getAttribute(CRITERIA_ATTRIBUTE);
+        if (criteria != null) {
+            appendField(line, "criteria", criteria.toString());
+        }
+        if (sampleRate < 1) {
+            line.append(",\"sampleRate\":").append(sampleRate);
+        }
+        return line.append('}').toString();
+    }
+
+    // The handler method; null when no handler was reached, e.g. for a 429
+    private static String operation(HttpServletRequest request) {
+        if (request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler) {
+            return handler.getMethod().getName();
+        }
+        return null;
+    }
+
+    private static void appendField(StringBuilder line, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private final class CompletionListener implements AsyncListener {
+
+        // Held here, the event only carries them when they were passed to startAsync
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long start;
+
+        private CompletionListener(HttpServletRequest request, HttpServletResponse response, long start) {
+            this.request = request;
+            this.response = response;
+            this.start = start;
+        }
+
+        // A timeout or an error is followed by onComplete
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response.getStatus(), start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
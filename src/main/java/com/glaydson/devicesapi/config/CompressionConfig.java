@@ -0,0 +1,23 @@
+package com.glaydson.devicesapi.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "devices.compression", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CompressionConfig {
+
+    @Bean
+    FilterRegistrationBean<ResponseCompressionFilter> responseCompressionFilter(DevicesProperties properties) {
+        FilterRegistrationBean<ResponseCompressionFilter> registration =
+                new FilterRegistrationBean<>(new ResponseCompressionFilter(properties.getCompression()));
+        // Inside the access log and the request limits, outside the other filters, so it encodes what
+        // those and the controllers write. The 429 and 503 bodies of RequestLimitFilter go out uncompressed:
+        // they are a few bytes, and a rejected request should not cost an encoder
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
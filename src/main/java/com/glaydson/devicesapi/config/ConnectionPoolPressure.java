@@ -0,0 +1,71 @@
+package com.glaydson.devicesapi.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads how long requests wait for a pooled connection, from the {@code hikaricp.connections.acquire}
+ * timers of every pool, and turns it into the share of queries {@link RequestLimitFilter} sheds:
+ * none up to {@code devices.limits.max-pool-wait}, then more as the wait grows, all of them at
+ * twice that wait. Shedding the queries early keeps connections for lookups and writes, and
+ * answers the shed requests at once instead of after the pool's connection timeout.
+ */
+class ConnectionPoolPressure {
+
+    static final String ACQUIRE_METRIC = "hikaricp.connections.acquire";
+    static final String PENDING_METRIC = "hikaricp.connections.pending";
+    static final String SHED_RATIO_METRIC = "devices.limits.shed.ratio";
+
+    private final MeterRegistry meterRegistry;
+    private final long maxWaitNanos;
+    private final long checkIntervalNanos;
+    // Totals of each timer at the previous reading, only used by the scheduler thread
+    private final Map<Meter.Id, Totals> previous = new HashMap<>();
+    private volatile double shedRatio;
+
+    ConnectionPoolPressure(DevicesProperties.Limits properties, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.maxWaitNanos = properties.getMaxPoolWait().toNanos();
+        this.checkIntervalNanos = properties.getPoolCheckInterval().toNanos();
+        Gauge.builder(SHED_RATIO_METRIC, this, ConnectionPoolPressure::shedRatio)
+                .description("Share of list and search requests shed because of the wait for a connection")
+                .register(meterRegistry);
+    }
+
+    double shedRatio() {
+        return shedRatio;
+    }
+
+    @Scheduled(fixedDelayString = "${devices.limits.pool-check-interval}")
+    public void check() {
+        long acquired = 0;
+        double waitedNanos = 0;
+        for (Timer timer : meterRegistry.find(ACQUIRE_METRIC).timers()) {
+            Totals totals = new Totals(timer.count(), timer.totalTime(TimeUnit.NANOSECONDS));
+            Totals before = previous.put(timer.getId(), totals);
+            if (before != null) {
+                acquired += totals.count() - before.count();
+                waitedNanos += totals.nanos() - before.nanos();
+            }
+        }
+        double averageWait;
+        if (acquired > 0) {
+            averageWait = waitedNanos / acquired;
+        } else {
+            // Nobody got a connection: either nobody asked, or the pool is exhausted and they still wait
+            double pending = meterRegistry.find(PENDING_METRIC).gauges().stream().mapToDouble(Gauge::value).sum();
+            averageWait = pending > 0 ? checkIntervalNanos : 0;
+        }
+        shedRatio = Math.clamp((averageWait - maxWaitNanos) / maxWaitNanos, 0.0, 1.0);
+    }
+
+    private record Totals(long count, double nanos) {
+    }
+}
@@ -0,0 +1,216 @@
+package com.glaydson.devicesapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Tunables for the devices API, bound from the {@code devices.*} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "devices")
+public class DevicesProperties {
+
+    private final Pagination pagination = new Pagination();
+    private final Bulk bulk = new Bulk();
+    private final Search search = new Search();
+    private final Compression compression = new Compression();
+    private final Changes changes = new Changes();
+    private final Outbox outbox = new Outbox();
+    private final Archive archive = new Archive();
+    private final Partitioning partitioning = new Partitioning();
+    private final Replica replica = new Replica();
+    private final Loader loader = new Loader();
+    private final Limits limits = new Limits();
+    private final Memory memory = new Memory();
+    private final AccessLog accessLog = new AccessLog();
+    private final HttpCache httpCache = new HttpCache();
+
+    @Data
+    public static class Pagination {
+        // Page size used when the client does not send a limit
+        private int defaultLimit = 50;
+        // Upper bound for the limit a client can request
+        private int maxLimit = 500;
+        // Rows fetched per round trip when streaming the whole table
+        private int streamChunkSize = 500;
+    }
+
+    @Data
+    public static class Bulk {
+        // Items written per transaction by the bulk endpoints, flushed as one JDBC batch
+        private int batchSize = 50;
+    }
+
+    @Data
+    public static class Search {
+        // Text search results that can be paged through; pages are ranked from the first result
+        private int maxResultWindow = 10000;
+        // Criteria of one POST /search/batch request, all compiled into a single query
+        private int maxBatchCriteria = 500;
+    }
+
+    @Data
+    public static class Changes {
+        // Latest changes kept to replay to a subscriber resuming after a disconnect
+        private int replayBufferSize = 1000;
+        // Changes waiting to be sent to one subscriber; a subscriber that falls further behind is disconnected
+        private int subscriberQueueSize = 256;
+        // Comment sent when there is nothing else to send, so dead connections are noticed
+        private Duration heartbeatInterval = Duration.ofSeconds(15);
+        // Connection lifetime, clients reconnect with Last-Event-ID and miss nothing still in the replay buffer
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Outbox {
+        // Writes every device change to the outbox table and publishes it to the sink
+        private boolean enabled = true;
+        // memory or file; any other value expects a DeviceEventSink bean from the application
+        private String sink = "memory";
+        // Changes read, delivered and deleted per transaction
+        private int batchSize = 100;
+        // Pause between two polls of the outbox table
+        private Duration pollInterval = Duration.ofSeconds(1);
+        // Batches published per poll at most, so a large backlog does not hold the scheduler thread
+        private int maxBatchesPerPoll = 10;
+        // Changes kept by the memory sink, the oldest are dropped
+        private int memoryCapacity = 10000;
+        // NDJSON file the file sink appends to
+        private Path file = Path.of("device-events.ndjson");
+    }
+
+    @Data
+    public static class Archive {
+        // Moves INACTIVE devices older than the retention from devices to devices_archive
+        private boolean enabled = false;
+        // Age of creation_time after which an INACTIVE device is archived
+        private Duration retention = Duration.ofDays(365);
+        // Devices moved per transaction
+        private int batchSize = 500;
+        // Batches moved per run at most, the rest waits for the next run
+        private int maxBatchesPerRun = 20;
+        // Pause between two runs
+        private Duration interval = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Partitioning {
+        // Creates the partitions of the partitioned schema (db/postgres/schema-partitioned.sql) ahead of time
+        private boolean enabled = false;
+        // Monthly partitions of devices created after the current month
+        private int monthsAhead = 3;
+        // Pause between two checks of the partitions
+        private Duration maintenanceInterval = Duration.ofHours(12);
+    }
+
+    @Data
+    public static class Replica {
+        // Sends read-only transactions to the replica pool (devices.replica.datasource.*), see ReplicaConfig
+        private boolean enabled = false;
+        // How long a client that wrote reads from the primary, should cover the replication lag
+        private Duration stickyWindow = Duration.ofSeconds(5);
+        // Pause between two health checks of the replica
+        private Duration healthCheckInterval = Duration.ofSeconds(10);
+        // Time a replica connection has to prove valid
+        private Duration validationTimeout = Duration.ofSeconds(2);
+        // Query returning the replication lag in seconds, none by default
+        private String lagQuery;
+        // Lag above which the replica is considered down
+        private Duration maxLag = Duration.ofSeconds(30);
+        // Runs the schema and data scripts on the replica too, for local databases that do not replicate
+        private boolean initialize = false;
+    }
+
+    @Data
+    public static class Loader {
+        // Batches concurrent getDeviceById cache misses into one findAllById, see DeviceBatchLoader
+        private boolean enabled = true;
+        // Longest time a lookup waits for others to join its batch
+        private Duration window = Duration.ofMillis(2);
+        // Ids per batch; a full batch runs at once
+        private int maxBatchSize = 100;
+    }
+
+    @Data
+    public static class Limits {
+        // Rate limits, concurrency limits and load shedding of the /api/v1/devices endpoints, see RequestLimitFilter
+        private boolean enabled = true;
+        // Header naming the client, for a trusted gateway that sets it; without it clients are told apart by address
+        private String clientHeader;
+        // Requests per second a client can keep up
+        private double ratePerSecond = 100;
+        // Requests a client can send at once after a pause
+        private int burst = 200;
+        // Clients whose buckets are kept in memory, the least recently seen are dropped first
+        private int maxClients = 100_000;
+        // Requests running at once per endpoint class, the next ones get 503 at once.
+        // Lookups (by id, stats) are mostly served from memory, queries (list, multi-get, search, text
+        // search, stream) and writes hold a connection each
+        private int lookupConcurrency = 100;
+        private int queryConcurrency = 5;
+        private int writeConcurrency = 5;
+        // Longest a SQL statement may run before it is cancelled and the request answered with 503
+        private Duration queryTimeout = Duration.ofSeconds(5);
+        // Average wait for a pooled connection above which queries start being shed, all of them at twice as much
+        private Duration maxPoolWait = Duration.ofMillis(100);
+        // Pause between two readings of the connection pool wait
+        private Duration poolCheckInterval = Duration.ofSeconds(1);
+        // Retry-After of the 503 responses
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Memory {
+        // Serves the DeviceStore from memory, persisted to a write-ahead log and snapshots (memory profile)
+        private boolean enabled = false;
+        // Directory of the log segments and snapshots
+        private Path directory = Path.of("data/devices");
+        // Pause between two writes of the log to disk, a crash loses at most the changes of that pause
+        private Duration flushInterval = Duration.ofMillis(200);
+        // Writes every change to disk before returning, nothing is lost but every write waits for the disk
+        private boolean syncEveryWrite = false;
+        // Pause between two snapshots, each one drops the log written before it
+        private Duration snapshotInterval = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class AccessLog {
+        // One JSON line per /api/v1/devices request on the devices.access logger, see AccessLogFilter
+        private boolean enabled = true;
+        // Share of the successful reads logged; writes, errors and slow requests are always logged
+        private double readSampleRate = 0.1;
+        // Requests taking longer are logged whatever their method
+        private Duration slowThreshold = Duration.ofMillis(500);
+    }
+
+    @Data
+    public static class HttpCache {
+        // ETag, Last-Modified and Cache-Control on the list and search, and 304 while no write committed.
+        // The version is kept per instance: turn it off when other nodes or scripts write to the same table
+        private boolean enabled = true;
+        // Cache-Control max-age; 0 makes clients revalidate every time, answered with a 304 until a write
+        private Duration maxAge = Duration.ZERO;
+        // Devices held in total by the cache of list and search results, and how long an entry is kept
+        private long queryCacheMaxDevices = 50_000;
+        private Duration queryCacheTtl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Compression {
+        // gzip or zstd response encoding, whichever the client prefers in Accept-Encoding (zstd on a tie)
+        private boolean enabled = true;
+        // 1 (fastest) to 22 (smallest); 3 is the zstd default
+        private int zstdLevel = 3;
+        // 1 (fastest) to 9 (smallest)
+        private int gzipLevel = 6;
+        // Smaller responses are sent as is; streamed responses are always encoded
+        private DataSize minResponseSize = DataSize.ofKilobytes(2);
+        private List<String> mimeTypes = List.of("application/json", "application/x-ndjson", "application/cbor",
+                "application/x-jackson-smile");
+    }
+}
@@ -0,0 +1,44 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.luben.zstd.ZstdIOException;
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+import com.glaydson.devicesapi.dto.DeviceBulkUpdateRequest;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.dto.DeviceView;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * What the AOT processing cannot find by itself for the native image. Controllers, exception
+ * handlers, configuration properties and the {@code Device} entity are covered by Spring and
+ * Hibernate, and Lombok leaves nothing to reflect on. This adds:
+ * <ul>
+ *     <li>the SQL scripts of {@code spring.sql.init.*-locations} and the message bundle, which
+ *     are outside of the default locations Spring Boot registers;</li>
+ *     <li>the types Jackson reads and writes outside of controller return values: NDJSON bulk
+ *     items, streamed devices and change events;</li>
+ *     <li>the zstd library, extracted from the jar at runtime, and what its native code reads back.</li>
+ * </ul>
+ */
+public class DevicesRuntimeHints implements RuntimeHintsRegistrar {
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources()
+                .registerPattern("db/*/*.sql")
+                .registerPattern("messages/messages*.properties")
+                .registerPattern("*/*/libzstd-jni-*");
+
+        bindingRegistrar.registerReflectionHints(hints.reflection(),
+                DeviceRequest.class, DeviceBulkUpdateRequest.class, DeviceView.class, DeviceChange.class);
+
+        // The JNI code updates the buffer positions of the stream and throws its own exception type
+        hints.jni().registerType(ZstdOutputStreamNoFinalizer.class, MemberCategory.DECLARED_FIELDS);
+        hints.jni().registerType(ZstdIOException.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+    }
+}
@@ -0,0 +1,47 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.glaydson.devicesapi.dto.DevicePage;
+import com.glaydson.devicesapi.service.DeviceQueryCache;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+@Configuration(proxyBeanMethods = false)
+public class HttpCacheConfig {
+
+    // Entries are weighed by their number of devices, a full page costs as much as a hundred small searches.
+    // Not bound by spring.cache.caffeine.spec, which sizes the cache of single devices
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> queryCacheManagerCustomizer(DevicesProperties properties,
+                                                                             Environment environment) {
+        DevicesProperties.HttpCache httpCache = properties.getHttpCache();
+        return cacheManager -> {
+            Caffeine<Object, Object> caffeine = Caffeine.newBuilder()
+                    .maximumWeight(httpCache.getQueryCacheMaxDevices())
+                    .weigher((key, value) -> 1 + devices(value))
+                    .expireAfterWrite(httpCache.getQueryCacheTtl())
+                    .recordStats();
+            if (Threading.VIRTUAL.isActive(environment)) {
+                // Loaded outside of the map's bin lock, as the cache of single devices (see VirtualThreadsConfig)
+                cacheManager.registerCustomCache(DeviceQueryCache.QUERIES_CACHE,
+                        caffeine.executor(Executors.newVirtualThreadPerTaskExecutor()).buildAsync());
+            } else {
+                cacheManager.registerCustomCache(DeviceQueryCache.QUERIES_CACHE, caffeine.build());
+            }
+        };
+    }
+
+    private static int devices(Object value) {
+        if (value instanceof DevicePage page) {
+            return page.getDevices().size();
+        }
+        return value instanceof List<?> devices ? devices.size() : 0;
+    }
+}
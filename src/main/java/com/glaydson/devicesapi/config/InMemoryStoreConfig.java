@@ -0,0 +1,30 @@
+package com.glaydson.devicesapi.config;
+
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.InMemoryDeviceStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Serves the devices from {@link InMemoryDeviceStore} with {@code devices.memory.enabled}
+ * (the memory profile), in place of the JpaDeviceStore; the database still holds the outbox and
+ * the archive, and the devices table is only read once, to fill an empty store.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "devices.memory", name = "enabled", havingValue = "true")
+public class InMemoryStoreConfig {
+
+    // Closed at shutdown, which writes a last snapshot so the next start has no log to replay
+    @Bean
+    InMemoryDeviceStore inMemoryDeviceStore(DevicesProperties properties, JdbcTemplate jdbcTemplate) {
+        return new InMemoryDeviceStore(properties.getMemory(), () -> jdbcTemplate.query(
+                "SELECT id, name, brand, state, creation_time, version FROM devices ORDER BY id",
+                (row, rowNum) -> new Device(row.getLong("id"), row.getString("name"), row.getString("brand"),
+                        Device.State.valueOf(row.getString("state")),
+                        row.getObject("creation_time", LocalDateTime.class), row.getLong("version"))));
+    }
+}
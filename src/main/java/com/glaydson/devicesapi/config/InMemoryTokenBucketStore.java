@@ -0,0 +1,71 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets held in memory, refilled at {@code devices.limits.rate-per-second} up to
+ * {@code devices.limits.burst} tokens. Taking a token is a compare-and-set on the bucket, requests
+ * of the same client never wait for each other's lock.
+ * <p>
+ * Buckets are refilled lazily when used, and dropped once they would be full again: a client
+ * coming back after that starts with a new, full bucket, which is the same.
+ */
+public class InMemoryTokenBucketStore implements TokenBucketStore {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier nanoClock;
+    private final Cache<String, Bucket> buckets;
+
+    public InMemoryTokenBucketStore(DevicesProperties.Limits properties) {
+        this(properties, System::nanoTime);
+    }
+
+    InMemoryTokenBucketStore(DevicesProperties.Limits properties, LongSupplier nanoClock) {
+        this.capacity = properties.getBurst();
+        this.tokensPerNano = properties.getRatePerSecond() / TimeUnit.SECONDS.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxClients())
+                .expireAfterAccess(Math.max(1, (long) Math.ceil(capacity / tokensPerNano)), TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    @Override
+    public Duration tryConsume(String client) {
+        return buckets.get(client, key -> new Bucket(nanoClock.getAsLong())).tryConsume();
+    }
+
+    private final class Bucket {
+
+        private final AtomicReference<State> state;
+
+        private Bucket(long now) {
+            this.state = new AtomicReference<>(new State(capacity, now));
+        }
+
+        private Duration tryConsume() {
+            while (true) {
+                State current = state.get();
+                long now = Math.max(nanoClock.getAsLong(), current.refilledAt());
+                double tokens = Math.min(capacity, current.tokens() + (now - current.refilledAt()) * tokensPerNano);
+                if (tokens < 1) {
+                    return Duration.ofNanos((long) Math.ceil((1 - tokens) / tokensPerNano));
+                }
+                if (state.compareAndSet(current, new State(tokens - 1, now))) {
+                    return Duration.ZERO;
+                }
+                // Another request of the client took a token in between, read the bucket again
+            }
+        }
+    }
+
+    private record State(double tokens, long refilledAt) {
+    }
+}
@@ -0,0 +1,29 @@
+package com.glaydson.devicesapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.glaydson.devicesapi.service.FileDeviceEventSink;
+import com.glaydson.devicesapi.service.InMemoryDeviceEventSink;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The built-in sinks of the device outbox, chosen with {@code devices.outbox.sink}. Any other
+ * value leaves it to the application to declare its own {@code DeviceEventSink} bean.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "devices.outbox", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "devices.outbox", name = "sink", havingValue = "memory", matchIfMissing = true)
+    InMemoryDeviceEventSink inMemoryDeviceEventSink(DevicesProperties properties) {
+        return new InMemoryDeviceEventSink(properties.getOutbox().getMemoryCapacity());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "devices.outbox", name = "sink", havingValue = "file")
+    FileDeviceEventSink fileDeviceEventSink(DevicesProperties properties, ObjectMapper objectMapper) {
+        return new FileDeviceEventSink(properties.getOutbox().getFile(), objectMapper);
+    }
+}
@@ -0,0 +1,84 @@
+package com.glaydson.devicesapi.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out replica connections to read-only transactions and primary connections to everything
+ * else. The transaction is only known to be read-only once it has started, so this data source
+ * sits behind a {@code LazyConnectionDataSourceProxy}, which asks for the connection at the first
+ * statement.
+ * <p>
+ * Reads go to the primary when the current thread requires it ({@link ReplicaRouting}), or when
+ * the replica is down; a replica that fails to give a connection is marked down and the
+ * primary is used instead.
+ */
+class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    static final String CONNECTIONS_METRIC = "devices.datasource.connections";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaHealth replicaHealth;
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+    private final Counter fallbackConnections;
+
+    ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReplicaHealth replicaHealth, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replicaHealth = replicaHealth;
+        this.primaryConnections = connections("primary", meterRegistry);
+        this.replicaConnections = connections("replica", meterRegistry);
+        this.fallbackConnections = connections("fallback", meterRegistry);
+    }
+
+    private static Counter connections(String target, MeterRegistry meterRegistry) {
+        return Counter.builder(CONNECTIONS_METRIC)
+                .description("Connections handed out, by target; fallback counts reads sent to the primary because the replica failed")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection getConnection(ConnectionSource source) throws SQLException {
+        if (!readsFromReplica()) {
+            primaryConnections.increment();
+            return source.get(primary);
+        }
+        try {
+            Connection connection = source.get(replica);
+            replicaConnections.increment();
+            return connection;
+        } catch (SQLException e) {
+            replicaHealth.markDown(e);
+            fallbackConnections.increment();
+            return source.get(primary);
+        }
+    }
+
+    private boolean readsFromReplica() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !ReplicaRouting.isPrimaryRequired()
+                && replicaHealth.isUp();
+    }
+
+    private interface ConnectionSource {
+        Connection get(DataSource dataSource) throws SQLException;
+    }
+}
@@ -0,0 +1,67 @@
+package com.glaydson.devicesapi.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Read-your-writes for clients reading from the replica: a request that may write sets a cookie
+ * holding the time until which that client reads from the primary, {@code devices.replica.sticky-window}
+ * later, long enough for the replica to catch up. POST searches only read and set none. The cookie carries the deadline itself, so any
+ * instance honors it. It is set before the request runs, the response may be committed by then.
+ */
+class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "devices-primary-until";
+    private static final Set<String> READ_METHODS = Set.of(HttpMethod.GET.name(), HttpMethod.HEAD.name(), HttpMethod.OPTIONS.name());
+
+    private final Duration stickyWindow;
+
+    ReadYourWritesFilter(DevicesProperties.Replica properties) {
+        this.stickyWindow = properties.getStickyWindow();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        if (!READ_METHODS.contains(request.getMethod()) && !RequestLimitFilter.isSearchPost(request)) {
+            Cookie cookie = new Cookie(COOKIE, Long.toString(now + stickyWindow.toMillis()));
+            cookie.setMaxAge((int) Math.max(1, stickyWindow.toSeconds()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+            // The write itself goes to the primary anyway, nothing else to do
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!wroteRecently(request, now)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try (ReplicaRouting.Scope ignored = ReplicaRouting.requirePrimary()) {
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    private static boolean wroteRecently(HttpServletRequest request, long now) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(cookie.getValue()) > now;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
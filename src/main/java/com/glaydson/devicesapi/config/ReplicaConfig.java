@@ -0,0 +1,90 @@
+package com.glaydson.devicesapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.init.DataSourceScriptDatabaseInitializer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Sends read-only transactions to a replica and everything else to the primary
+ * ({@code devices.replica.enabled=true}, see the replica profile). The primary is configured with
+ * the usual {@code spring.datasource.*} properties, the replica pool with
+ * {@code devices.replica.datasource.*} (HikariCP properties, e.g. {@code jdbc-url}).
+ * <p>
+ * The data source everything else uses is the routing one, so JPA, JdbcTemplate and the SQL
+ * initialization need no change.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "devices.replica", name = "enabled", havingValue = "true")
+public class ReplicaConfig {
+
+    static final String REPLICA_UP_METRIC = "devices.replica.up";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("devices.replica.datasource")
+    HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        // Replica connections only serve read-only transactions
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    ReplicaHealth replicaHealth(@Qualifier("replicaDataSource") DataSource replica, DevicesProperties properties,
+                                MeterRegistry meterRegistry) {
+        ReplicaHealth replicaHealth = new ReplicaHealth(replica, properties.getReplica());
+        Gauge.builder(REPLICA_UP_METRIC, replicaHealth, health -> health.isUp() ? 1 : 0)
+                .description("1 when reads go to the replica, 0 when they fall back to the primary")
+                .register(meterRegistry);
+        return replicaHealth;
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, @Qualifier("replicaDataSource") DataSource replica,
+                          ReplicaHealth replicaHealth, MeterRegistry meterRegistry) {
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primary, replica, replicaHealth, meterRegistry));
+    }
+
+    @Bean
+    FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(DevicesProperties properties) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(properties.getReplica()));
+        // Inside the compression filter, before anything that reads from the database
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+        return registration;
+    }
+
+    // A replica gets its schema and data by replication; two local databases standing in for
+    // the primary and the replica need the scripts run on both. Not a SqlDataSourceScriptDatabaseInitializer,
+    // Spring Boot would no longer initialize the primary
+    @Bean
+    @ConditionalOnProperty(prefix = "devices.replica", name = "initialize", havingValue = "true")
+    DataSourceScriptDatabaseInitializer replicaDataSourceInitializer(@Qualifier("replicaDataSource") DataSource replica,
+                                                                     SqlInitializationProperties properties) {
+        return new DataSourceScriptDatabaseInitializer(replica, SqlDataSourceScriptDatabaseInitializer.getSettings(properties));
+    }
+}
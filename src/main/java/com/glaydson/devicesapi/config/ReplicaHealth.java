@@ -0,0 +1,77 @@
+package com.glaydson.devicesapi.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Whether reads can go to the replica. Checked every {@code devices.replica.health-check-interval}:
+ * the replica is down when no valid connection can be taken from its pool within
+ * {@code devices.replica.validation-timeout}, or when {@code devices.replica.lag-query} reports
+ * more than {@code devices.replica.max-lag} seconds of replication lag. A failed connection
+ * in between marks it down at once; only a check brings it back.
+ */
+@Slf4j
+class ReplicaHealth {
+
+    private final DataSource replica;
+    private final DevicesProperties.Replica properties;
+    private volatile boolean up = true;
+
+    ReplicaHealth(DataSource replica, DevicesProperties.Replica properties) {
+        this.replica = replica;
+        this.properties = properties;
+    }
+
+    boolean isUp() {
+        return up;
+    }
+
+    void markDown(Exception cause) {
+        if (up) {
+            log.warn("Replica marked down, reads go to the primary until it recovers: {}", cause.toString());
+        }
+        up = false;
+    }
+
+    @Scheduled(fixedDelayString = "${devices.replica.health-check-interval}")
+    void check() {
+        try (Connection connection = replica.getConnection()) {
+            if (!connection.isValid((int) Math.max(1, properties.getValidationTimeout().toSeconds()))) {
+                throw new SQLException("Replica connection is not valid");
+            }
+            Duration lag = lag(connection);
+            if (lag != null && lag.compareTo(properties.getMaxLag()) > 0) {
+                throw new SQLException("Replica is " + lag.toSeconds() + "s behind the primary");
+            }
+            if (!up) {
+                log.info("Replica is back, reads go to it again");
+            }
+            up = true;
+        } catch (SQLException | RuntimeException e) {
+            markDown(e);
+        }
+    }
+
+    // Null when no lag query is configured, or when it returns null (for instance on a primary)
+    private Duration lag(Connection connection) throws SQLException {
+        if (!StringUtils.hasText(properties.getLagQuery())) {
+            return null;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(properties.getLagQuery())) {
+            if (!result.next()) {
+                return null;
+            }
+            double seconds = result.getDouble(1);
+            return result.wasNull() ? null : Duration.ofMillis((long) (seconds * 1000));
+        }
+    }
+}
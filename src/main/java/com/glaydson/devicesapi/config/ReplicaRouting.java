@@ -0,0 +1,43 @@
+package com.glaydson.devicesapi.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets code on the current thread require the primary database for its reads, when replica
+ * routing is enabled (see {@link ReplicaConfig}). Without routing it has no effect.
+ */
+public final class ReplicaRouting {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private ReplicaRouting() {
+    }
+
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+    }
+
+    // Must run before the transaction's first statement, the connection is taken then and kept
+    public static <T> T onPrimary(Supplier<T> reads) {
+        try (Scope ignored = requirePrimary()) {
+            return reads.get();
+        }
+    }
+
+    public static Scope requirePrimary() {
+        Boolean previous = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        return () -> {
+            if (previous == null) {
+                PRIMARY_REQUIRED.remove();
+            } else {
+                PRIMARY_REQUIRED.set(previous);
+            }
+        };
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
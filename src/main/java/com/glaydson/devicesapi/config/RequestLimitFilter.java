@@ -0,0 +1,188 @@
+package com.glaydson.devicesapi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Admission control of the /api/v1/devices endpoints, cheapest check first:
+ * <ol>
+ *     <li>Rate limit: each client takes a token from its bucket in the {@link TokenBucketStore},
+ *     or gets 429 with the time until the next token in Retry-After.</li>
+ *     <li>Load shedding: while requests wait too long for a pooled connection, a share of the
+ *     queries gets 503 (see {@link ConnectionPoolPressure}).</li>
+ *     <li>Concurrency limit per endpoint class: at most {@code devices.limits.*-concurrency}
+ *     requests of a class run at once, the next ones get 503. A client looping over the list
+ *     endpoint can then only hold the query permits, lookups and writes still get connections.</li>
+ * </ol>
+ * The change feed is not limited, its connections are long-lived and use no database connection.
+ */
+class RequestLimitFilter extends OncePerRequestFilter {
+
+    static final String REJECTED_METRIC = "devices.limits.rejected";
+    private static final String DEVICES_PATH = "/api/v1/devices";
+    private static final Pattern LOOKUP_PATH = Pattern.compile(DEVICES_PATH + "/(\\d+|stats)");
+
+    enum EndpointClass { LOOKUP, QUERY, WRITE }
+
+    private final DevicesProperties.Limits properties;
+    private final TokenBucketStore buckets;
+    private final ConnectionPoolPressure poolPressure;
+    private final MeterRegistry meterRegistry;
+    private final Map<EndpointClass, Semaphore> permits = new EnumMap<>(EndpointClass.class);
+
+    RequestLimitFilter(DevicesProperties.Limits properties, TokenBucketStore buckets,
+                       ConnectionPoolPressure poolPressure, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.buckets = buckets;
+        this.poolPressure = poolPressure;
+        this.meterRegistry = meterRegistry;
+        permits.put(EndpointClass.LOOKUP, new Semaphore(properties.getLookupConcurrency()));
+        permits.put(EndpointClass.QUERY, new Semaphore(properties.getQueryConcurrency()));
+        permits.put(EndpointClass.WRITE, new Semaphore(properties.getWriteConcurrency()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        EndpointClass endpoint = classify(request);
+        if (endpoint == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        Duration untilNextToken = buckets.tryConsume(client(request));
+        if (!untilNextToken.isZero()) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, untilNextToken, "rate", endpoint,
+                    "Too many requests, slow down");
+            return;
+        }
+        if (endpoint == EndpointClass.QUERY && ThreadLocalRandom.current().nextDouble() < poolPressure.shedRatio()) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, properties.getRetryAfter(), "shed", endpoint,
+                    "Server is overloaded, retry later");
+            return;
+        }
+        Semaphore semaphore = permits.get(endpoint);
+        if (!semaphore.tryAcquire()) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, properties.getRetryAfter(), "concurrency", endpoint,
+                    "Too many requests in progress, retry later");
+            return;
+        }
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            async = request.isAsyncStarted();
+            if (async) {
+                // Streamed responses keep their connection after this returns, release when they end
+                request.getAsyncContext().addListener(new ReleasingListener(semaphore));
+            }
+        } finally {
+            if (!async) {
+                semaphore.release();
+            }
+        }
+    }
+
+    static EndpointClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(DEVICES_PATH) || path.startsWith(DEVICES_PATH + "/changes")) {
+            return null;
+        }
+        String method = request.getMethod();
+        if (isSearchPost(request)) {
+            return EndpointClass.QUERY;
+        }
+        if (!HttpMethod.GET.matches(method) && !HttpMethod.HEAD.matches(method)) {
+            return EndpointClass.WRITE;
+        }
+        return LOOKUP_PATH.matcher(path).matches() ? EndpointClass.LOOKUP : EndpointClass.QUERY;
+    }
+
+    // Searches with the criteria in a body are POSTs, they read like any other query. Also used by
+    // ReadYourWritesFilter and AccessLogFilter, which otherwise take every POST for a write
+    static boolean isSearchPost(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return HttpMethod.POST.matches(request.getMethod()) && path.startsWith(DEVICES_PATH + "/search");
+    }
+
+    private String client(HttpServletRequest request) {
+        String header = properties.getClientHeader();
+        if (StringUtils.hasText(header)) {
+            String client = request.getHeader(header);
+            if (StringUtils.hasText(client)) {
+                return client;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, Duration retryAfter, String reason,
+                        EndpointClass endpoint, String body) throws IOException {
+        meterRegistry.counter(REJECTED_METRIC, "reason", reason,
+                "endpoint", endpoint.name().toLowerCase(Locale.ROOT)).increment();
+        response.setStatus(status.value());
+        // Whole seconds, rounded up so the client does not come back before it can pass
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(body);
+    }
+
+    private static final class ReleasingListener implements AsyncListener {
+
+        private final Semaphore semaphore;
+        // A timeout or an error is followed by onComplete, release once
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ReleasingListener(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Same request, the listener stays registered
+        }
+    }
+}
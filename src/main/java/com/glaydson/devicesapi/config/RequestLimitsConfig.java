@@ -0,0 +1,49 @@
+package com.glaydson.devicesapi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Protects the database from overload: the query timeout of every JPA query (JdbcTemplate gets
+ * it from {@code spring.jdbc.template.query-timeout}), and with {@code devices.limits.enabled}
+ * the rate limits, concurrency limits and load shedding of {@link RequestLimitFilter}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class RequestLimitsConfig {
+
+    // In milliseconds, applied by Hibernate to each query it creates; the statement is cancelled
+    // by the driver and the request answered with 503 by GlobalExceptionHandler
+    @Bean
+    HibernatePropertiesCustomizer queryTimeoutCustomizer(DevicesProperties properties) {
+        return hibernateProperties -> hibernateProperties.put("jakarta.persistence.query.timeout",
+                Math.toIntExact(properties.getLimits().getQueryTimeout().toMillis()));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "devices.limits", name = "enabled", havingValue = "true", matchIfMissing = true)
+    ConnectionPoolPressure connectionPoolPressure(DevicesProperties properties, MeterRegistry meterRegistry) {
+        return new ConnectionPoolPressure(properties.getLimits(), meterRegistry);
+    }
+
+    // The buckets are kept in memory unless the application declares its own TokenBucketStore
+    @Bean
+    @ConditionalOnProperty(prefix = "devices.limits", name = "enabled", havingValue = "true", matchIfMissing = true)
+    FilterRegistrationBean<RequestLimitFilter> requestLimitFilter(DevicesProperties properties,
+                                                                  ObjectProvider<TokenBucketStore> tokenBucketStore,
+                                                                  ConnectionPoolPressure poolPressure,
+                                                                  MeterRegistry meterRegistry) {
+        TokenBucketStore buckets = tokenBucketStore.getIfAvailable(() -> new InMemoryTokenBucketStore(properties.getLimits()));
+        FilterRegistrationBean<RequestLimitFilter> registration = new FilterRegistrationBean<>(
+                new RequestLimitFilter(properties.getLimits(), buckets, poolPressure, meterRegistry));
+        registration.addUrlPatterns("/api/v1/devices", "/api/v1/devices/*");
+        // First after the access log, a rejected request costs nothing else
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 5);
+        return registration;
+    }
+}
@@ -0,0 +1,302 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes responses with zstd or gzip, whichever the client prefers in {@code Accept-Encoding}.
+ * It replaces the web server's own compression, which only knows gzip and would encode a zstd
+ * body a second time.
+ * <p>
+ * The first {@code devices.compression.min-response-size} bytes are buffered to decide: smaller
+ * responses and media types that are not configured are sent as they are. Streamed (async)
+ * responses are encoded from their first byte and every flush pushes a complete block to the
+ * client; the encoding is finished when the async request is dispatched back through this filter.
+ * A response written with a {@link WriteListener} (non-blocking) is sent uncompressed.
+ */
+class ResponseCompressionFilter extends OncePerRequestFilter {
+
+    static final String ZSTD = "zstd";
+    static final String GZIP = "gzip";
+
+    private final DevicesProperties.Compression properties;
+    private final List<MediaType> mediaTypes;
+
+    ResponseCompressionFilter(DevicesProperties.Compression properties) {
+        this.properties = properties;
+        this.mediaTypes = properties.getMimeTypes().stream().map(MediaType::parseMediaType).toList();
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        CompressingResponse compressingResponse = WebUtils.getNativeResponse(response, CompressingResponse.class);
+        if (compressingResponse == null) {
+            String encoding = preferredEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            if (encoding == null) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            compressingResponse = new CompressingResponse(request, response, encoding);
+            response = compressingResponse;
+        }
+        filterChain.doFilter(request, response);
+        // An async response is finished by the dispatch that ends it, which comes back here with the wrapper
+        if (!request.isAsyncStarted()) {
+            compressingResponse.finish();
+        }
+    }
+
+    // The coding with the highest q-value among zstd and gzip, zstd on a tie; null if neither is accepted
+    static String preferredEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double zstd = 0;
+        double gzip = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase(ZSTD)) {
+                zstd = quality;
+            } else if (name.equalsIgnoreCase(GZIP)) {
+                gzip = quality;
+            }
+        }
+        if (zstd > 0 && zstd >= gzip) {
+            return ZSTD;
+        }
+        return gzip > 0 ? GZIP : null;
+    }
+
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private final String encoding;
+        private final int threshold;
+        private ByteArrayOutputStream buffer;
+        // Where the bytes go once the decision is made: the encoder or the response itself
+        private OutputStream target;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+
+        CompressingResponse(HttpServletRequest request, HttpServletResponse response, String encoding) {
+            super(response);
+            this.request = request;
+            this.encoding = encoding;
+            this.threshold = (int) properties.getMinResponseSize().toBytes();
+            this.buffer = new ByteArrayOutputStream(Math.min(threshold, 8192));
+        }
+
+        // The length of the body as written is only kept in case it is sent as is
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                contentLength = value == null ? -1 : Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setHeader(name, value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        CompressingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        CompressingResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        CompressingResponse.this.flush();
+                    }
+
+                    // The encoders write blocking, only the response's own stream can be not ready
+                    @Override
+                    public boolean isReady() {
+                        return !(target instanceof ServletOutputStream stream) || stream.isReady();
+                    }
+
+                    // Non-blocking writes go to the response's own stream, so that response is sent uncompressed
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        try {
+                            sendUncompressed().setWriteListener(writeListener);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flush();
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (!request.isAsyncStarted() && buffer.size() + len < threshold) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                decide();
+            }
+            target.write(b, off, len);
+        }
+
+        // Until the decision is made the flush is deferred, to keep the bytes needed to make it
+        private void flush() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null && request.isAsyncStarted()) {
+                decide();
+            }
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        private void decide() throws IOException {
+            decide(compressible((HttpServletResponse) getResponse()));
+        }
+
+        private ServletOutputStream sendUncompressed() throws IOException {
+            if (target == null) {
+                decide(false);
+            }
+            if (!(target instanceof ServletOutputStream stream)) {
+                throw new IllegalStateException("The response is already being compressed");
+            }
+            return stream;
+        }
+
+        private void decide(boolean compress) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (compress) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                target = ZSTD.equals(encoding)
+                        ? new ZstdOutputStream(response.getOutputStream(), properties.getZstdLevel())
+                        : new LeveledGzipOutputStream(response.getOutputStream(), properties.getGzipLevel());
+            } else {
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        private boolean compressible(HttpServletResponse response) {
+            if (response.containsHeader(HttpHeaders.CONTENT_ENCODING) || response.getContentType() == null) {
+                return false;
+            }
+            MediaType mediaType = MediaType.parseMediaType(response.getContentType());
+            return mediaTypes.stream().anyMatch(type -> type.includes(mediaType));
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                // The whole body fits under the threshold: sent as is
+                HttpServletResponse response = (HttpServletResponse) getResponse();
+                if (buffer.size() > 0) {
+                    response.setContentLength(buffer.size());
+                    buffer.writeTo(response.getOutputStream());
+                } else if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                buffer = null;
+                target = response.getOutputStream();
+            } else if (target != getResponse().getOutputStream()) {
+                // Writes the end of the zstd frame or the gzip trailer, and closes the response
+                target.close();
+            }
+        }
+    }
+
+    // syncFlush, so a flush of a streamed response reaches the client as decodable data
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192, true);
+            def.setLevel(level);
+        }
+    }
+}
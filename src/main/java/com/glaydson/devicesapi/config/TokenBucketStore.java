@@ -0,0 +1,18 @@
+package com.glaydson.devicesapi.config;
+
+import java.time.Duration;
+
+/**
+ * Token buckets of the per-client rate limit of {@link RequestLimitFilter}, one per client. The
+ * default is {@link InMemoryTokenBucketStore}, which limits each instance on its own; declare a
+ * bean of this type to share the buckets between instances (e.g. in Redis).
+ */
+public interface TokenBucketStore {
+
+    /**
+     * Takes a token from the bucket of the client.
+     *
+     * @return {@link Duration#ZERO} if a token was taken, otherwise the time until the next one
+     */
+    Duration tryConsume(String client);
+}
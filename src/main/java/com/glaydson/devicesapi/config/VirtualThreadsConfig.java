@@ -0,0 +1,36 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Adjustments applied when requests run on virtual threads ({@code spring.threads.virtual.enabled=true},
+ * see the virtual-threads profile).
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfig {
+
+    // A cache miss in getDeviceById is computed by Caffeine inside a ConcurrentHashMap bin lock,
+    // which is a synchronized block: the findById inside it would pin the carrier thread for the
+    // whole query. In async mode the map only stores a future and the load runs on its own
+    // virtual thread outside the lock, concurrent misses still wait on that single load.
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> virtualThreadsCacheManagerCustomizer(CacheProperties cacheProperties) {
+        return cacheManager -> {
+            String spec = cacheProperties.getCaffeine().getSpec();
+            Caffeine<Object, Object> caffeine = StringUtils.hasText(spec) ? Caffeine.from(spec) : Caffeine.newBuilder();
+            cacheManager.setCaffeine(caffeine.executor(Executors.newVirtualThreadPerTaskExecutor()));
+            cacheManager.setAsyncCacheMode(true);
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.glaydson.devicesapi.controller;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import com.glaydson.devicesapi.service.DeviceChangeFeed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Server-Sent Events stream of the device changes, for clients that would otherwise poll the
+ * list or search endpoints. Every change is a {@code message} event whose id is its sequence,
+ * so a reconnecting EventSource resumes with {@code Last-Event-ID}; other clients can pass
+ * {@code since}. A {@code reset} event first means the changes since then are lost and the
+ * client has to re-read the devices it follows.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/devices")
+public class DeviceChangeController {
+
+    private final DeviceChangeFeed deviceChangeFeed;
+    private final DevicesProperties.Changes properties;
+
+    public DeviceChangeController(DeviceChangeFeed deviceChangeFeed, DevicesProperties properties) {
+        this.deviceChangeFeed = deviceChangeFeed;
+        this.properties = properties.getChanges();
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        DeviceChangeFeed.Subscription subscription = deviceChangeFeed.subscribe(lastEventId != null ? lastEventId : since);
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        // One virtual thread per subscriber does the blocking writes, publishing only queues the changes
+        Thread sender = Thread.ofVirtual().name("device-changes-sender").unstarted(() -> send(subscription, emitter));
+        emitter.onCompletion(() -> stop(subscription, sender));
+        // The emitter counts as complete once it has timed out, so complete() here would do nothing. The
+        // timeout is dispatched as AsyncRequestTimeoutException, GlobalExceptionHandler leaves the stream as it is
+        emitter.onTimeout(() -> stop(subscription, sender));
+        emitter.onError(e -> stop(subscription, sender));
+        sender.start();
+        log.debug("Change feed subscription from sequence {}", subscription.getStartSequence());
+        return emitter;
+    }
+
+    private void send(DeviceChangeFeed.Subscription subscription, SseEmitter emitter) {
+        Duration heartbeatInterval = properties.getHeartbeatInterval();
+        try (subscription) {
+            if (subscription.isReset()) {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(subscription.getStartSequence()))
+                        .name("reset")
+                        .data(Map.of("sequence", subscription.getStartSequence()), MediaType.APPLICATION_JSON));
+            }
+            while (true) {
+                DeviceChange change = subscription.next(heartbeatInterval);
+                if (change != null) {
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(change.sequence()))
+                            .data(change, MediaType.APPLICATION_JSON));
+                } else if (subscription.isEnded()) {
+                    // Evicted: the client reconnects with the last id it got and catches up from the replay buffer
+                    emitter.complete();
+                    return;
+                } else {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client went away or the emitter timed out
+            log.debug("Change feed subscription closed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            // Stopped: end the response too, unless the emitter already is
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        }
+    }
+
+    private static void stop(DeviceChangeFeed.Subscription subscription, Thread sender) {
+        subscription.close();
+        sender.interrupt();
+    }
+}
@@ -1,16 +1,55 @@
 package com.glaydson.devicesapi.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.glaydson.devicesapi.config.AccessLogFilter;
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.BulkOperationResult;
+import com.glaydson.devicesapi.dto.DeviceBulkUpdateRequest;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DevicePage;
 import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.dto.DeviceSearchBatchResult;
 import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceSearchResults;
+import com.glaydson.devicesapi.dto.DeviceStats;
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.exception.InvalidSearchException;
 import com.glaydson.devicesapi.exception.ResourceNotFoundException;
 import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceBulkService;
+import com.glaydson.devicesapi.service.DeviceCollectionVersion;
+import com.glaydson.devicesapi.service.DeviceQueryCache;
 import com.glaydson.devicesapi.service.DeviceService;
+import com.glaydson.devicesapi.service.DeviceStatsService;
+import com.glaydson.devicesapi.service.DeviceTextSearchService;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 
 @Slf4j
 @RestController
@@ -43,7 +82,6 @@ public class DeviceController {
     // - Disaster recovery
     // - Load balancing
     // - Caching
-    // - Rate limiting
     // - Circuit breaking
     // - Service discovery
     // - API gateway
@@ -53,58 +91,361 @@ public class DeviceController {
     // - https://www.baeldung.com/spring-security-method-security
     // - https://www.baeldung.com/spring-security-role-and-privilege
     // - https://www.baeldung.com/spring-security-oauth2-authentication
-    // if a query takes too long, what to do
 
     public static final String DEVICE_NOT_FOUND_FOR_THIS_ID = "Device not found for this id :: ";
+    // Timer (and trace span) of the service calls, tagged with operation, criteria shape and error
+    public static final String OPERATION_METRIC = "devices.operation";
+    private static final String NO_CRITERIA = "none";
     private final DeviceService deviceService;
+    private final DeviceBulkService deviceBulkService;
+    private final DeviceStatsService deviceStatsService;
+    private final DeviceTextSearchService deviceTextSearchService;
+    private final DeviceQueryCache deviceQueryCache;
+    private final DeviceCollectionVersion collectionVersion;
+    private final DevicesProperties.HttpCache httpCache;
+    private final ObjectMapper objectMapper;
+    private final ObservationRegistry observationRegistry;
 
-    public DeviceController(DeviceService deviceService) {
+    public DeviceController(DeviceService deviceService, DeviceBulkService deviceBulkService,
+                            DeviceStatsService deviceStatsService, DeviceTextSearchService deviceTextSearchService,
+                            DeviceQueryCache deviceQueryCache, DeviceCollectionVersion collectionVersion,
+                            DevicesProperties properties, ObjectMapper objectMapper, ObservationRegistry observationRegistry) {
         this.deviceService = deviceService;
+        this.deviceBulkService = deviceBulkService;
+        this.deviceStatsService = deviceStatsService;
+        this.deviceTextSearchService = deviceTextSearchService;
+        this.deviceQueryCache = deviceQueryCache;
+        this.collectionVersion = collectionVersion;
+        this.httpCache = properties.getHttpCache();
+        this.objectMapper = objectMapper;
+        this.observationRegistry = observationRegistry;
     }
 
     @PostMapping("")
     public ResponseEntity<Device> createDevice(@RequestBody DeviceRequest deviceRequest) {
-        log.info("Creating device: {}", deviceRequest);
-        Device createdDevice = deviceService.createDevice(deviceRequest);
-        log.info("Created device: {}", createdDevice);
-        return ResponseEntity.ok(createdDevice);
+        // Requests are in the access log (AccessLogFilter); payloads are only formatted when DEBUG is on
+        log.debug("Creating device: {}", deviceRequest);
+        Device createdDevice = operation("create").observe(() -> deviceService.createDevice(deviceRequest));
+        log.debug("Created device: {}", createdDevice);
+        return withETag(ResponseEntity.ok(), createdDevice).body(createdDevice);
+    }
+
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkOperationResult> createDevices(@RequestBody List<DeviceRequest> deviceRequests) {
+        log.debug("Bulk creating {} devices", deviceRequests.size());
+        BulkOperationResult result = deviceBulkService.createDevices(deviceRequests);
+        log.info("Bulk create finished: {} succeeded, {} failed", result.getSucceeded(), result.getFailed());
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BulkOperationResult> createDevicesFromNdjson(InputStream body) {
+        log.debug("Bulk creating devices from NDJSON");
+        BulkOperationResult result = deviceBulkService.createDevices(readNdjson(body, DeviceRequest.class));
+        log.info("Bulk create finished: {} succeeded, {} failed", result.getSucceeded(), result.getFailed());
+        return ResponseEntity.ok(result);
+    }
+
+    @PutMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkOperationResult> updateDevices(@RequestBody List<DeviceBulkUpdateRequest> deviceRequests) {
+        log.debug("Bulk updating {} devices", deviceRequests.size());
+        BulkOperationResult result = deviceBulkService.updateDevices(deviceRequests);
+        log.info("Bulk update finished: {} succeeded, {} failed", result.getSucceeded(), result.getFailed());
+        return ResponseEntity.ok(result);
+    }
+
+    @PutMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BulkOperationResult> updateDevicesFromNdjson(InputStream body) {
+        log.debug("Bulk updating devices from NDJSON");
+        BulkOperationResult result = deviceBulkService.updateDevices(readNdjson(body, DeviceBulkUpdateRequest.class));
+        log.info("Bulk update finished: {} succeeded, {} failed", result.getSucceeded(), result.getFailed());
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<BulkOperationResult> deleteDevices(@RequestBody List<Long> ids) {
+        log.debug("Bulk deleting {} devices", ids.size());
+        BulkOperationResult result = deviceBulkService.deleteDevices(ids);
+        log.info("Bulk delete finished: {} succeeded, {} failed", result.getSucceeded(), result.getFailed());
+        return ResponseEntity.ok(result);
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Device> updateDevice(@PathVariable Long id, @RequestBody DeviceRequest deviceRequest) {
-        log.info("Updating device with id: {}", id);
-        Device updatedDevice = deviceService.updateDevice(id, deviceRequest);
-        log.info("Updated device: {}", updatedDevice);
-        return ResponseEntity.ok(updatedDevice);
+    public ResponseEntity<Device> updateDevice(@PathVariable Long id, @RequestBody DeviceRequest deviceRequest,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("Updating device with id: {}", id);
+        Long expectedVersion = DeviceETags.expectedVersion(ifMatch);
+        Device updatedDevice = operation("update").observe(() -> deviceService.updateDevice(id, deviceRequest, expectedVersion));
+        log.debug("Updated device: {}", updatedDevice);
+        return withETag(ResponseEntity.ok(), updatedDevice).body(updatedDevice);
+    }
+
+    @PostMapping("/{id}/checkout")
+    public ResponseEntity<Device> checkOutDevice(@PathVariable Long id) {
+        log.debug("Checking out device with id: {}", id);
+        Device device = operation("checkout").observe(() -> deviceService.checkOutDevice(id));
+        return withETag(ResponseEntity.ok(), device).body(device);
+    }
+
+    @PostMapping("/{id}/checkin")
+    public ResponseEntity<Device> checkInDevice(@PathVariable Long id) {
+        log.debug("Checking in device with id: {}", id);
+        Device device = operation("checkin").observe(() -> deviceService.checkInDevice(id));
+        return withETag(ResponseEntity.ok(), device).body(device);
+    }
+
+    @PostMapping("/checkout")
+    public ResponseEntity<Device> checkOutAnyDevice(@RequestParam String brand) {
+        log.debug("Checking out any device of brand: {}", brand);
+        Device device = operation("checkoutAny").observe(() -> deviceService.checkOutAnyDevice(brand));
+        log.debug("Checked out device with id: {}", device.getId());
+        return withETag(ResponseEntity.ok(), device).body(device);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Device> getDeviceById(@PathVariable Long id) {
-        log.info("Getting device with id: {}", id);
-        Device device = deviceService.getDeviceById(id);
-        return ResponseEntity.ok(device);
+    public ResponseEntity<Device> getDeviceById(@PathVariable Long id, WebRequest webRequest) {
+        log.debug("Getting device with id: {}", id);
+        Device device = operation("getById").observe(() -> deviceService.getDeviceById(id));
+        String etag = DeviceETags.of(device);
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            // If-None-Match matched: the 304 status and the ETag header are already set
+            return null;
+        }
+        return withETag(ResponseEntity.ok(), device).body(device);
     }
 
+    // Criteria come from the query string, e.g. ?brand=Apple&state=AVAILABLE&createdAfter=2024-01-01T00:00:00.
+    // A body used to carry them; it is refused rather than ignored, ignoring it would return every device
     @GetMapping("/search")
-    public ResponseEntity<List<Device>> getDevicesByCriteria(@RequestBody DeviceSearchCriteria criteria) {
-        log.info("Searching devices with criteria: {}", criteria);
-        List<Device> devices = deviceService.getDevicesByCriteria(criteria);
-        return ResponseEntity.ok(devices);
+    public ResponseEntity<List<DeviceView>> getDevicesByCriteria(@ModelAttribute DeviceSearchCriteria criteria,
+                                                                 @RequestParam(required = false) String fields,
+                                                                 HttpServletRequest request) {
+        if (request.getContentLengthLong() > 0) {
+            throw new InvalidSearchException("Search criteria go in the query string, or in the body of POST /search");
+        }
+        Set<DeviceField> selectedFields = DeviceField.parse(fields);
+        DeviceCollectionVersion.Watermark watermark = watermark();
+        if (watermark != null && notModified(request, watermark)) {
+            return withWatermark(ResponseEntity.status(HttpStatus.NOT_MODIFIED), watermark).build();
+        }
+        List<DeviceView> devices = search(criteria, selectedFields, watermark);
+        return withWatermark(ResponseEntity.ok(), watermark).body(devices);
+    }
+
+    // The same search with the criteria in a JSON body, for clients that cannot send a query string
+    @PostMapping("/search")
+    public ResponseEntity<List<DeviceView>> searchDevices(@RequestBody DeviceSearchCriteria criteria,
+                                                          @RequestParam(required = false) String fields) {
+        return ResponseEntity.ok(search(criteria, DeviceField.parse(fields), watermark()));
+    }
+
+    // Many searches in one request and one query, the results are in the order of the criteria
+    @PostMapping("/search/batch")
+    public ResponseEntity<List<DeviceSearchBatchResult>> getDevicesByCriteriaBatch(@RequestBody List<DeviceSearchCriteria> criteria,
+                                                                                   @RequestParam(required = false) String fields) {
+        log.debug("Batch search of devices with {} criteria", criteria.size());
+        Set<DeviceField> selectedFields = DeviceField.parse(fields);
+        List<DeviceSearchBatchResult> results = operation("searchBatch", "batch")
+                .observe(() -> deviceService.getDevicesByCriteriaBatch(criteria, selectedFields));
+        return ResponseEntity.ok(results);
+    }
+
+    @GetMapping("/text-search")
+    public ResponseEntity<DeviceSearchResults> searchDevicesByText(@RequestParam String q,
+                                                                   @RequestParam(required = false) String mode,
+                                                                   @RequestParam(required = false) Integer page,
+                                                                   @RequestParam(required = false) Integer limit,
+                                                                   @RequestParam(required = false) String fields) {
+        log.debug("Text search of devices in {} mode for: {}", mode, q);
+        DeviceTextSearchMode searchMode = DeviceTextSearchMode.parse(mode);
+        Set<DeviceField> selectedFields = DeviceField.parse(fields);
+        DeviceSearchResults results = operation("textSearch", searchMode.name().toLowerCase(Locale.ROOT))
+                .observe(() -> deviceTextSearchService.search(q, searchMode, page, limit, selectedFields));
+        return ResponseEntity.ok(results);
+    }
+
+    // Served from in-memory counters, use it instead of /search when only the counts are needed
+    @GetMapping("/stats")
+    public ResponseEntity<DeviceStats> getDeviceStats() {
+        log.debug("Getting device stats");
+        return ResponseEntity.ok(deviceStatsService.getStats());
     }
 
     @GetMapping
-    public ResponseEntity<List<Device>> getAllDevices() {
-        log.info("Getting all devices");
-        List<Device> devices = deviceService.getAllDevices();
-        return ResponseEntity.ok(devices);
+    public ResponseEntity<DevicePage> getAllDevices(@RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    @RequestParam(required = false) String fields,
+                                                    HttpServletRequest request) {
+        log.debug("Getting devices page after cursor: {}, limit: {}", cursor, limit);
+        Set<DeviceField> selectedFields = DeviceField.parse(fields);
+        DeviceCollectionVersion.Watermark watermark = watermark();
+        if (watermark == null) {
+            return ResponseEntity.ok(deviceService.getDevicesPage(cursor, limit, selectedFields));
+        }
+        // Answered from the version alone, no query while nothing was written
+        if (notModified(request, watermark)) {
+            return withWatermark(ResponseEntity.status(HttpStatus.NOT_MODIFIED), watermark).build();
+        }
+        DevicePage page = deviceQueryCache.getDevicesPage(watermark, cursor, limit, selectedFields);
+        return withWatermark(ResponseEntity.ok(), watermark).body(page);
+    }
+
+    // Multi-get, GET /api/v1/devices?ids=1,2,3: one query, devices in the order asked, unknown ids left out
+    @GetMapping(params = "ids")
+    public ResponseEntity<DevicePage> getDevicesByIds(@RequestParam List<Long> ids,
+                                                      @RequestParam(required = false) String fields) {
+        log.debug("Getting {} devices by id", ids.size());
+        Set<DeviceField> selectedFields = DeviceField.parse(fields);
+        List<DeviceView> devices = operation("getByIds").observe(() -> deviceService.getDevicesByIds(ids, selectedFields));
+        return ResponseEntity.ok(new DevicePage(devices, null));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllDevicesAsNdjson() {
+        log.debug("Streaming all devices as NDJSON");
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                // One JSON document per line, without Jackson's default space between root values
+                generator.setRootValueSeparator(null);
+                deviceService.streamAllDevices(chunk -> {
+                    try {
+                        for (Device device : chunk) {
+                            generator.writeObject(device);
+                            generator.writeRaw('\n');
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllDevicesAsJsonArray() {
+        log.debug("Streaming all devices as a JSON array");
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartArray();
+                deviceService.streamAllDevices(chunk -> {
+                    try {
+                        for (Device device : chunk) {
+                            generator.writeObject(device);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteDevice(@PathVariable Long id) {
+    public ResponseEntity<Void> deleteDevice(@PathVariable Long id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
-       log.info("Deleting device with id: {}", id);
-        deviceService.deleteDevice(id);
+        log.debug("Deleting device with id: {}", id);
+        Long expectedVersion = DeviceETags.expectedVersion(ifMatch);
+        operation("delete").observe(() -> deviceService.deleteDevice(id, expectedVersion));
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    // Repeated searches are served from the query cache while the collection version has not moved
+    private List<DeviceView> search(DeviceSearchCriteria criteria, Set<DeviceField> fields,
+                                    DeviceCollectionVersion.Watermark watermark) {
+        log.debug("Searching devices with criteria: {}", criteria);
+        return operation("search", criteriaShape(criteria)).observe(() -> watermark == null
+                ? deviceService.getDevicesByCriteria(criteria, fields)
+                : deviceQueryCache.getDevicesByCriteria(watermark, criteria, fields));
+    }
+
+    // Null when HTTP caching is off (devices.http-cache.enabled)
+    private DeviceCollectionVersion.Watermark watermark() {
+        return httpCache.isEnabled() ? collectionVersion.current() : null;
+    }
+
+    private static boolean notModified(HttpServletRequest request, DeviceCollectionVersion.Watermark watermark) {
+        return DeviceETags.notModified(request.getHeader(HttpHeaders.IF_NONE_MATCH),
+                request.getHeader(HttpHeaders.IF_MODIFIED_SINCE), DeviceETags.of(watermark), lastModified(watermark));
+    }
+
+    private ResponseEntity.BodyBuilder withWatermark(ResponseEntity.BodyBuilder builder,
+                                                     DeviceCollectionVersion.Watermark watermark) {
+        if (watermark == null) {
+            return builder;
+        }
+        builder.eTag(DeviceETags.of(watermark))
+                .cacheControl(CacheControl.maxAge(httpCache.getMaxAge()).mustRevalidate());
+        Instant lastModified = lastModified(watermark);
+        return lastModified == null ? builder : builder.lastModified(lastModified);
+    }
+
+    // Last-Modified counts whole seconds, so it is only used once the second of the last write is
+    // over: another write within that second would leave it unchanged
+    private static Instant lastModified(DeviceCollectionVersion.Watermark watermark) {
+        Instant lastModified = watermark.lastModified();
+        return lastModified.getEpochSecond() < Instant.now().getEpochSecond() ? lastModified : null;
+    }
+
+    private Observation operation(String operation) {
+        return operation(operation, NO_CRITERIA);
+    }
+
+    // The service call only, so cache hits and misses show up and serialization does not
+    private Observation operation(String operation, String criteria) {
+        if (!criteria.equals(NO_CRITERIA)) {
+            AccessLogFilter.criteria(criteria);
+        }
+        return Observation.createNotStarted(OPERATION_METRIC, observationRegistry)
+                .contextualName("devices " + operation)
+                .lowCardinalityKeyValue("operation", operation)
+                .lowCardinalityKeyValue("criteria", criteria);
+    }
+
+    // Which fields the search filters on, never their values, to keep the tag cardinality fixed
+    private static String criteriaShape(DeviceSearchCriteria criteria) {
+        String shape;
+        if (criteria.getBrand() != null && criteria.getState() != null) {
+            shape = "brand,state";
+        } else if (criteria.getBrand() != null) {
+            shape = "brand";
+        } else {
+            shape = criteria.getState() != null ? "state" : "all";
+        }
+        if (!criteria.hasCreationRange()) {
+            return shape;
+        }
+        return shape.equals("all") ? "created" : shape + ",created";
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder builder, Device device) {
+        String etag = DeviceETags.of(device);
+        return etag == null ? builder : builder.eTag(etag);
+    }
+
+    // Parses an NDJSON body lazily, one line at a time, so a large upload is never held in memory.
+    // A line that cannot be parsed becomes a null item, which the bulk service reports as failed
+    private <T> Iterable<T> readNdjson(InputStream body, Class<T> type) {
+        ObjectReader reader = objectMapper.readerFor(type);
+        BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        return () -> lines.lines()
+                .filter(line -> !line.isBlank())
+                .map(line -> this.<T>readNdjsonLine(reader, line))
+                .iterator();
+    }
+
+    private <T> T readNdjsonLine(ObjectReader reader, String line) {
+        try {
+            return reader.readValue(line);
+        } catch (JsonProcessingException e) {
+            log.warn("Skipping malformed NDJSON line: {}", e.getOriginalMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.glaydson.devicesapi.controller;
+
+import com.glaydson.devicesapi.exception.PreconditionFailedException;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceCollectionVersion;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Maps a device version to a strong ETag and back, and the collection version to the weak ETag
+ * of the list and search responses, for the conditional request headers.
+ */
+final class DeviceETags {
+
+    private DeviceETags() {
+    }
+
+    static String of(Device device) {
+        return device.getVersion() == null ? null : "\"" + device.getVersion() + "\"";
+    }
+
+    // Weak: the same list is sent as JSON or CBOR, compressed or not, which are not byte for byte equal
+    static String of(DeviceCollectionVersion.Watermark watermark) {
+        return "W/\"" + Long.toString(watermark.epoch(), 36) + "-" + watermark.version() + "\"";
+    }
+
+    // If-None-Match with the weak comparison, or If-Modified-Since when there is no If-None-Match.
+    // lastModified is null when it cannot be relied on, If-Modified-Since is then ignored
+    static boolean notModified(String ifNoneMatch, String ifModifiedSince, String etag, Instant lastModified) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || opaque(tag).equals(opaque(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        try {
+            ZonedDateTime since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return lastModified.getEpochSecond() <= since.toEpochSecond();
+        } catch (DateTimeParseException e) {
+            // An invalid date is ignored
+            return false;
+        }
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    // Parses If-Match into the version the client expects. Null when the header is absent or "*",
+    // in which case the write is unconditional (a missing device still gives 404)
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.contains(",")) {
+            throw new PreconditionFailedException("Only a single ETag is supported in If-Match");
+        }
+        // If-Match uses the strong comparison, a weak ETag never matches
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            throw new PreconditionFailedException("ETag " + tag + " does not match the device");
+        }
+        try {
+            return Long.parseLong(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("ETag " + tag + " does not match the device");
+        }
+    }
+}
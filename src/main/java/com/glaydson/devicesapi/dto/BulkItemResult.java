@@ -0,0 +1,31 @@
+package com.glaydson.devicesapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+// Outcome of one item of a bulk request, index is the position of the item in the request
+public class BulkItemResult {
+    private int index;
+    private Long id;
+    private Status status;
+    private String error;
+
+    public static BulkItemResult succeeded(int index, Long id, Status status) {
+        return new BulkItemResult(index, id, status, null);
+    }
+
+    public static BulkItemResult failed(int index, Long id, String error) {
+        return new BulkItemResult(index, id, Status.FAILED, error);
+    }
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        FAILED
+    }
+}
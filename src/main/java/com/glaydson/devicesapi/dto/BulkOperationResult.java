@@ -0,0 +1,28 @@
+package com.glaydson.devicesapi.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+@Data
+// Per-item results of a bulk request, a failed item does not fail the others
+public class BulkOperationResult {
+    private int succeeded;
+    private int failed;
+    private List<BulkItemResult> results = new ArrayList<>();
+
+    public void add(BulkItemResult result) {
+        results.add(result);
+        if (result.getStatus() == BulkItemResult.Status.FAILED) {
+            failed++;
+        } else {
+            succeeded++;
+        }
+    }
+
+    public void sortByIndex() {
+        results.sort(Comparator.comparingInt(BulkItemResult::getIndex));
+    }
+}
@@ -0,0 +1,19 @@
+package com.glaydson.devicesapi.dto;
+
+import com.glaydson.devicesapi.model.Device;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+// One item of a bulk update: the device id plus the same fields as a single update
+public class DeviceBulkUpdateRequest extends DeviceRequest {
+    private Long id;
+
+    public DeviceBulkUpdateRequest(Long id, String name, String brand, Device.State state) {
+        super(name, brand, state);
+        this.id = id;
+    }
+}
@@ -0,0 +1,28 @@
+package com.glaydson.devicesapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceChangedEvent;
+
+import java.time.Instant;
+
+/**
+ * One committed change as sent by {@code GET /api/v1/devices/changes}. {@code sequence} orders
+ * the changes and is the SSE event id to resume from. {@code previousState} is absent for a
+ * creation and {@code state} for a deletion; {@code device} is the device after the change,
+ * or as it was when deleted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DeviceChange(long sequence, DeviceChangedEvent.Type type, Long deviceId, Device.State previousState,
+                           Device.State state, DeviceView device, Instant timestamp) {
+
+    public static DeviceChange of(long sequence, DeviceChangedEvent event, Instant timestamp) {
+        Device before = event.before();
+        Device after = event.after();
+        return new DeviceChange(sequence, event.type(), event.deviceId(),
+                before != null ? before.getState() : null,
+                after != null ? after.getState() : null,
+                DeviceView.of(after != null ? after : before),
+                timestamp);
+    }
+}
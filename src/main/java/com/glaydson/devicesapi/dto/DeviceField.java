@@ -0,0 +1,53 @@
+package com.glaydson.devicesapi.dto;
+
+import com.glaydson.devicesapi.exception.InvalidFieldsException;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// The device fields a client can ask for with fields=, by their JSON (and entity attribute) name
+public enum DeviceField {
+    ID("id"),
+    NAME("name"),
+    BRAND("brand"),
+    STATE("state"),
+    CREATION_TIME("creationTime"),
+    VERSION("version");
+
+    private final String attribute;
+
+    DeviceField(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public static Set<DeviceField> all() {
+        return EnumSet.allOf(DeviceField.class);
+    }
+
+    // Parses a comma separated list such as "id,state"; null or blank means every field.
+    // The id is always included, the page cursor is built from it
+    public static Set<DeviceField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return all();
+        }
+        Set<DeviceField> parsed = EnumSet.of(ID);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            parsed.add(Arrays.stream(values())
+                    .filter(field -> field.attribute.equals(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new InvalidFieldsException("Unknown field :: " + trimmed + ", expected any of "
+                            + Arrays.stream(values()).map(DeviceField::getAttribute).collect(Collectors.joining(",")))));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,14 @@
+package com.glaydson.devicesapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+// A page of devices ordered by id; nextCursor is null on the last page
+public class DevicePage {
+    private List<DeviceView> devices;
+    private String nextCursor;
+}
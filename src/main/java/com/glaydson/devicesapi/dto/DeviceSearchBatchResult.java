@@ -0,0 +1,14 @@
+package com.glaydson.devicesapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+// The devices matching one of the criteria of a batch search, ordered by id
+public class DeviceSearchBatchResult {
+    private DeviceSearchCriteria criteria;
+    private List<DeviceView> devices;
+}
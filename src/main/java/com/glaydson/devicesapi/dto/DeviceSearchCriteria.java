@@ -3,12 +3,43 @@ package com.glaydson.devicesapi.dto;
 import com.glaydson.devicesapi.model.Device;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
-// At this time, we are searching only by brand and state
+// Searching by brand, state and creation time range; the range is half-open, createdAfter inclusive.
+// Read from the query string of GET /search (ISO date-times) or from a JSON body
 public class DeviceSearchCriteria {
     private String brand;
     private Device.State state;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdAfter;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdBefore;
+
+    public DeviceSearchCriteria(String brand, Device.State state) {
+        this.brand = brand;
+        this.state = state;
+    }
+
+    public boolean hasCreationRange() {
+        return createdAfter != null || createdBefore != null;
+    }
 
-}
\ No newline at end of file
+    // Evaluated like the SQL predicate: a device without a creation time is outside of any range
+    public boolean matches(String deviceBrand, Device.State deviceState, LocalDateTime creationTime) {
+        if ((brand != null && !brand.equals(deviceBrand)) || (state != null && state != deviceState)) {
+            return false;
+        }
+        if (!hasCreationRange()) {
+            return true;
+        }
+        return creationTime != null
+                && (createdAfter == null || !creationTime.isBefore(createdAfter))
+                && (createdBefore == null || creationTime.isBefore(createdBefore));
+    }
+}
@@ -0,0 +1,14 @@
+package com.glaydson.devicesapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+// A page of text search results, best match first; nextPage is null on the last page
+public class DeviceSearchResults {
+    private List<DeviceView> devices;
+    private Integer nextPage;
+}
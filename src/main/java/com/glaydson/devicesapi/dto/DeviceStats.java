@@ -0,0 +1,20 @@
+package com.glaydson.devicesapi.dto;
+
+import com.glaydson.devicesapi.model.Device;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+// Device counts, overall and per facet; brands and states without devices are left out
+public class DeviceStats {
+    private long total;
+    private Map<Device.State, Long> byState;
+    private Map<String, Long> byBrand;
+    private Map<String, Map<Device.State, Long>> byBrandAndState;
+    // When the counters were last checked against the database
+    private Instant reconciledAt;
+}
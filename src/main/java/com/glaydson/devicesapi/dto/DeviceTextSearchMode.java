@@ -0,0 +1,26 @@
+package com.glaydson.devicesapi.dto;
+
+import com.glaydson.devicesapi.exception.InvalidSearchException;
+
+import java.util.Locale;
+
+/**
+ * How the words of a text search match the words of a device name and brand.
+ */
+public enum DeviceTextSearchMode {
+    // Every word is the start of a word, for typeahead: "app iph" finds "Apple iPhone"
+    PREFIX,
+    // Every word is a whole word, in any order: "iphone apple" finds "Apple iPhone"
+    TOKENS;
+
+    public static DeviceTextSearchMode parse(String mode) {
+        if (mode == null || mode.isBlank()) {
+            return PREFIX;
+        }
+        try {
+            return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSearchException("Unknown search mode " + mode + ", use prefix or tokens");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.glaydson.devicesapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.glaydson.devicesapi.model.Device;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Read-only device as returned by the list and search endpoints, queried column by column
+ * instead of loading managed entities. Fields left out with {@code fields=} are null and
+ * not serialized.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DeviceView(Long id, String name, String brand, Device.State state, LocalDateTime creationTime,
+                         Long version) {
+
+    public static DeviceView of(Device device) {
+        return new DeviceView(device.getId(), device.getName(), device.getBrand(), device.getState(),
+                device.getCreationTime(), device.getVersion());
+    }
+
+    // The same view with only the given fields
+    public DeviceView select(Set<DeviceField> fields) {
+        return new DeviceView(
+                fields.contains(DeviceField.ID) ? id : null,
+                fields.contains(DeviceField.NAME) ? name : null,
+                fields.contains(DeviceField.BRAND) ? brand : null,
+                fields.contains(DeviceField.STATE) ? state : null,
+                fields.contains(DeviceField.CREATION_TIME) ? creationTime : null,
+                fields.contains(DeviceField.VERSION) ? version : null);
+    }
+}
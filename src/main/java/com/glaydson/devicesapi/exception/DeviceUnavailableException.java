@@ -0,0 +1,8 @@
+package com.glaydson.devicesapi.exception;
+
+// The device is not in the state a check-out or check-in needs, usually because another client got there first
+public class DeviceUnavailableException extends RuntimeException {
+    public DeviceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -1,32 +1,127 @@
 // src/main/java/com/glaydson/devicesapi/exception/GlobalExceptionHandler.java
 package com.glaydson.devicesapi.exception;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    // Counter of handled errors, tagged with the exception class and the response status
+    public static final String ERRORS_METRIC = "devices.errors";
+    // Seconds a client is asked to wait after a query timeout
+    static final String QUERY_TIMEOUT_RETRY_AFTER_SECONDS = "1";
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<String> resourceNotFoundException(ResourceNotFoundException ex, WebRequest request) {
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
+        return respond(ex, ex.getMessage(), HttpStatus.NOT_FOUND);
     }
 
     @ExceptionHandler(InvalidDeviceStateException.class)
     public ResponseEntity<String> invalidDeviceStateException(InvalidDeviceStateException ex, WebRequest request) {
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+        return respond(ex, ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(DeviceInUseException.class)
     public ResponseEntity<String> deviceInUseException(DeviceInUseException ex, WebRequest request) {
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+        return respond(ex, ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(MissingFieldsException.class)
+    public ResponseEntity<String> missingFieldsException(MissingFieldsException ex, WebRequest request) {
+        return respond(ex, ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> invalidCursorException(InvalidCursorException ex, WebRequest request) {
+        return respond(ex, ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidFieldsException.class)
+    public ResponseEntity<String> invalidFieldsException(InvalidFieldsException ex, WebRequest request) {
+        return respond(ex, ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidSearchException.class)
+    public ResponseEntity<String> invalidSearchException(InvalidSearchException ex, WebRequest request) {
+        return respond(ex, ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<String> preconditionFailedException(PreconditionFailedException ex, WebRequest request) {
+        return respond(ex, ex.getMessage(), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler(DeviceUnavailableException.class)
+    public ResponseEntity<String> deviceUnavailableException(DeviceUnavailableException ex, WebRequest request) {
+        return respond(ex, ex.getMessage(), HttpStatus.CONFLICT);
+    }
+
+    // Another request changed the device between our read and our write
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> optimisticLockingFailureException(OptimisticLockingFailureException ex, WebRequest request) {
+        return respond(ex, "Device was modified concurrently, reload it and retry", HttpStatus.CONFLICT);
+    }
+
+    // A statement ran longer than devices.limits.query-timeout and was cancelled, the database is busy
+    @ExceptionHandler(QueryTimeoutException.class)
+    public ResponseEntity<String> queryTimeoutException(QueryTimeoutException ex, WebRequest request) {
+        ResponseEntity<String> response = respond(ex, "The query took too long, retry later", HttpStatus.SERVICE_UNAVAILABLE);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, QUERY_TIMEOUT_RETRY_AFTER_SECONDS)
+                .body(response.getBody());
+    }
+
+    // A path variable or request parameter that does not parse, e.g. ids=1,x
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<String> methodArgumentTypeMismatchException(MethodArgumentTypeMismatchException ex, WebRequest request) {
+        return respond(ex, "Invalid value for " + ex.getName() + ": " + ex.getValue(), HttpStatus.BAD_REQUEST);
+    }
+
+    // A search parameter that does not bind to the criteria, e.g. state=BROKEN
+    @ExceptionHandler(BindException.class)
+    public ResponseEntity<String> bindException(BindException ex, WebRequest request) {
+        FieldError error = ex.getFieldError();
+        String body = error == null ? "Invalid request parameters"
+                : "Invalid value for " + error.getField() + ": " + error.getRejectedValue();
+        return respond(ex, body, HttpStatus.BAD_REQUEST);
+    }
+
+    // An async request that reached its timeout. The change feed of DeviceChangeController ends this
+    // way: its events are already sent, so the response is left as it is and not counted as an error
+    @ExceptionHandler(AsyncRequestTimeoutException.class)
+    public ResponseEntity<String> asyncRequestTimeoutException(AsyncRequestTimeoutException ex, HttpServletResponse response) {
+        if (response.isCommitted()) {
+            return null;
+        }
+        return respond(ex, "The request took too long, retry later", HttpStatus.SERVICE_UNAVAILABLE);
     }
 
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> globalExceptionHandler(Exception ex, WebRequest request) {
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        return respond(ex, ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private ResponseEntity<String> respond(Exception ex, String body, HttpStatus status) {
+        meterRegistry.counter(ERRORS_METRIC, "exception", ex.getClass().getSimpleName(),
+                "status", String.valueOf(status.value())).increment();
+        return new ResponseEntity<>(body, status);
     }
-}
\ No newline at end of file
+}
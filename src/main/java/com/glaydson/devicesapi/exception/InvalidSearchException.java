@@ -0,0 +1,7 @@
+package com.glaydson.devicesapi.exception;
+
+public class InvalidSearchException extends RuntimeException {
+    public InvalidSearchException(String message) {
+        super(message);
+    }
+}
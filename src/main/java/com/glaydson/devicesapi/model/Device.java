@@ -14,8 +14,10 @@ import lombok.*;
 @NoArgsConstructor
 @ToString
 public class Device {
+    // Ids come from a sequence in blocks of 50 (pooled-lo), so inserts can be batched by Hibernate
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "devices_id_seq")
+    @SequenceGenerator(name = "devices_id_seq", sequenceName = "devices_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "name", nullable = false)
@@ -31,6 +33,19 @@ public class Device {
     @Column(name = "creation_time", updatable = false)
     private LocalDateTime creationTime;
 
+    // Optimistic lock: every UPDATE/DELETE checks it, and it is exposed to clients as the ETag
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    public Device(Long id, String name, String brand, State state, LocalDateTime creationTime) {
+        this.id = id;
+        this.name = name;
+        this.brand = brand;
+        this.state = state;
+        this.creationTime = creationTime;
+    }
+
     public Device(String name, String brand, State state) {
         this.name = name;
         this.brand = brand;
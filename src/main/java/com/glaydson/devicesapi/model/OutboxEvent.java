@@ -0,0 +1,65 @@
+package com.glaydson.devicesapi.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * A device change waiting to be published, written in the same transaction as the change.
+ * It holds the device as it was after the change (before it, for a deletion), so publishing
+ * never reads the devices table. Rows are deleted once the sink has taken them.
+ */
+@Entity
+@Table(name = "device_outbox")
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class OutboxEvent {
+    // One id per row, not blocks: changes of a device are published in id order, and ids handed
+    // out in blocks by several instances would not follow the order of the changes
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_outbox_id_seq")
+    @SequenceGenerator(name = "device_outbox_id_seq", sequenceName = "device_outbox_id_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "device_id", nullable = false)
+    private Long deviceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false)
+    private Type type;
+
+    // Null for a creation
+    @Enumerated(EnumType.STRING)
+    @Column(name = "previous_state")
+    private Device.State previousState;
+
+    // Null for a deletion
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state")
+    private Device.State state;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @Column(name = "brand", nullable = false)
+    private String brand;
+
+    @Column(name = "device_creation_time")
+    private LocalDateTime deviceCreationTime;
+
+    @Column(name = "device_version")
+    private Long deviceVersion;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,48 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.model.Device;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Writes archived devices to devices_archive. The table is not mapped as an entity: rows are
+ * only ever inserted, one JDBC batch per archived batch, and never read back by the API.
+ */
+@Repository
+public class DeviceArchiveRepository {
+
+    private static final String INSERT = """
+            INSERT INTO devices_archive (id, name, brand, state, creation_time, version, archived_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DeviceArchiveRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insertAll(List<Device> devices, Instant archivedAt) {
+        OffsetDateTime archivedAtUtc = archivedAt.atOffset(ZoneOffset.UTC);
+        jdbcTemplate.batchUpdate(INSERT, devices, devices.size(), (statement, device) -> {
+            statement.setLong(1, device.getId());
+            statement.setString(2, device.getName());
+            statement.setString(3, device.getBrand());
+            statement.setString(4, device.getState().name());
+            statement.setTimestamp(5, Timestamp.valueOf(device.getCreationTime()));
+            statement.setLong(6, device.getVersion());
+            statement.setObject(7, archivedAtUtc);
+        });
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM devices_archive", Long.class);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,357 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.model.Device;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Files of {@link InMemoryDeviceStore}: an append-only write-ahead log of the changes, split
+ * in numbered segments, and snapshots of all the devices.
+ * <p>
+ * Snapshot n holds the devices as they were when log segment n was started, so the state is
+ * snapshot n followed by segments n, n+1, ... Once snapshot n is written the older files are
+ * deleted. Each log record carries a CRC: a record torn by a crash ends the last segment, which
+ * is truncated there; anywhere else it is corruption and recovery fails.
+ * <p>
+ * Appends are buffered and written to disk by {@link #sync()}, or at once with sync-every-write.
+ */
+@Slf4j
+final class DeviceLog implements Closeable {
+
+    private static final Pattern SEGMENT = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final int SNAPSHOT_MAGIC = 0x44455631;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // A record longer than this can only be a torn length
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    /**
+     * Receives the recovered state, snapshot first, then the logged changes in order.
+     */
+    interface Replay {
+        void put(Device device);
+
+        void delete(long id);
+    }
+
+    record Recovery(long nextId, long snapshot, int snapshotDevices, long records, boolean empty) {
+    }
+
+    private final Path directory;
+    private final boolean syncEveryWrite;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+    private long segment;
+    private FileChannel channel;
+    private DataOutputStream out;
+
+    DeviceLog(Path directory, boolean syncEveryWrite) {
+        this.directory = directory;
+        this.syncEveryWrite = syncEveryWrite;
+    }
+
+    // Reads the latest snapshot and the segments after it, then starts a new segment
+    synchronized Recovery recover(Replay replay) {
+        try {
+            Files.createDirectories(directory);
+            List<Long> snapshots = numbered(SNAPSHOT);
+            List<Long> segments = numbered(SEGMENT);
+            long snapshot = snapshots.isEmpty() ? 0 : snapshots.getLast();
+            long nextId = 1;
+            int snapshotDevices = 0;
+            if (snapshot > 0) {
+                long[] read = readSnapshot(snapshotPath(snapshot), replay);
+                nextId = read[0];
+                snapshotDevices = (int) read[1];
+            }
+            long records = 0;
+            List<Long> replayed = segments.stream().filter(n -> n >= snapshot).toList();
+            for (int i = 0; i < replayed.size(); i++) {
+                long[] read = readSegment(segmentPath(replayed.get(i)), replay, i == replayed.size() - 1);
+                records += read[0];
+                nextId = Math.max(nextId, read[1]);
+            }
+            long last = Math.max(snapshot, segments.isEmpty() ? 0 : segments.getLast());
+            open(last + 1);
+            return new Recovery(nextId, snapshot, snapshotDevices, records, snapshots.isEmpty() && segments.isEmpty());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover the devices from " + directory, e);
+        }
+    }
+
+    synchronized void appendPut(Device device) {
+        append(PUT, device.getId(), device);
+    }
+
+    synchronized void appendDelete(long id) {
+        append(DELETE, id, null);
+    }
+
+    // Writes the buffered records and forces them to disk
+    synchronized void sync() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the device log", e);
+        }
+    }
+
+    // Ends the current segment and starts the next one, whose number a snapshot of the current state takes
+    synchronized long rotate() {
+        try {
+            closeSegment();
+            open(segment + 1);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start a new device log segment", e);
+        }
+    }
+
+    // Not synchronized: runs beside the appends, which go to segment n or later
+    void writeSnapshot(long number, long nextId, Collection<Device> devices) {
+        Path target = snapshotPath(number);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(file), 1 << 16), new CRC32());
+            DataOutputStream data = new DataOutputStream(checked);
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeLong(nextId);
+            data.writeInt(devices.size());
+            for (Device device : devices) {
+                data.writeLong(device.getId());
+                writeDevice(data, device);
+            }
+            long checksum = checked.getChecksum().getValue();
+            data.writeLong(checksum);
+            data.flush();
+            file.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + target, e);
+        }
+        try {
+            // A reader sees the old snapshot or the whole new one, never a part of it
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (long older : numbered(SNAPSHOT)) {
+                if (older < number) {
+                    Files.deleteIfExists(snapshotPath(older));
+                }
+            }
+            for (long older : numbered(SEGMENT)) {
+                if (older < number) {
+                    Files.deleteIfExists(segmentPath(older));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replace the snapshot with " + target, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close the device log", e);
+        }
+    }
+
+    private void append(byte operation, long id, Device device) {
+        if (out == null) {
+            throw new IllegalStateException("The device log is closed");
+        }
+        try {
+            recordBuffer.reset();
+            DataOutputStream record = new DataOutputStream(recordBuffer);
+            record.writeByte(operation);
+            record.writeLong(id);
+            if (device != null) {
+                writeDevice(record, device);
+            }
+            crc.reset();
+            crc.update(recordBuffer.toByteArray());
+            out.writeInt(recordBuffer.size());
+            recordBuffer.writeTo(out);
+            out.writeInt((int) crc.getValue());
+            if (syncEveryWrite) {
+                out.flush();
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the device log", e);
+        }
+    }
+
+    private void open(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    private void closeSegment() throws IOException {
+        if (out != null) {
+            out.flush();
+            channel.force(false);
+            out.close();
+            out = null;
+        }
+    }
+
+    // Returns the next id and the number of devices
+    private static long[] readSnapshot(Path path, Replay replay) throws IOException {
+        try (InputStream file = Files.newInputStream(path)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 1 << 16), new CRC32());
+            DataInputStream data = new DataInputStream(checked);
+            if (data.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a device snapshot: " + path);
+            }
+            long nextId = data.readLong();
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                replay.put(readDevice(data, data.readLong()));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (data.readLong() != expected) {
+                throw new IOException("Snapshot " + path + " is corrupt");
+            }
+            return new long[]{nextId, count};
+        }
+    }
+
+    // Returns the number of records and the next id they imply
+    private static long[] readSegment(Path path, Replay replay, boolean last) throws IOException {
+        long records = 0;
+        long nextId = 1;
+        long position = 0;
+        long size = Files.size(path);
+        CRC32 crc = new CRC32();
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (position < size) {
+                byte[] payload;
+                try {
+                    int length = data.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        throw new IOException("Invalid record length " + length);
+                    }
+                    payload = data.readNBytes(length);
+                    if (payload.length < length) {
+                        throw new EOFException("Record cut at " + payload.length + " of " + length + " bytes");
+                    }
+                    crc.reset();
+                    crc.update(payload);
+                    if (data.readInt() != (int) crc.getValue()) {
+                        throw new IOException("Record checksum mismatch");
+                    }
+                } catch (IOException e) {
+                    truncate(path, position, last, e);
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte operation = record.readByte();
+                long id = record.readLong();
+                if (operation == PUT) {
+                    replay.put(readDevice(record, id));
+                    nextId = Math.max(nextId, id + 1);
+                } else if (operation == DELETE) {
+                    replay.delete(id);
+                } else {
+                    throw new IOException("Unknown operation " + operation + " in " + path);
+                }
+                records++;
+                position += 4 + payload.length + 4;
+            }
+        }
+        return new long[]{records, nextId};
+    }
+
+    private static void truncate(Path path, long position, boolean last, IOException cause) throws IOException {
+        if (!last) {
+            throw new IOException("Device log segment " + path + " is corrupt at byte " + position, cause);
+        }
+        log.warn("Device log {} ends with a torn record at byte {}, the changes after it were lost", path, position);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            file.truncate(position);
+        }
+    }
+
+    private static void writeDevice(DataOutputStream data, Device device) throws IOException {
+        data.writeUTF(device.getName());
+        data.writeUTF(device.getBrand());
+        data.writeUTF(device.getState().name());
+        LocalDateTime creationTime = device.getCreationTime();
+        data.writeBoolean(creationTime != null);
+        if (creationTime != null) {
+            data.writeLong(creationTime.toEpochSecond(ZoneOffset.UTC));
+            data.writeInt(creationTime.getNano());
+        }
+        data.writeLong(device.getVersion());
+    }
+
+    private static Device readDevice(DataInputStream data, long id) throws IOException {
+        String name = data.readUTF();
+        String brand = data.readUTF();
+        Device.State state = Device.State.valueOf(data.readUTF());
+        LocalDateTime creationTime = null;
+        if (data.readBoolean()) {
+            creationTime = LocalDateTime.ofEpochSecond(data.readLong(), data.readInt(), ZoneOffset.UTC);
+        }
+        return new Device(id, name, brand, state, creationTime, data.readLong());
+    }
+
+    private List<Long> numbered(Pattern pattern) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve("wal-%020d.log".formatted(number));
+    }
+
+    private Path snapshotPath(long number) {
+        return directory.resolve("snapshot-%020d.bin".formatted(number));
+    }
+}
@@ -1,15 +1,50 @@
 package com.glaydson.devicesapi.repository;
 
 import com.glaydson.devicesapi.model.Device;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface DeviceRepository extends JpaRepository<Device, Long> {
+public interface DeviceRepository extends JpaRepository<Device, Long>, JpaSpecificationExecutor<Device>, DeviceViewQueries {
     List<Device> findByBrand(String brand);
     List<Device> findByState(Device.State state);
 
     List<Device> findByBrandAndState(String brand, Device.State state);
+
+    // Keyset pagination: seeks on the primary key index instead of scanning with OFFSET
+    List<Device> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Compare-and-set of the state in one UPDATE, no read first: 0 rows when the device is missing or in
+    // another state. The version is bumped like a JPA update would, so ETags and optimistic locks see it.
+    // Concurrent calls are serialized by the row lock and re-check the state, so only one of them wins
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Device d set d.state = :to, d.version = d.version + 1 where d.id = :id and d.state = :from")
+    int updateStateIf(@Param("id") Long id, @Param("from") Device.State from, @Param("to") Device.State to);
+
+    // First device of the brand in the state, locked with FOR UPDATE SKIP LOCKED (lock timeout -2):
+    // concurrent callers each get a different row instead of queueing on the same one
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
+    Optional<Device> findFirstByBrandAndStateOrderByIdAsc(String brand, Device.State state);
+
+    // Devices due for archiving, oldest ids first, found through the (state, creation_time) index
+    List<Device> findByStateAndCreationTimeBeforeOrderByIdAsc(Device.State state, LocalDateTime cutoff, Limit limit);
+
+    // One row per (brand, state) pair, read from the (brand, state) index
+    @Query("select d.brand as brand, d.state as state, count(d) as count from Device d group by d.brand, d.state")
+    List<DeviceStore.BrandStateCount> countByBrandAndState();
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.model.Device;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the single query path used by the device search: equality on brand and state and a range
+ * on creation_time, AND-ed together. The planner picks the index from the columns filtered on, not
+ * from the order of the predicates: (brand, state, creation_time) serves the searches by brand or
+ * by brand and state, with the range read from the index, (state, creation_time) those by state
+ * only and (creation_time) a range alone.
+ * <p>
+ * The specifications are records holding what they filter on, and the {@link Filter} they share
+ * is sealed, so {@link InMemoryDeviceStore} can evaluate every one of them without JPA.
+ */
+public final class DeviceSpecifications {
+
+    private DeviceSpecifications() {
+    }
+
+    public static Filter matching(DeviceSearchCriteria criteria) {
+        return new Matching(criteria);
+    }
+
+    public static Filter withIds(Collection<Long> ids) {
+        return new WithIds(ids);
+    }
+
+    // Devices matching at least one of the criteria, in a single query
+    public static Filter matchingAny(Collection<DeviceSearchCriteria> criteria) {
+        return new MatchingAny(List.copyOf(criteria));
+    }
+
+    // The filters a DeviceStore is asked for, one of the specifications built here
+    public sealed interface Filter extends Specification<Device> permits Matching, MatchingAny, WithIds {
+    }
+
+    record Matching(DeviceSearchCriteria criteria) implements Filter {
+
+        @Override
+        public Predicate toPredicate(Root<Device> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+            List<Predicate> predicates = new ArrayList<>(4);
+            // brand has many distinct values and leads the composite index
+            if (criteria.getBrand() != null) {
+                predicates.add(cb.equal(root.get("brand"), criteria.getBrand()));
+            }
+            // state only has three values, on its own it goes through idx_devices_state
+            if (criteria.getState() != null) {
+                predicates.add(cb.equal(root.get("state"), criteria.getState()));
+            }
+            // A range on the last index column; on the partitioned schema it also prunes the monthly partitions
+            if (criteria.getCreatedAfter() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("creationTime"), criteria.getCreatedAfter()));
+            }
+            if (criteria.getCreatedBefore() != null) {
+                predicates.add(cb.lessThan(root.get("creationTime"), criteria.getCreatedBefore()));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        }
+    }
+
+    /**
+     * Compiles many criteria into one WHERE clause. Criteria with the same creation range share
+     * one group: brand-only criteria become {@code brand IN (...)}, state-only ones
+     * {@code state IN (...)} and brand/state pairs {@code state = ? AND brand IN (...)} per state,
+     * which the (brand, state, creation_time) index serves like one lookup per pair. Pairs covered
+     * by a brand-only or state-only criterion are left out, and a criterion without brand and
+     * state reduces its group to the range alone.
+     */
+    record MatchingAny(List<DeviceSearchCriteria> criteria) implements Filter {
+
+        @Override
+        public Predicate toPredicate(Root<Device> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+            Map<CreationRange, List<DeviceSearchCriteria>> byRange = new LinkedHashMap<>();
+            for (DeviceSearchCriteria criterion : criteria) {
+                byRange.computeIfAbsent(new CreationRange(criterion.getCreatedAfter(), criterion.getCreatedBefore()),
+                        range -> new ArrayList<>()).add(criterion);
+            }
+            List<Predicate> groups = new ArrayList<>(byRange.size());
+            byRange.forEach((range, group) -> groups.add(group(root, cb, range, group)));
+            return cb.or(groups.toArray(Predicate[]::new));
+        }
+
+        private static Predicate group(Root<Device> root, CriteriaBuilder cb, CreationRange range,
+                                       List<DeviceSearchCriteria> group) {
+            List<Predicate> predicates = new ArrayList<>(3);
+            if (range.after() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("creationTime"), range.after()));
+            }
+            if (range.before() != null) {
+                predicates.add(cb.lessThan(root.get("creationTime"), range.before()));
+            }
+            if (group.stream().noneMatch(criterion -> criterion.getBrand() == null && criterion.getState() == null)) {
+                predicates.add(anyBrandOrState(root, cb, group));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        }
+
+        private static Predicate anyBrandOrState(Root<Device> root, CriteriaBuilder cb, List<DeviceSearchCriteria> group) {
+            Set<String> brands = new LinkedHashSet<>();
+            Set<Device.State> states = new LinkedHashSet<>();
+            for (DeviceSearchCriteria criterion : group) {
+                if (criterion.getState() == null) {
+                    brands.add(criterion.getBrand());
+                } else if (criterion.getBrand() == null) {
+                    states.add(criterion.getState());
+                }
+            }
+            Map<Device.State, Set<String>> pairs = new EnumMap<>(Device.State.class);
+            for (DeviceSearchCriteria criterion : group) {
+                if (criterion.getBrand() != null && criterion.getState() != null
+                        && !brands.contains(criterion.getBrand()) && !states.contains(criterion.getState())) {
+                    pairs.computeIfAbsent(criterion.getState(), state -> new LinkedHashSet<>()).add(criterion.getBrand());
+                }
+            }
+
+            List<Predicate> alternatives = new ArrayList<>(pairs.size() + 2);
+            if (!brands.isEmpty()) {
+                alternatives.add(root.get("brand").in(brands));
+            }
+            if (!states.isEmpty()) {
+                alternatives.add(root.get("state").in(states));
+            }
+            pairs.forEach((state, pairBrands) -> alternatives.add(
+                    cb.and(cb.equal(root.get("state"), state), root.get("brand").in(pairBrands))));
+            return cb.or(alternatives.toArray(Predicate[]::new));
+        }
+    }
+
+    private record CreationRange(LocalDateTime after, LocalDateTime before) {
+    }
+
+    record WithIds(Collection<Long> ids) implements Filter {
+
+        @Override
+        public Predicate toPredicate(Root<Device> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+            return root.get("id").in(ids);
+        }
+    }
+}
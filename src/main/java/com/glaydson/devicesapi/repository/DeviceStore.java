@@ -0,0 +1,73 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * What the services need from wherever the devices are kept: {@link JpaDeviceStore} over the
+ * devices table, or {@link InMemoryDeviceStore} with {@code devices.memory.enabled}. Kept to the
+ * operations the service layer calls, so a backend implements all of it and a new caller of
+ * anything else finds out at compile time.
+ * <p>
+ * A changed device is stored by passing it to {@link #save}, {@link #saveAll} or
+ * {@link #saveAndFlush}, never by dirty checking alone: the in-memory store hands out copies.
+ * Writes take part in the surrounding transaction and are undone when it rolls back. Versions are
+ * checked on save and delete, a stale one fails with
+ * {@link org.springframework.orm.ObjectOptimisticLockingFailureException}.
+ */
+public interface DeviceStore {
+
+    Optional<Device> findById(Long id);
+
+    List<Device> findAllById(Iterable<Long> ids);
+
+    // Keyset pagination, ordered by id
+    List<Device> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Devices due for archiving, oldest ids first
+    List<Device> findByStateAndCreationTimeBeforeOrderByIdAsc(Device.State state, LocalDateTime cutoff, Limit limit);
+
+    List<BrandStateCount> countByBrandAndState();
+
+    // The requested columns of the devices the filter matches, ordered by id
+    List<DeviceView> findViews(DeviceSpecifications.Filter filter, Set<DeviceField> fields);
+
+    // Keyset pagination, like findByIdGreaterThanOrderByIdAsc
+    List<DeviceView> findViewsAfter(long afterId, int limit, Set<DeviceField> fields);
+
+    <S extends Device> S save(S device);
+
+    <S extends Device> List<S> saveAll(Iterable<S> devices);
+
+    <S extends Device> S saveAndFlush(S device);
+
+    // Compare-and-set of the state, bumping the version: 1 when it was changed, 0 when the device
+    // is missing or in another state
+    int updateStateIf(Long id, Device.State from, Device.State to);
+
+    // updateStateIf on the first device of the brand in the from state, found and changed in one
+    // step, so concurrent callers each get a different device. The changed device, empty when none
+    // of the brand is in the state
+    Optional<Device> updateFirstStateIf(String brand, Device.State from, Device.State to);
+
+    void delete(Device device);
+
+    void deleteAll(Iterable<? extends Device> devices);
+
+    void flush();
+
+    interface BrandStateCount {
+        String getBrand();
+
+        Device.State getState();
+
+        long getCount();
+    }
+}
@@ -0,0 +1,39 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Text search over device names and brands. It only ranks: it returns the ids of the best
+ * matches, and the devices themselves are read from the devices table.
+ */
+public interface DeviceTextIndex {
+
+    /**
+     * Ids of the devices whose name and brand match every word of the query, best match first,
+     * skipping {@code offset} and returning at most {@code limit}.
+     */
+    List<Long> search(List<String> words, DeviceTextSearchMode mode, int offset, int limit);
+
+    // Lower case runs of letters and digits, how names, brands and queries are split into words
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,22 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read path of the list and search endpoints: selects only the requested columns and maps
+ * them to {@link DeviceView}, so no entity is instantiated or tracked by the persistence context.
+ */
+public interface DeviceViewQueries {
+
+    // Ordered by id
+    List<DeviceView> findViews(Specification<Device> specification, Set<DeviceField> fields);
+
+    // Keyset pagination, like findByIdGreaterThanOrderByIdAsc
+    List<DeviceView> findViewsAfter(long afterId, int limit, Set<DeviceField> fields);
+}
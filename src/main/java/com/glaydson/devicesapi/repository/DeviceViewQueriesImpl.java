@@ -0,0 +1,77 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Picked up by Spring Data as the implementation of the DeviceViewQueries fragment of DeviceRepository
+class DeviceViewQueriesImpl implements DeviceViewQueries {
+
+    private final EntityManager entityManager;
+
+    DeviceViewQueriesImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<DeviceView> findViews(Specification<Device> specification, Set<DeviceField> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Device> root = select(query, fields);
+        query.where(specification.toPredicate(root, query, cb));
+        query.orderBy(cb.asc(root.get("id")));
+        return toViews(entityManager.createQuery(query), fields);
+    }
+
+    @Override
+    public List<DeviceView> findViewsAfter(long afterId, int limit, Set<DeviceField> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Device> root = select(query, fields);
+        query.where(cb.greaterThan(root.get("id"), afterId));
+        query.orderBy(cb.asc(root.get("id")));
+        return toViews(entityManager.createQuery(query).setMaxResults(limit), fields);
+    }
+
+    private static Root<Device> select(CriteriaQuery<Tuple> query, Set<DeviceField> fields) {
+        Root<Device> root = query.from(Device.class);
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (DeviceField field : fields) {
+            selections.add(root.get(field.getAttribute()).alias(field.getAttribute()));
+        }
+        query.multiselect(selections);
+        return root;
+    }
+
+    private static List<DeviceView> toViews(TypedQuery<Tuple> query, Set<DeviceField> fields) {
+        List<Tuple> tuples = query.getResultList();
+        List<DeviceView> views = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            views.add(new DeviceView(
+                    value(tuple, fields, DeviceField.ID, Long.class),
+                    value(tuple, fields, DeviceField.NAME, String.class),
+                    value(tuple, fields, DeviceField.BRAND, String.class),
+                    value(tuple, fields, DeviceField.STATE, Device.State.class),
+                    value(tuple, fields, DeviceField.CREATION_TIME, LocalDateTime.class),
+                    value(tuple, fields, DeviceField.VERSION, Long.class)));
+        }
+        return views;
+    }
+
+    private static <T> T value(Tuple tuple, Set<DeviceField> fields, DeviceField field, Class<T> type) {
+        return fields.contains(field) ? tuple.get(field.getAttribute(), type) : null;
+    }
+}
@@ -0,0 +1,561 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * {@link DeviceStore} kept entirely in memory, for deployments whose whole fleet fits in RAM
+ * ({@code devices.memory.enabled}, see the memory profile). Devices are held in a map keyed by
+ * the primitive id, with indexes on brand, state and (brand, state) holding sorted ids, so the
+ * searches, counts and check-outs read only the devices they return, in id order.
+ * <p>
+ * Every change is appended to a {@link DeviceLog} before the call returns, written to disk every
+ * {@code devices.memory.flush-interval} (write-behind) or at once with {@code sync-every-write}.
+ * A snapshot every {@code devices.memory.snapshot-interval} and at shutdown bounds the log to
+ * replay: a restart reads the snapshot and the few changes after it instead of the database.
+ * When the directory is empty, the store starts from the devices of the database.
+ * <p>
+ * Changes are applied when the store is called, so other callers see them before the surrounding
+ * transaction commits. If it rolls back, its changes are undone in reverse order and the undo is
+ * logged too; a device that another caller has changed since is left as that caller wrote it.
+ * Versions are checked like JPA does and a stale write fails with
+ * {@link ObjectOptimisticLockingFailureException}; a batch is checked as a whole before any of it
+ * is applied. Returned devices are copies, changing them changes nothing until they are saved.
+ */
+@Slf4j
+public class InMemoryDeviceStore implements DeviceStore, AutoCloseable {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongObjectMap<Device> devices = new LongObjectMap<>(1024);
+    private final SortedLongSet ids = new SortedLongSet();
+    private final Map<String, SortedLongSet> byBrand = new HashMap<>();
+    private final Map<Device.State, SortedLongSet> byState = new EnumMap<>(Device.State.class);
+    private final Map<BrandState, SortedLongSet> byBrandAndState = new HashMap<>();
+    private final DeviceLog deviceLog;
+    private long nextId;
+    private boolean closed;
+
+    public InMemoryDeviceStore(DevicesProperties.Memory properties, Supplier<List<Device>> initialDevices) {
+        this.deviceLog = new DeviceLog(properties.getDirectory(), properties.isSyncEveryWrite());
+        long start = System.nanoTime();
+        DeviceLog.Recovery recovery = deviceLog.recover(new DeviceLog.Replay() {
+            @Override
+            public void put(Device device) {
+                store(device);
+            }
+
+            @Override
+            public void delete(long id) {
+                unstore(id);
+            }
+        });
+        nextId = recovery.nextId();
+        if (recovery.empty()) {
+            for (Device device : initialDevices.get()) {
+                store(copy(device));
+                nextId = Math.max(nextId, device.getId() + 1);
+            }
+            log.info("Imported {} devices into {}", devices.size(), properties.getDirectory());
+            snapshot();
+        } else {
+            log.info("Recovered {} devices from {} in {} ms: snapshot {} with {} devices, then {} logged changes",
+                    devices.size(), properties.getDirectory(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    recovery.snapshot(), recovery.snapshotDevices(), recovery.records());
+        }
+    }
+
+    // Writes the changes appended since the last call to disk
+    @Scheduled(initialDelayString = "${devices.memory.flush-interval}", fixedDelayString = "${devices.memory.flush-interval}")
+    public void syncLog() {
+        deviceLog.sync();
+    }
+
+    // Starts a new log segment and writes the state it starts from, then drops the older files.
+    // Only the switch holds the lock, the devices are written while the store keeps changing
+    @Scheduled(initialDelayString = "${devices.memory.snapshot-interval}", fixedDelayString = "${devices.memory.snapshot-interval}")
+    public void snapshot() {
+        long segment;
+        long snapshotNextId;
+        List<Device> state;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            segment = deviceLog.rotate();
+            snapshotNextId = nextId;
+            // Stored devices are replaced on change, never modified, so the references stay valid
+            state = new ArrayList<>(devices.size());
+            for (int i = 0; i < ids.size(); i++) {
+                state.add(devices.get(ids.get(i)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        deviceLog.writeSnapshot(segment, snapshotNextId, state);
+    }
+
+    @Override
+    public void close() {
+        snapshot();
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            deviceLog.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Reads
+
+    @Override
+    public Optional<Device> findById(Long id) {
+        return read(() -> Optional.ofNullable(devices.get(id)).map(InMemoryDeviceStore::copy));
+    }
+
+    @Override
+    public List<Device> findAllById(Iterable<Long> requested) {
+        return read(() -> {
+            List<Device> found = new ArrayList<>();
+            for (Long id : requested) {
+                Device device = devices.get(id);
+                if (device != null) {
+                    found.add(copy(device));
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public List<Device> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit) {
+        return read(() -> copies(ids, ids.ceilingIndex(id + 1), max(limit), device -> true));
+    }
+
+    @Override
+    public List<Device> findByStateAndCreationTimeBeforeOrderByIdAsc(Device.State state, LocalDateTime cutoff, Limit limit) {
+        return read(() -> copies(byState.get(state), 0, max(limit),
+                device -> device.getCreationTime() != null && device.getCreationTime().isBefore(cutoff)));
+    }
+
+    @Override
+    public List<BrandStateCount> countByBrandAndState() {
+        return read(() -> {
+            List<BrandStateCount> counts = new ArrayList<>(byBrandAndState.size());
+            byBrandAndState.forEach((key, index) -> counts.add(new Count(key.brand(), key.state(), index.size())));
+            return counts;
+        });
+    }
+
+    @Override
+    public List<DeviceView> findViews(DeviceSpecifications.Filter filter, Set<DeviceField> fields) {
+        return read(() -> {
+            List<Device> found = switch (filter) {
+                case DeviceSpecifications.Matching matching -> matching(matching.criteria());
+                case DeviceSpecifications.WithIds withIds -> withIds(withIds.ids());
+                case DeviceSpecifications.MatchingAny matchingAny -> matchingAny(matchingAny.criteria());
+            };
+            return found.stream().map(device -> view(device, fields)).toList();
+        });
+    }
+
+    @Override
+    public List<DeviceView> findViewsAfter(long afterId, int limit, Set<DeviceField> fields) {
+        return read(() -> {
+            List<DeviceView> views = new ArrayList<>(Math.min(limit, ids.size()));
+            for (int i = ids.ceilingIndex(afterId + 1); i < ids.size() && views.size() < limit; i++) {
+                views.add(view(devices.get(ids.get(i)), fields));
+            }
+            return views;
+        });
+    }
+
+    // Writes
+
+    @Override
+    public <S extends Device> S save(S entity) {
+        return write(() -> {
+            checkVersion(entity);
+            apply(entity);
+            return entity;
+        });
+    }
+
+    @Override
+    public <S extends Device> List<S> saveAll(Iterable<S> entities) {
+        return write(() -> {
+            List<S> saved = new ArrayList<>();
+            entities.forEach(saved::add);
+            saved.forEach(this::checkVersion);
+            saved.forEach(this::apply);
+            return saved;
+        });
+    }
+
+    @Override
+    public <S extends Device> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    // No persistence context to flush, changes are in the store and the log once the call returns
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public int updateStateIf(Long id, Device.State from, Device.State to) {
+        return write(() -> {
+            Device current = devices.get(id);
+            if (current == null || current.getState() != from) {
+                return 0;
+            }
+            changeState(current, to);
+            return 1;
+        });
+    }
+
+    // Read and changed under one write lock, the next caller finds the device in the new state
+    @Override
+    public Optional<Device> updateFirstStateIf(String brand, Device.State from, Device.State to) {
+        return write(() -> scan(byBrandAndState.get(new BrandState(brand, from)), 0, 1, device -> true).stream()
+                .findFirst()
+                .map(current -> copy(changeState(current, to))));
+    }
+
+    // Called with the write lock held
+    private Device changeState(Device current, Device.State to) {
+        Device updated = copy(current);
+        updated.setState(to);
+        updated.setVersion(current.getVersion() + 1);
+        replace(updated.getId(), current, updated);
+        return updated;
+    }
+
+    @Override
+    public void delete(Device entity) {
+        deleteAll(List.of(entity));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Device> entities) {
+        write(() -> {
+            List<Device> deleted = new ArrayList<>();
+            for (Device entity : entities) {
+                Device current = devices.get(entity.getId());
+                // Like JPA: a device that is already gone is skipped, one changed since it was read fails
+                if (current != null) {
+                    if (entity.getVersion() != null && !entity.getVersion().equals(current.getVersion())) {
+                        throw new ObjectOptimisticLockingFailureException(Device.class, entity.getId());
+                    }
+                    deleted.add(current);
+                }
+            }
+            for (Device device : deleted) {
+                replace(device.getId(), device, null);
+            }
+            return null;
+        });
+    }
+
+    // Called with the write lock held
+    private void checkVersion(Device entity) {
+        if (entity.getId() == null) {
+            return;
+        }
+        Device current = devices.get(entity.getId());
+        boolean stale = current == null
+                ? entity.getVersion() != null
+                : !Objects.equals(entity.getVersion(), current.getVersion());
+        if (stale) {
+            throw new ObjectOptimisticLockingFailureException(Device.class, entity.getId());
+        }
+    }
+
+    // Called with the write lock held, after checkVersion. Sets the id and version on the entity like a JPA save
+    private void apply(Device entity) {
+        Device current = entity.getId() == null ? null : devices.get(entity.getId());
+        if (current == null) {
+            if (entity.getId() == null) {
+                entity.setId(nextId);
+            }
+            nextId = Math.max(nextId, entity.getId() + 1);
+            entity.setVersion(0L);
+            if (entity.getCreationTime() == null) {
+                entity.setCreationTime(LocalDateTime.now());
+            }
+        } else {
+            entity.setVersion(current.getVersion() + 1);
+            // Not updatable, like the column
+            entity.setCreationTime(current.getCreationTime());
+        }
+        replace(entity.getId(), current, copy(entity));
+    }
+
+    // Logs and stores the change, null for a device that is not there, and remembers it for the
+    // surrounding transaction. Called with the write lock held
+    private void replace(long id, Device previous, Device next) {
+        if (next == null) {
+            deviceLog.appendDelete(id);
+            unstore(id);
+        } else {
+            deviceLog.appendPut(next);
+            store(next);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Undo undo = (Undo) TransactionSynchronizationManager.getResource(this);
+            if (undo == null) {
+                undo = new Undo();
+                TransactionSynchronizationManager.bindResource(this, undo);
+                TransactionSynchronizationManager.registerSynchronization(undo);
+            }
+            undo.changes.add(new Change(id, previous, next));
+        }
+    }
+
+    // Puts back what the changes replaced, last change first. Stored devices are replaced on change,
+    // never modified, so one that is still the instance the transaction stored was not changed since
+    private void rollBack(List<Change> changes) {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                Change change = changes.get(i);
+                if (devices.get(change.id()) != change.next()) {
+                    log.warn("Device {} was changed after a rolled back transaction wrote it, the later change is kept",
+                            change.id());
+                    continue;
+                }
+                if (change.previous() == null) {
+                    deviceLog.appendDelete(change.id());
+                    unstore(change.id());
+                } else {
+                    deviceLog.appendPut(change.previous());
+                    store(change.previous());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Replaces the device and moves it between the indexes. Called with the write lock held, or during recovery
+    private void store(Device device) {
+        Device previous = devices.put(device.getId(), device);
+        if (previous != null) {
+            unindex(previous);
+        }
+        ids.add(device.getId());
+        byBrand.computeIfAbsent(device.getBrand(), key -> new SortedLongSet()).add(device.getId());
+        byState.computeIfAbsent(device.getState(), key -> new SortedLongSet()).add(device.getId());
+        byBrandAndState.computeIfAbsent(new BrandState(device.getBrand(), device.getState()), key -> new SortedLongSet())
+                .add(device.getId());
+    }
+
+    private void unstore(long id) {
+        Device previous = devices.remove(id);
+        if (previous != null) {
+            unindex(previous);
+            ids.remove(id);
+        }
+    }
+
+    private void unindex(Device device) {
+        removeFrom(byBrand, device.getBrand(), device.getId());
+        removeFrom(byState, device.getState(), device.getId());
+        removeFrom(byBrandAndState, new BrandState(device.getBrand(), device.getState()), device.getId());
+    }
+
+    // Empty entries are dropped, brands that no device has anymore do not stay in the index
+    private static <K> void removeFrom(Map<K, SortedLongSet> index, K key, long id) {
+        SortedLongSet entry = index.get(key);
+        if (entry != null) {
+            entry.remove(id);
+            if (entry.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    // The narrowest index for the criteria, then the creation range on the devices it holds
+    private List<Device> matching(DeviceSearchCriteria criteria) {
+        SortedLongSet index;
+        if (criteria.getBrand() != null && criteria.getState() != null) {
+            index = byBrandAndState.get(new BrandState(criteria.getBrand(), criteria.getState()));
+        } else if (criteria.getBrand() != null) {
+            index = byBrand.get(criteria.getBrand());
+        } else if (criteria.getState() != null) {
+            index = byState.get(criteria.getState());
+        } else {
+            index = ids;
+        }
+        LocalDateTime after = criteria.getCreatedAfter();
+        LocalDateTime before = criteria.getCreatedBefore();
+        if (after == null && before == null) {
+            return scan(index, 0, Integer.MAX_VALUE, device -> true);
+        }
+        // Like SQL, a device without a creation time is outside of any range
+        return scan(index, 0, Integer.MAX_VALUE, device -> device.getCreationTime() != null
+                && (after == null || !device.getCreationTime().isBefore(after))
+                && (before == null || device.getCreationTime().isBefore(before)));
+    }
+
+    // One index scan per criterion, merged in id order
+    private List<Device> matchingAny(List<DeviceSearchCriteria> criteria) {
+        Map<Long, Device> found = new TreeMap<>();
+        for (DeviceSearchCriteria criterion : criteria) {
+            for (Device device : matching(criterion)) {
+                found.putIfAbsent(device.getId(), device);
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    private List<Device> withIds(Iterable<Long> requested) {
+        List<Device> found = new ArrayList<>();
+        for (Long id : requested) {
+            Device device = devices.get(id);
+            if (device != null) {
+                found.add(device);
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return found;
+    }
+
+    // Stored devices of the index from the given position, at most max of them that pass the filter
+    private List<Device> scan(SortedLongSet index, int from, int max, Predicate<Device> filter) {
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        List<Device> found = new ArrayList<>(Math.min(max, index.size() - from));
+        for (int i = from; i < index.size() && found.size() < max; i++) {
+            Device device = devices.get(index.get(i));
+            if (filter.test(device)) {
+                found.add(device);
+            }
+        }
+        return found;
+    }
+
+    private List<Device> copies(SortedLongSet index, int from, int max, Predicate<Device> filter) {
+        List<Device> found = scan(index, from, max, filter);
+        found.replaceAll(InMemoryDeviceStore::copy);
+        return found;
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> writer) {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The device store is closed");
+            }
+            return writer.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int max(Limit limit) {
+        return limit.isUnlimited() ? Integer.MAX_VALUE : limit.max();
+    }
+
+    private static Device copy(Device device) {
+        return new Device(device.getId(), device.getName(), device.getBrand(), device.getState(),
+                device.getCreationTime(), device.getVersion());
+    }
+
+    private static DeviceView view(Device device, Set<DeviceField> fields) {
+        return new DeviceView(
+                fields.contains(DeviceField.ID) ? device.getId() : null,
+                fields.contains(DeviceField.NAME) ? device.getName() : null,
+                fields.contains(DeviceField.BRAND) ? device.getBrand() : null,
+                fields.contains(DeviceField.STATE) ? device.getState() : null,
+                fields.contains(DeviceField.CREATION_TIME) ? device.getCreationTime() : null,
+                fields.contains(DeviceField.VERSION) ? device.getVersion() : null);
+    }
+
+    private record BrandState(String brand, Device.State state) {
+    }
+
+    private record Change(long id, Device previous, Device next) {
+    }
+
+    // The changes of one transaction, bound to it as a resource while it runs
+    private final class Undo implements TransactionSynchronization {
+
+        private final List<Change> changes = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(InMemoryDeviceStore.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(InMemoryDeviceStore.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(InMemoryDeviceStore.this);
+            if (status != STATUS_COMMITTED) {
+                rollBack(changes);
+            }
+        }
+    }
+
+    private record Count(String brand, Device.State state, long count) implements BrandStateCount {
+
+        @Override
+        public String getBrand() {
+            return brand;
+        }
+
+        @Override
+        public Device.State getState() {
+            return state;
+        }
+
+        @Override
+        public long getCount() {
+            return count;
+        }
+    }
+}
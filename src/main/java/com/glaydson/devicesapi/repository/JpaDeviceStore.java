@@ -0,0 +1,107 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * {@link DeviceStore} over the devices table, the default. Every call goes to the Spring Data
+ * {@link DeviceRepository}, which joins the surrounding JPA transaction.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "devices.memory", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class JpaDeviceStore implements DeviceStore {
+
+    private final DeviceRepository deviceRepository;
+
+    public JpaDeviceStore(DeviceRepository deviceRepository) {
+        this.deviceRepository = deviceRepository;
+    }
+
+    @Override
+    public Optional<Device> findById(Long id) {
+        return deviceRepository.findById(id);
+    }
+
+    @Override
+    public List<Device> findAllById(Iterable<Long> ids) {
+        return deviceRepository.findAllById(ids);
+    }
+
+    @Override
+    public List<Device> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit) {
+        return deviceRepository.findByIdGreaterThanOrderByIdAsc(id, limit);
+    }
+
+    @Override
+    public List<Device> findByStateAndCreationTimeBeforeOrderByIdAsc(Device.State state, LocalDateTime cutoff, Limit limit) {
+        return deviceRepository.findByStateAndCreationTimeBeforeOrderByIdAsc(state, cutoff, limit);
+    }
+
+    @Override
+    public List<BrandStateCount> countByBrandAndState() {
+        return deviceRepository.countByBrandAndState();
+    }
+
+    @Override
+    public List<DeviceView> findViews(DeviceSpecifications.Filter filter, Set<DeviceField> fields) {
+        return deviceRepository.findViews(filter, fields);
+    }
+
+    @Override
+    public List<DeviceView> findViewsAfter(long afterId, int limit, Set<DeviceField> fields) {
+        return deviceRepository.findViewsAfter(afterId, limit, fields);
+    }
+
+    @Override
+    public <S extends Device> S save(S device) {
+        return deviceRepository.save(device);
+    }
+
+    @Override
+    public <S extends Device> List<S> saveAll(Iterable<S> devices) {
+        return deviceRepository.saveAll(devices);
+    }
+
+    @Override
+    public <S extends Device> S saveAndFlush(S device) {
+        return deviceRepository.saveAndFlush(device);
+    }
+
+    @Override
+    public int updateStateIf(Long id, Device.State from, Device.State to) {
+        return deviceRepository.updateStateIf(id, from, to);
+    }
+
+    // The row is locked with SKIP LOCKED until the transaction ends, a concurrent caller reads the next one
+    @Override
+    public Optional<Device> updateFirstStateIf(String brand, Device.State from, Device.State to) {
+        return deviceRepository.findFirstByBrandAndStateOrderByIdAsc(brand, from).map(device -> {
+            device.setState(to);
+            return deviceRepository.saveAndFlush(device);
+        });
+    }
+
+    @Override
+    public void delete(Device device) {
+        deviceRepository.delete(device);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Device> devices) {
+        deviceRepository.deleteAll(devices);
+    }
+
+    @Override
+    public void flush() {
+        deviceRepository.flush();
+    }
+}
@@ -0,0 +1,116 @@
+package com.glaydson.devicesapi.repository;
+
+
+/**
+ * Hash map from long keys to non-null values with open addressing and linear probing, so keys
+ * are neither boxed nor wrapped in entries. Not thread-safe, {@link InMemoryDeviceStore}
+ * guards it with its lock.
+ */
+final class LongObjectMap<V> {
+
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    // null marks a free slot
+    private Object[] values;
+    private int size;
+
+    LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        // Kept at most half full, probes stay short
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                shiftBack(i, mask);
+                size--;
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    // Moves the entries that follow a removed one back, so no probe sequence has a hole and no tombstones are needed
+    private void shiftBack(int free, int mask) {
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                values[free] = null;
+                return;
+            }
+            int home = slot(keys[i], mask);
+            // The entry at i can fill the free slot only if its home slot is not between the two
+            boolean canMove = free <= i ? home <= free || home > i : home <= free && home > i;
+            if (canMove) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * PHI;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
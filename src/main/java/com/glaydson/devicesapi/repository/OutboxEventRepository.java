@@ -0,0 +1,22 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Oldest first and locked (FOR UPDATE) until the batch is published, so a publisher on
+    // another instance waits for it instead of sending the same rows, or later ones, concurrently
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<OutboxEvent> findByOrderByIdAsc(Limit limit);
+
+    Optional<OutboxEvent> findFirstByOrderByIdAsc();
+}
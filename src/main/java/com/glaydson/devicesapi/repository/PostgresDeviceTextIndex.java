@@ -0,0 +1,52 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Text search on Postgres, answered by the idx_devices_text GIN index over the words of name
+ * and brand (see db/postgres/schema.sql). A prefix search turns every word into a {@code word:*}
+ * prefix of the tsquery, which the GIN index also resolves.
+ * <p>
+ * Matches are ranked by ts_rank, plus one when the name itself starts with the query, then by id.
+ */
+@Repository
+@ConditionalOnProperty(name = "database", havingValue = "postgres")
+public class PostgresDeviceTextIndex implements DeviceTextIndex {
+
+    // The expression has to stay the same as the one of idx_devices_text for the index to be used
+    private static final String SQL = """
+            SELECT d.id
+            FROM devices d, to_tsquery('simple', :query) q
+            WHERE to_tsvector('simple', d.name || ' ' || d.brand) @@ q
+            ORDER BY ts_rank(to_tsvector('simple', d.name || ' ' || d.brand), q)
+                     + CASE WHEN lower(d.name) LIKE :namePrefix THEN 1 ELSE 0 END DESC, d.id
+            OFFSET :offset LIMIT :limit
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public PostgresDeviceTextIndex(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<Long> search(List<String> words, DeviceTextSearchMode mode, int offset, int limit) {
+        // The words only hold letters and digits, nothing in them is tsquery or LIKE syntax
+        String query = words.stream()
+                .map(word -> mode == DeviceTextSearchMode.PREFIX ? word + ":*" : word)
+                .collect(Collectors.joining(" & "));
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("query", query)
+                .addValue("namePrefix", String.join(" ", words) + "%")
+                .addValue("offset", offset)
+                .addValue("limit", limit);
+        return jdbcTemplate.queryForList(SQL, parameters, Long.class);
+    }
+}
@@ -0,0 +1,61 @@
+package com.glaydson.devicesapi.repository;
+
+import java.util.Arrays;
+
+/**
+ * Ids kept sorted in a long array: the id order of the devices and the entries of the secondary
+ * indexes of {@link InMemoryDeviceStore}. New devices get the highest id so far, which is
+ * an append; other changes shift the tail of the array. Not thread-safe.
+ */
+final class SortedLongSet {
+
+    private long[] values = new long[8];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    void add(long value) {
+        if (size > 0 && value <= values[size - 1]) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return;
+            }
+            insert(-index - 1, value);
+            return;
+        }
+        insert(size, value);
+    }
+
+    void remove(long value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        }
+    }
+
+    // Index of the first value greater than or equal to the given one, size() when there is none
+    int ceilingIndex(long value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void insert(int index, long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+}
@@ -0,0 +1,113 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceArchiveRepository;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Moves INACTIVE devices created more than {@code devices.archive.retention} ago from devices to
+ * devices_archive every {@code devices.archive.interval}, in batches of {@code devices.archive.batch-size}.
+ * On the partitioned schema this empties the old monthly partitions of devices into the yearly
+ * cold partitions of devices_archive.
+ * <p>
+ * Each batch is copied and deleted in one transaction. The deletes check the version, so a device
+ * changed since it was read fails its batch, which is tried again on the next run. An archived
+ * device is published as deleted, the counts, the text index, the change feed and the outbox
+ * drop it like any other deleted device.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "devices.archive", name = "enabled", havingValue = "true")
+public class DeviceArchiver {
+
+    public static final String ARCHIVED_METRIC = "devices.archive.archived";
+    public static final String FAILURES_METRIC = "devices.archive.failures";
+
+    private final DeviceStore deviceStore;
+    private final DeviceArchiveRepository deviceArchiveRepository;
+    private final DevicesProperties.Archive properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache devicesCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter archived;
+    private final Counter failures;
+
+    public DeviceArchiver(DeviceStore deviceStore, DeviceArchiveRepository deviceArchiveRepository,
+                          DevicesProperties properties, PlatformTransactionManager transactionManager,
+                          CacheManager cacheManager, ApplicationEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry) {
+        this.deviceStore = deviceStore;
+        this.deviceArchiveRepository = deviceArchiveRepository;
+        this.properties = properties.getArchive();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.devicesCache = Objects.requireNonNull(cacheManager.getCache(DeviceService.DEVICES_CACHE),
+                "Cache " + DeviceService.DEVICES_CACHE + " is not configured");
+        this.eventPublisher = eventPublisher;
+        this.archived = Counter.builder(ARCHIVED_METRIC)
+                .description("INACTIVE devices moved to devices_archive")
+                .register(meterRegistry);
+        this.failures = Counter.builder(FAILURES_METRIC)
+                .description("Archiving batches that failed, tried again on the next run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${devices.archive.interval}")
+    public void archiveInactive() {
+        archiveInactive(LocalDateTime.now().minus(properties.getRetention()));
+    }
+
+    // Returns the number of devices archived
+    public int archiveInactive(LocalDateTime cutoff) {
+        int total = 0;
+        try {
+            for (int batch = 0; batch < properties.getMaxBatchesPerRun(); batch++) {
+                int count = archiveBatch(cutoff);
+                total += count;
+                if (count < properties.getBatchSize()) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("Archiving INACTIVE devices created before {} failed, retrying in {}", cutoff, properties.getInterval(), e);
+        }
+        if (total > 0) {
+            log.info("Archived {} INACTIVE devices created before {}", total, cutoff);
+        }
+        return total;
+    }
+
+    private int archiveBatch(LocalDateTime cutoff) {
+        List<Device> batch = transactionTemplate.execute(status -> {
+            List<Device> devices = deviceStore.findByStateAndCreationTimeBeforeOrderByIdAsc(
+                    Device.State.INACTIVE, cutoff, Limit.of(properties.getBatchSize()));
+            if (!devices.isEmpty()) {
+                deviceArchiveRepository.insertAll(devices, Instant.now());
+                deviceStore.deleteAll(devices);
+                devices.forEach(device -> eventPublisher.publishEvent(DeviceChangedEvent.deleted(device)));
+            }
+            return devices;
+        });
+        batch.forEach(device -> devicesCache.evict(device.getId()));
+        archived.increment(batch.size());
+        return batch.size();
+    }
+}
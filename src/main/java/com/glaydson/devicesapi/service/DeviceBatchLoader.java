@@ -0,0 +1,138 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.config.ReplicaRouting;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loads devices by id for {@link DeviceService#getDeviceById}, coalescing concurrent lookups into
+ * one {@code findAllById} (a single {@code WHERE id IN (...)} query and connection checkout).
+ * <p>
+ * The first lookup of a batch leads it: it waits up to {@code devices.loader.window} for others to
+ * join, or until {@code devices.loader.max-batch-size} ids are collected, then runs the query and
+ * hands every waiting caller its device. Lookups of the same id in a batch share one result.
+ * With {@code devices.loader.enabled=false} each lookup is its own {@code findById}.
+ */
+@Component
+public class DeviceBatchLoader {
+
+    public static final String BATCH_SIZE_METRIC = "devices.loader.batch.size";
+    public static final String WAIT_METRIC = "devices.loader.wait";
+
+    private final DeviceStore deviceStore;
+    private final DevicesProperties.Loader properties;
+    private final DistributionSummary batchSize;
+    private final Timer wait;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when the open batch is full, so its leader does not wait the whole window
+    private final Condition batchFull = lock.newCondition();
+    // Batch that lookups join, null until the next lookup opens one
+    private Batch openBatch;
+
+    public DeviceBatchLoader(DeviceStore deviceStore, DevicesProperties properties, MeterRegistry meterRegistry) {
+        this.deviceStore = deviceStore;
+        this.properties = properties.getLoader();
+        this.batchSize = DistributionSummary.builder(BATCH_SIZE_METRIC)
+                .description("Distinct ids read by one batched lookup query")
+                .register(meterRegistry);
+        this.wait = Timer.builder(WAIT_METRIC)
+                .description("Time a batch waited for more lookups before its query, the latency batching adds")
+                .register(meterRegistry);
+    }
+
+    public Optional<Device> load(Long id) {
+        if (!properties.isEnabled()) {
+            return ReplicaRouting.onPrimary(() -> deviceStore.findById(id));
+        }
+        Batch batch;
+        CompletableFuture<Optional<Device>> result;
+        boolean leader = false;
+        lock.lock();
+        try {
+            if (openBatch == null) {
+                openBatch = new Batch();
+                leader = true;
+            }
+            batch = openBatch;
+            result = batch.results.computeIfAbsent(id, key -> new CompletableFuture<>());
+            if (batch.results.size() >= properties.getMaxBatchSize()) {
+                close(batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (leader) {
+            lead(batch);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private void lead(Batch batch) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            long remaining = properties.getWindow().toNanos();
+            while (!batch.closed && remaining > 0) {
+                remaining = batchFull.awaitNanos(remaining);
+            }
+            close(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close(batch);
+        } finally {
+            lock.unlock();
+        }
+        wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        run(batch);
+    }
+
+    // Called with the lock held; later lookups open a new batch
+    private void close(Batch batch) {
+        if (!batch.closed) {
+            batch.closed = true;
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+            batchFull.signalAll();
+        }
+    }
+
+    private void run(Batch batch) {
+        batchSize.record(batch.results.size());
+        Map<Long, Device> devices = new HashMap<>();
+        try {
+            // From the primary even with replica routing: these lookups fill the cache, see DeviceService
+            ReplicaRouting.onPrimary(() -> deviceStore.findAllById(batch.results.keySet()))
+                    .forEach(device -> devices.put(device.getId(), device));
+        } catch (RuntimeException e) {
+            batch.results.values().forEach(result -> result.completeExceptionally(e));
+            return;
+        }
+        batch.results.forEach((id, result) -> result.complete(Optional.ofNullable(devices.get(id))));
+    }
+
+    private static final class Batch {
+        // Only changed under the lock, and no longer once closed
+        private final Map<Long, CompletableFuture<Optional<Device>>> results = new LinkedHashMap<>();
+        private boolean closed;
+    }
+}
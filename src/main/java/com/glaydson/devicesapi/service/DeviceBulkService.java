@@ -0,0 +1,255 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.BulkItemResult;
+import com.glaydson.devicesapi.dto.BulkOperationResult;
+import com.glaydson.devicesapi.dto.DeviceBulkUpdateRequest;
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.exception.DeviceInUseException;
+import com.glaydson.devicesapi.exception.MissingFieldsException;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bulk create, update and delete. Items are validated one by one with the same rules as
+ * the single operations, and the valid ones are written in batches of
+ * {@code devices.bulk.batch-size}, one transaction and one JDBC batch per chunk.
+ * A failed item is reported in the result and does not stop the others; if a whole
+ * chunk fails to commit, every item of that chunk is reported as failed.
+ */
+@Slf4j
+@Service
+public class DeviceBulkService {
+
+    public static final String MALFORMED_ITEM = "Item is empty or malformed";
+    public static final String MISSING_ID = "Device id is mandatory";
+
+    private final DeviceStore deviceStore;
+    private final DevicesProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache devicesCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public DeviceBulkService(DeviceStore deviceStore, DevicesProperties properties,
+                             PlatformTransactionManager transactionManager, CacheManager cacheManager,
+                             ApplicationEventPublisher eventPublisher) {
+        this.deviceStore = deviceStore;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.devicesCache = Objects.requireNonNull(cacheManager.getCache(DeviceService.DEVICES_CACHE),
+                "Cache " + DeviceService.DEVICES_CACHE + " is not configured");
+        this.eventPublisher = eventPublisher;
+    }
+
+    public BulkOperationResult createDevices(Iterable<? extends DeviceRequest> deviceRequests) {
+        int batchSize = properties.getBulk().getBatchSize();
+        BulkOperationResult result = new BulkOperationResult();
+        List<Indexed<Device>> chunk = new ArrayList<>(batchSize);
+        int index = 0;
+        for (DeviceRequest deviceRequest : deviceRequests) {
+            try {
+                if (deviceRequest == null) {
+                    throw new MissingFieldsException(MALFORMED_ITEM);
+                }
+                DeviceRules.requireMandatoryFields(deviceRequest);
+                chunk.add(new Indexed<>(index, new Device(deviceRequest.getName(), deviceRequest.getBrand(), deviceRequest.getState())));
+            } catch (MissingFieldsException e) {
+                result.add(BulkItemResult.failed(index, null, e.getMessage()));
+            }
+            index++;
+            if (chunk.size() == batchSize) {
+                insertChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        insertChunk(chunk, result);
+        result.sortByIndex();
+        return result;
+    }
+
+    public BulkOperationResult updateDevices(Iterable<? extends DeviceBulkUpdateRequest> deviceRequests) {
+        int batchSize = properties.getBulk().getBatchSize();
+        BulkOperationResult result = new BulkOperationResult();
+        List<Indexed<DeviceBulkUpdateRequest>> chunk = new ArrayList<>(batchSize);
+        int index = 0;
+        for (DeviceBulkUpdateRequest deviceRequest : deviceRequests) {
+            try {
+                if (deviceRequest == null) {
+                    throw new MissingFieldsException(MALFORMED_ITEM);
+                }
+                if (deviceRequest.getId() == null) {
+                    throw new MissingFieldsException(MISSING_ID);
+                }
+                DeviceRules.requireMandatoryFields(deviceRequest);
+                chunk.add(new Indexed<>(index, deviceRequest));
+            } catch (MissingFieldsException e) {
+                result.add(BulkItemResult.failed(index, deviceRequest == null ? null : deviceRequest.getId(), e.getMessage()));
+            }
+            index++;
+            if (chunk.size() == batchSize) {
+                updateChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        updateChunk(chunk, result);
+        result.sortByIndex();
+        return result;
+    }
+
+    public BulkOperationResult deleteDevices(List<Long> ids) {
+        int batchSize = properties.getBulk().getBatchSize();
+        BulkOperationResult result = new BulkOperationResult();
+        List<Indexed<Long>> chunk = new ArrayList<>(batchSize);
+        for (int index = 0; index < ids.size(); index++) {
+            Long id = ids.get(index);
+            if (id == null) {
+                result.add(BulkItemResult.failed(index, null, MISSING_ID));
+            } else {
+                chunk.add(new Indexed<>(index, id));
+            }
+            if (chunk.size() == batchSize) {
+                deleteChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        deleteChunk(chunk, result);
+        result.sortByIndex();
+        return result;
+    }
+
+    private void insertChunk(List<Indexed<Device>> chunk, BulkOperationResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Device> devices = chunk.stream().map(Indexed::item).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                deviceStore.saveAll(devices);
+                devices.forEach(device -> eventPublisher.publishEvent(DeviceChangedEvent.created(device)));
+            });
+        } catch (DataAccessException | TransactionException e) {
+            failChunk(chunk.stream().map(Indexed::index).toList(), e, result);
+            return;
+        }
+        for (Indexed<Device> created : chunk) {
+            devicesCache.put(created.item().getId(), created.item());
+            result.add(BulkItemResult.succeeded(created.index(), created.item().getId(), BulkItemResult.Status.CREATED));
+        }
+    }
+
+    private void updateChunk(List<Indexed<DeviceBulkUpdateRequest>> chunk, BulkOperationResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<BulkItemResult> chunkResults = new ArrayList<>(chunk.size());
+        List<Device> updatedDevices = new ArrayList<>(chunk.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // One query for the whole chunk, the changes go out as a batch of UPDATEs on commit
+                Map<Long, Device> existingDevices = findAllByIdAsMap(chunk.stream().map(item -> item.item().getId()).toList());
+                for (Indexed<DeviceBulkUpdateRequest> item : chunk) {
+                    DeviceBulkUpdateRequest deviceRequest = item.item();
+                    Device existingDevice = existingDevices.get(deviceRequest.getId());
+                    if (existingDevice == null) {
+                        chunkResults.add(BulkItemResult.failed(item.index(), deviceRequest.getId(),
+                                DeviceService.DEVICE_NOT_FOUND_FOR_THIS_ID + deviceRequest.getId()));
+                        continue;
+                    }
+                    try {
+                        DeviceRules.checkUpdateAllowed(existingDevice, deviceRequest);
+                    } catch (DeviceInUseException e) {
+                        chunkResults.add(BulkItemResult.failed(item.index(), deviceRequest.getId(), e.getMessage()));
+                        continue;
+                    }
+                    Device before = DeviceChangedEvent.copyOf(existingDevice);
+                    existingDevice.setName(deviceRequest.getName());
+                    existingDevice.setBrand(deviceRequest.getBrand());
+                    existingDevice.setState(deviceRequest.getState());
+                    updatedDevices.add(existingDevice);
+                    eventPublisher.publishEvent(DeviceChangedEvent.updated(before, existingDevice));
+                    chunkResults.add(BulkItemResult.succeeded(item.index(), deviceRequest.getId(), BulkItemResult.Status.UPDATED));
+                }
+                // Saved explicitly instead of relying on dirty checking: a store that hands out copies,
+                // like the in-memory one, only sees the changes it is given, and checks their versions
+                deviceStore.saveAll(updatedDevices);
+            });
+        } catch (DataAccessException | TransactionException e) {
+            failChunk(chunk.stream().map(Indexed::index).toList(), e, result);
+            return;
+        }
+        // Evicted rather than replaced, for the same reason as in DeviceService.updateDevice
+        updatedDevices.forEach(device -> devicesCache.evict(device.getId()));
+        chunkResults.forEach(result::add);
+    }
+
+    private void deleteChunk(List<Indexed<Long>> chunk, BulkOperationResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<BulkItemResult> chunkResults = new ArrayList<>(chunk.size());
+        List<Device> deletedDevices = new ArrayList<>(chunk.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<Long, Device> existingDevices = findAllByIdAsMap(chunk.stream().map(Indexed::item).toList());
+                for (Indexed<Long> item : chunk) {
+                    Device existingDevice = existingDevices.get(item.item());
+                    if (existingDevice == null) {
+                        chunkResults.add(BulkItemResult.failed(item.index(), item.item(),
+                                DeviceService.DEVICE_NOT_FOUND_FOR_THIS_ID + item.item()));
+                        continue;
+                    }
+                    try {
+                        DeviceRules.checkDeleteAllowed(existingDevice);
+                    } catch (DeviceInUseException e) {
+                        chunkResults.add(BulkItemResult.failed(item.index(), item.item(), e.getMessage()));
+                        continue;
+                    }
+                    deletedDevices.add(existingDevice);
+                    chunkResults.add(BulkItemResult.succeeded(item.index(), item.item(), BulkItemResult.Status.DELETED));
+                }
+                // Removed one by one so each DELETE checks the version and goes out in the JDBC batch;
+                // a device that became IN_USE since it was read fails the chunk instead of being deleted
+                deviceStore.deleteAll(deletedDevices);
+                deletedDevices.forEach(device -> eventPublisher.publishEvent(DeviceChangedEvent.deleted(device)));
+            });
+        } catch (DataAccessException | TransactionException e) {
+            failChunk(chunk.stream().map(Indexed::index).toList(), e, result);
+            return;
+        }
+        deletedDevices.forEach(device -> devicesCache.evict(device.getId()));
+        chunkResults.forEach(result::add);
+    }
+
+    private Map<Long, Device> findAllByIdAsMap(List<Long> ids) {
+        Map<Long, Device> devices = new HashMap<>();
+        for (Device device : deviceStore.findAllById(ids)) {
+            devices.put(device.getId(), device);
+        }
+        return devices;
+    }
+
+    private void failChunk(List<Integer> indexes, RuntimeException e, BulkOperationResult result) {
+        log.error("Bulk chunk of {} items failed", indexes.size(), e);
+        for (Integer index : indexes) {
+            result.add(BulkItemResult.failed(index, null, "Batch write failed: " + e.getMessage()));
+        }
+    }
+
+    private record Indexed<T>(int index, T item) {
+    }
+}
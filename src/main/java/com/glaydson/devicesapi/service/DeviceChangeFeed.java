@@ -0,0 +1,194 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Committed device changes in order, for subscribers that would otherwise poll the devices
+ * table. Each change gets the next sequence number, is kept in a replay buffer of the last
+ * {@code devices.changes.replay-buffer-size} changes and is queued to every subscriber.
+ * <p>
+ * Publishing never waits for a subscriber: each one has a queue of
+ * {@code devices.changes.subscriber-queue-size} changes, and a subscriber whose queue is full
+ * is evicted. It can subscribe again from the last sequence it received and gets the changes
+ * it missed from the replay buffer, or a reset when they are no longer there.
+ * <p>
+ * Sequences are per instance and start again from 1 on restart; only the changes made through
+ * this instance are seen.
+ */
+@Slf4j
+@Service
+public class DeviceChangeFeed {
+
+    public static final String SUBSCRIBERS_METRIC = "devices.changes.subscribers";
+    public static final String EVICTIONS_METRIC = "devices.changes.evictions";
+
+    private final int replayBufferSize;
+    private final int subscriberQueueSize;
+    private final Counter evictions;
+    // Guards the sequence, the replay buffer and the subscriber set, so a new subscriber
+    // gets every change exactly once: from the replay or from its queue
+    private final Object lock = new Object();
+    private long sequence;
+    private final ArrayDeque<DeviceChange> replayBuffer;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    public DeviceChangeFeed(DevicesProperties properties, MeterRegistry meterRegistry) {
+        this.replayBufferSize = properties.getChanges().getReplayBufferSize();
+        this.subscriberQueueSize = properties.getChanges().getSubscriberQueueSize();
+        this.replayBuffer = new ArrayDeque<>(replayBufferSize);
+        this.evictions = Counter.builder(EVICTIONS_METRIC)
+                .description("Change feed subscribers disconnected for falling behind")
+                .register(meterRegistry);
+        Gauge.builder(SUBSCRIBERS_METRIC, subscriptions, Set::size)
+                .description("Open change feed subscriptions")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        synchronized (lock) {
+            DeviceChange change = DeviceChange.of(++sequence, event, Instant.now());
+            if (replayBuffer.size() == replayBufferSize) {
+                replayBuffer.removeFirst();
+            }
+            replayBuffer.addLast(change);
+            for (Subscription subscription : subscriptions) {
+                if (!subscription.offer(change)) {
+                    subscriptions.remove(subscription);
+                    evictions.increment();
+                    log.warn("Change feed subscriber evicted, {} changes behind", subscriberQueueSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the changes after {@code lastSequence}, or to the next ones when it is null.
+     * When the changes after {@code lastSequence} are no longer in the replay buffer the
+     * subscription is a reset: it starts with the next change and the subscriber has to re-read
+     * the devices it follows.
+     */
+    public Subscription subscribe(Long lastSequence) {
+        synchronized (lock) {
+            List<DeviceChange> replay = new ArrayList<>();
+            boolean reset = false;
+            if (lastSequence != null && lastSequence < sequence) {
+                long oldest = replayBuffer.isEmpty() ? sequence + 1 : replayBuffer.getFirst().sequence();
+                if (lastSequence < 0 || lastSequence + 1 < oldest) {
+                    reset = true;
+                } else {
+                    replayBuffer.stream().filter(change -> change.sequence() > lastSequence).forEach(replay::add);
+                }
+            } else if (lastSequence != null && lastSequence > sequence) {
+                // From before a restart of this instance
+                reset = true;
+            }
+            Subscription subscription = new Subscription(sequence, reset, replay);
+            subscriptions.add(subscription);
+            return subscription;
+        }
+    }
+
+    public long currentSequence() {
+        synchronized (lock) {
+            return sequence;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (lock) {
+            subscriptions.forEach(Subscription::end);
+            subscriptions.clear();
+        }
+    }
+
+    /**
+     * The changes of one subscriber, read by a single thread with {@link #next(Duration)}.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        // Queued in the slot kept free for it when the subscription ends, to wake up the reader
+        private static final DeviceChange END = new DeviceChange(-1, null, null, null, null, null, null);
+
+        private final long startSequence;
+        private final boolean reset;
+        private final ArrayDeque<DeviceChange> replay;
+        private final BlockingQueue<DeviceChange> queue = new ArrayBlockingQueue<>(subscriberQueueSize + 1);
+        private volatile boolean ended;
+
+        private Subscription(long startSequence, boolean reset, List<DeviceChange> replay) {
+            this.startSequence = startSequence;
+            this.reset = reset;
+            this.replay = new ArrayDeque<>(replay);
+        }
+
+        /**
+         * The next change, waiting up to {@code timeout} for one; null on timeout or once the
+         * subscription has ended, which {@link #isEnded()} tells apart.
+         */
+        public DeviceChange next(Duration timeout) throws InterruptedException {
+            if (!replay.isEmpty()) {
+                return replay.removeFirst();
+            }
+            if (ended && queue.isEmpty()) {
+                return null;
+            }
+            DeviceChange change = queue.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            return change == END ? null : change;
+        }
+
+        // The last sequence published when it was created, what a reset resumes from
+        public long getStartSequence() {
+            return startSequence;
+        }
+
+        public boolean isReset() {
+            return reset;
+        }
+
+        // Evicted for falling behind, or the feed is shutting down
+        public boolean isEnded() {
+            return ended;
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+
+        // Called with the feed lock held, so there is a single producer
+        private boolean offer(DeviceChange change) {
+            if (queue.remainingCapacity() > 1) {
+                queue.add(change);
+                return true;
+            }
+            end();
+            return false;
+        }
+
+        private void end() {
+            ended = true;
+            queue.offer(END);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.model.Device;
+
+/**
+ * Published by the device services for every create, update and delete, inside the write
+ * transaction; listeners that must only see committed changes use {@code @TransactionalEventListener}.
+ * {@code before} is null for a creation and {@code after} is null for a deletion. Both are
+ * detached copies, so later changes to the entity do not show through.
+ */
+public record DeviceChangedEvent(Type type, Device before, Device after) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    public static DeviceChangedEvent created(Device device) {
+        return new DeviceChangedEvent(Type.CREATED, null, copyOf(device));
+    }
+
+    public static DeviceChangedEvent updated(Device before, Device after) {
+        return new DeviceChangedEvent(Type.UPDATED, before, copyOf(after));
+    }
+
+    public static DeviceChangedEvent deleted(Device device) {
+        return new DeviceChangedEvent(Type.DELETED, copyOf(device), null);
+    }
+
+    public Long deviceId() {
+        return after != null ? after.getId() : before.getId();
+    }
+
+    // Also used to keep the state of a device before it is modified
+    public static Device copyOf(Device device) {
+        Device copy = new Device(device.getId(), device.getName(), device.getBrand(), device.getState(), device.getCreationTime());
+        copy.setVersion(device.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,38 @@
+package com.glaydson.devicesapi.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Version of the device collection as a whole, moved by every committed create, update and
+ * delete, so list and search responses can be validated without reading the devices.
+ * <p>
+ * It is kept in memory. A restart begins a new epoch, so the versions handed out before never
+ * match again, and writes made by another node or directly in the database are not seen.
+ */
+@Service
+public class DeviceCollectionVersion {
+
+    private final AtomicReference<Watermark> current =
+            new AtomicReference<>(new Watermark(System.currentTimeMillis(), 0, Instant.now()));
+
+    public Watermark current() {
+        return current.get();
+    }
+
+    // After the commit: a reader that sees the new version also sees the change
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        current.updateAndGet(watermark -> new Watermark(watermark.epoch(), watermark.version() + 1, Instant.now()));
+    }
+
+    /**
+     * The version at one point in time, with the time of the write that produced it (the startup
+     * time before the first write).
+     */
+    public record Watermark(long epoch, long version, Instant lastModified) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor: the id of the last device of a page, so the next page
+ * is fetched with {@code id > cursor} instead of an OFFSET scan.
+ */
+final class DeviceCursor {
+
+    private static final String PREFIX = "id:";
+
+    private DeviceCursor() {
+    }
+
+    static String encode(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new InvalidCursorException("Invalid cursor :: " + cursor);
+            }
+            return Long.parseLong(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor :: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceChange;
+
+import java.util.List;
+
+/**
+ * Where {@link DeviceOutboxPublisher} delivers the device changes. A batch is in sequence
+ * order; returning normally acknowledges all of it, and throwing leaves all of it in the
+ * outbox to be sent again, so a change can be delivered more than once and receivers
+ * deduplicate on {@link DeviceChange#sequence()}.
+ */
+public interface DeviceEventSink {
+
+    void publish(List<DeviceChange> changes);
+}
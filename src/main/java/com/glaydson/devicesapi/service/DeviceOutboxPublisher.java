@@ -0,0 +1,140 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.model.OutboxEvent;
+import com.glaydson.devicesapi.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the outbox table to the {@link DeviceEventSink} every {@code devices.outbox.poll-interval},
+ * in batches of {@code devices.outbox.batch-size} and up to {@code devices.outbox.max-batches-per-poll}
+ * batches per poll.
+ * <p>
+ * A batch is read oldest first with its rows locked, handed to the sink and deleted in one
+ * transaction: if the sink or the commit fails, the rows stay and the batch is sent again on the
+ * next poll (at-least-once). Changes of a device are delivered in the order they were made, the
+ * lock keeps publishers on other instances from overtaking a batch in flight.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "devices.outbox", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class DeviceOutboxPublisher {
+
+    public static final String PUBLISHED_METRIC = "devices.outbox.published";
+    public static final String FAILURES_METRIC = "devices.outbox.failures";
+    public static final String PENDING_METRIC = "devices.outbox.pending";
+    public static final String LAG_METRIC = "devices.outbox.lag";
+    public static final String DELIVERY_METRIC = "devices.outbox.delivery";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final DeviceEventSink sink;
+    private final DevicesProperties.Outbox properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter published;
+    private final Counter failures;
+    private final Timer delivery;
+    private final AtomicLong pending = new AtomicLong();
+    // Age of the oldest change not yet published, as of the last poll
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    public DeviceOutboxPublisher(OutboxEventRepository outboxEventRepository, DeviceEventSink sink,
+                                 DevicesProperties properties, PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.sink = sink;
+        this.properties = properties.getOutbox();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.published = Counter.builder(PUBLISHED_METRIC)
+                .description("Device changes delivered to the sink")
+                .register(meterRegistry);
+        this.failures = Counter.builder(FAILURES_METRIC)
+                .description("Outbox batches the sink or the commit failed, sent again on the next poll")
+                .register(meterRegistry);
+        this.delivery = Timer.builder(DELIVERY_METRIC)
+                .description("Time from a device change to its delivery to the sink")
+                .register(meterRegistry);
+        Gauge.builder(PENDING_METRIC, pending, AtomicLong::get)
+                .description("Device changes waiting in the outbox, as of the last poll")
+                .register(meterRegistry);
+        Gauge.builder(LAG_METRIC, lagMillis, lag -> lag.get() / 1000.0)
+                .description("Age of the oldest device change waiting in the outbox, as of the last poll")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${devices.outbox.poll-interval}")
+    public void publishPending() {
+        boolean drained = false;
+        try {
+            for (int batch = 0; batch < properties.getMaxBatchesPerPoll() && !drained; batch++) {
+                drained = publishBatch() < properties.getBatchSize();
+            }
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("Publishing the device outbox failed, retrying in {}", properties.getPollInterval(), e);
+        }
+        updateBacklog(drained);
+    }
+
+    // Returns the number of changes published
+    int publishBatch() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> {
+            List<OutboxEvent> events = outboxEventRepository.findByOrderByIdAsc(Limit.of(properties.getBatchSize()));
+            if (!events.isEmpty()) {
+                sink.publish(events.stream().map(DeviceOutboxPublisher::toChange).toList());
+                outboxEventRepository.deleteAllInBatch(events);
+            }
+            return events;
+        });
+        Instant now = Instant.now();
+        for (OutboxEvent event : batch) {
+            delivery.record(Duration.between(event.getCreatedAt(), now));
+        }
+        published.increment(batch.size());
+        return batch.size();
+    }
+
+    private void updateBacklog(boolean drained) {
+        if (drained) {
+            // The last batch was not full, nothing was left when it was read
+            pending.set(0);
+            lagMillis.set(0);
+            return;
+        }
+        try {
+            pending.set(outboxEventRepository.count());
+            lagMillis.set(outboxEventRepository.findFirstByOrderByIdAsc()
+                    .map(oldest -> Duration.between(oldest.getCreatedAt(), Instant.now()).toMillis())
+                    .orElse(0L));
+        } catch (RuntimeException e) {
+            log.warn("Could not read the device outbox backlog", e);
+        }
+    }
+
+    static DeviceChange toChange(OutboxEvent event) {
+        Device.State deviceState = event.getState() != null ? event.getState() : event.getPreviousState();
+        return new DeviceChange(event.getId(), DeviceChangedEvent.Type.valueOf(event.getType().name()),
+                event.getDeviceId(), event.getPreviousState(), event.getState(),
+                new DeviceView(event.getDeviceId(), event.getName(), event.getBrand(), deviceState,
+                        event.getDeviceCreationTime(), event.getDeviceVersion()),
+                event.getCreatedAt());
+    }
+}
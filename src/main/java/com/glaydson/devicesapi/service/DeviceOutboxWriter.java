@@ -0,0 +1,45 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.model.OutboxEvent;
+import com.glaydson.devicesapi.repository.OutboxEventRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Writes every device change to the outbox table. It listens synchronously, inside the
+ * transaction that publishes the event, so the outbox row commits or rolls back with the
+ * change itself; a change made outside a transaction is an error.
+ */
+@Component
+@ConditionalOnProperty(prefix = "devices.outbox", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class DeviceOutboxWriter {
+
+    private final OutboxEventRepository outboxEventRepository;
+
+    public DeviceOutboxWriter(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+    }
+
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        Device device = event.after() != null ? event.after() : event.before();
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setDeviceId(event.deviceId());
+        outboxEvent.setType(OutboxEvent.Type.valueOf(event.type().name()));
+        outboxEvent.setPreviousState(event.before() != null ? event.before().getState() : null);
+        outboxEvent.setState(event.after() != null ? event.after().getState() : null);
+        outboxEvent.setName(device.getName());
+        outboxEvent.setBrand(device.getBrand());
+        outboxEvent.setDeviceCreationTime(device.getCreationTime());
+        outboxEvent.setDeviceVersion(device.getVersion());
+        outboxEvent.setCreatedAt(Instant.now());
+        outboxEventRepository.save(outboxEvent);
+    }
+}
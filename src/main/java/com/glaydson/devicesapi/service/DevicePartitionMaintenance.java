@@ -0,0 +1,102 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * Creates the partitions of the partitioned Postgres schema (db/postgres/schema-partitioned.sql)
+ * before rows need them: the monthly partitions of devices from the current month to
+ * {@code devices.partitioning.months-ahead} months later, and the yearly partitions of
+ * devices_archive for every year a live device could be archived from. Runs once at startup,
+ * before the web server accepts requests, then every {@code devices.partitioning.maintenance-interval}.
+ * <p>
+ * Postgres refuses to create a partition over rows that are already in the default partition, as
+ * happens when the application was down at a month change or rows were written directly. Those
+ * rows are moved into the new partition: the default partition is detached, the partition created,
+ * the rows copied over and deleted, and the default partition attached again, in one transaction.
+ * It locks the table for the time of the move. A partition that still cannot be created is logged
+ * and the others are created.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "devices.partitioning", name = "enabled", havingValue = "true")
+public class DevicePartitionMaintenance implements SmartInitializingSingleton {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DevicesProperties.Partitioning properties;
+
+    public DevicePartitionMaintenance(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      DevicesProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties.getPartitioning();
+    }
+
+    // After every bean is ready, before the web server and the scheduled jobs start writing devices
+    @Override
+    public void afterSingletonsInstantiated() {
+        createPartitions();
+    }
+
+    @Scheduled(initialDelayString = "${devices.partitioning.maintenance-interval}",
+            fixedDelayString = "${devices.partitioning.maintenance-interval}")
+    public void createPartitions() {
+        createPartitions(YearMonth.now());
+    }
+
+    void createPartitions(YearMonth currentMonth) {
+        for (int i = 0; i <= properties.getMonthsAhead(); i++) {
+            YearMonth month = currentMonth.plusMonths(i);
+            createPartition("devices", "devices_y%dm%02d".formatted(month.getYear(), month.getMonthValue()),
+                    month.atDay(1), month.plusMonths(1).atDay(1));
+        }
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT min(creation_time) FROM devices", LocalDateTime.class);
+        if (oldest == null) {
+            return;
+        }
+        for (int year = oldest.getYear(); year <= currentMonth.getYear(); year++) {
+            createPartition("devices_archive", "devices_archive_y" + year,
+                    LocalDate.of(year, 1, 1), LocalDate.of(year + 1, 1, 1));
+        }
+    }
+
+    private void createPartition(String table, String partition, LocalDate from, LocalDate to) {
+        // Names and bounds are built from numbers only, nothing here comes from a client
+        String defaultPartition = table + "_default";
+        String range = "creation_time >= '" + from + "' AND creation_time < '" + to + "'";
+        String create = "CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        try {
+            Boolean stranded = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + defaultPartition + " WHERE " + range + ")", Boolean.class);
+            if (!Boolean.TRUE.equals(stranded)) {
+                jdbcTemplate.execute(create);
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + defaultPartition);
+                jdbcTemplate.execute(create);
+                int moved = jdbcTemplate.update("INSERT INTO " + table + " SELECT * FROM " + defaultPartition + " WHERE " + range);
+                jdbcTemplate.update("DELETE FROM " + defaultPartition + " WHERE " + range);
+                jdbcTemplate.execute("ALTER TABLE " + table + " ATTACH PARTITION " + defaultPartition + " DEFAULT");
+                log.info("Moved {} rows of {} from {} to the new partition {}", moved, table, defaultPartition, partition);
+            });
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Could not create partition {} of {}, its rows stay in the default partition", partition, table, e);
+        }
+    }
+}
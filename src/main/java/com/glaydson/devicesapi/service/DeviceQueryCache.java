@@ -0,0 +1,56 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.config.ReplicaRouting;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DevicePage;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * List and search results cached by request and collection version (see
+ * {@link DeviceCollectionVersion}). Nothing is evicted on a write: the new version misses, and the
+ * entries of older versions are no longer asked for and age out of the cache.
+ */
+@Service
+public class DeviceQueryCache {
+
+    // Configured by the devices.http-cache.* properties, see HttpCacheConfig
+    public static final String QUERIES_CACHE = "device-queries";
+    private final DeviceService deviceService;
+    private final DevicesProperties properties;
+
+    public DeviceQueryCache(DeviceService deviceService, DevicesProperties properties) {
+        this.deviceService = deviceService;
+        this.properties = properties;
+    }
+
+    @Cacheable(cacheNames = QUERIES_CACHE, key = "{'page', #watermark.version(), #cursor, #limit, #fields}", sync = true)
+    public DevicePage getDevicesPage(DeviceCollectionVersion.Watermark watermark, String cursor, Integer limit,
+                                     Set<DeviceField> fields) {
+        return read(watermark, () -> deviceService.getDevicesPage(cursor, limit, fields));
+    }
+
+    @Cacheable(cacheNames = QUERIES_CACHE, key = "{'search', #watermark.version(), #criteria, #fields}", sync = true)
+    public List<DeviceView> getDevicesByCriteria(DeviceCollectionVersion.Watermark watermark,
+                                                 DeviceSearchCriteria criteria, Set<DeviceField> fields) {
+        return read(watermark, () -> deviceService.getDevicesByCriteria(criteria, fields));
+    }
+
+    // A replica that has not applied the last write yet would leave its older result under the new
+    // version until the next write, so until max-lag has passed since that write the primary is read
+    private <T> T read(DeviceCollectionVersion.Watermark watermark, Supplier<T> reads) {
+        DevicesProperties.Replica replica = properties.getReplica();
+        if (replica.isEnabled() && watermark.lastModified().isAfter(Instant.now().minus(replica.getMaxLag()))) {
+            return ReplicaRouting.onPrimary(reads);
+        }
+        return reads.get();
+    }
+}
@@ -0,0 +1,37 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.exception.DeviceInUseException;
+import com.glaydson.devicesapi.exception.MissingFieldsException;
+import com.glaydson.devicesapi.model.Device;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Business rules shared by the single and the bulk device operations.
+ */
+@Slf4j
+final class DeviceRules {
+
+    private DeviceRules() {
+    }
+
+    static void requireMandatoryFields(DeviceRequest deviceRequest) {
+        if (deviceRequest.getBrand() == null || deviceRequest.getName() == null || deviceRequest.getState() == null) {
+            throw new MissingFieldsException("Device brand, name and state are mandatory");
+        }
+    }
+
+    static void checkUpdateAllowed(Device existingDevice, DeviceRequest device) {
+        if (existingDevice.getState() == Device.State.IN_USE && (!existingDevice.getName().equals(device.getName()) || !existingDevice.getBrand().equals(device.getBrand()))) {
+            log.error("Device in use cannot have name and brand updated");
+            throw new DeviceInUseException("Name and brand cannot be updated if the device is in use");
+        }
+    }
+
+    static void checkDeleteAllowed(Device existingDevice) {
+        if (existingDevice.getState() == Device.State.IN_USE) {
+            log.error("Devices in use cannot be removed");
+            throw new DeviceInUseException("Devices in use cannot be removed");
+        }
+    }
+}
@@ -1,91 +1,310 @@
 // src/main/java/com/glaydson/devicesapi/service/DeviceService.java
 package com.glaydson.devicesapi.service;
 
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DevicePage;
 import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.dto.DeviceSearchBatchResult;
 import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
-import com.glaydson.devicesapi.exception.DeviceInUseException;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.exception.DeviceUnavailableException;
 import com.glaydson.devicesapi.exception.InvalidDeviceStateException;
+import com.glaydson.devicesapi.exception.InvalidSearchException;
 import com.glaydson.devicesapi.exception.MissingFieldsException;
+import com.glaydson.devicesapi.exception.PreconditionFailedException;
 import com.glaydson.devicesapi.exception.ResourceNotFoundException;
 import com.glaydson.devicesapi.model.Device;
-import com.glaydson.devicesapi.repository.DeviceRepository;
+import com.glaydson.devicesapi.repository.DeviceSpecifications;
+import com.glaydson.devicesapi.repository.DeviceStore;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class DeviceService {
 
     public static final String DEVICE_NOT_FOUND_FOR_THIS_ID = "Device not found for this id :: ";
-    private final DeviceRepository deviceRepository;
+    public static final String INVALID_CREATION_RANGE = "createdAfter must be before createdBefore";
+    // Cache of devices by id, configured by the spring.cache.* properties
+    public static final String DEVICES_CACHE = "devices";
+    private final DeviceStore deviceStore;
+    private final DevicesProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DeviceBatchLoader deviceBatchLoader;
 
-    public DeviceService(DeviceRepository deviceRepository) {
-        this.deviceRepository = deviceRepository;
+    public DeviceService(DeviceStore deviceStore, DevicesProperties properties,
+                         ApplicationEventPublisher eventPublisher, DeviceBatchLoader deviceBatchLoader) {
+        this.deviceStore = deviceStore;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.deviceBatchLoader = deviceBatchLoader;
     }
 
+    // Transactional so the outbox row of the creation is written with the device
+    @Transactional
+    @CachePut(cacheNames = DEVICES_CACHE, key = "#result.id")
     public Device createDevice(DeviceRequest deviceRequest) {
         // Test if all the mandatory fields are filled
-        if (deviceRequest.getBrand() == null || deviceRequest.getName() == null || deviceRequest.getState() == null) {
-            throw new MissingFieldsException("Device brand, name and state are mandatory");
-        }
+        DeviceRules.requireMandatoryFields(deviceRequest);
         Device device = new Device(deviceRequest.getName(), deviceRequest.getBrand(), deviceRequest.getState());
-        return deviceRepository.save(device);
+        Device createdDevice = deviceStore.save(device);
+        eventPublisher.publishEvent(DeviceChangedEvent.created(createdDevice));
+        return createdDevice;
     }
 
+    // sync = true makes concurrent misses on the same id wait for a single load, and the loader
+    // batches misses on different ids into one query.
+    // Loaded from the primary even with replica routing: a row read from a lagging replica right
+    // after an update would stay in the cache for its whole lifetime; the cache offloads these reads
+    @Cacheable(cacheNames = DEVICES_CACHE, sync = true)
     public Device getDeviceById(Long id) {
-        Optional<Device> device = deviceRepository.findById(id);
+        Optional<Device> device = deviceBatchLoader.load(id);
         return device.orElseThrow(() -> new ResourceNotFoundException(DEVICE_NOT_FOUND_FOR_THIS_ID + id));
     }
 
-    public List<Device> getAllDevices() {
-        // PAGINATION MISSING
-        return deviceRepository.findAll();
+    // Multi-get in one query, in the order asked; unknown ids are left out
+    @Transactional(readOnly = true)
+    public List<DeviceView> getDevicesByIds(List<Long> ids, Set<DeviceField> fields) {
+        int maxIds = properties.getPagination().getMaxLimit();
+        if (ids.size() > maxIds) {
+            throw new InvalidSearchException("At most " + maxIds + " ids can be read at once");
+        }
+        Map<Long, DeviceView> devices = new HashMap<>();
+        for (DeviceView device : deviceStore.findViews(DeviceSpecifications.withIds(new LinkedHashSet<>(ids)), fields)) {
+            devices.put(device.id(), device);
+        }
+        return ids.stream().distinct().map(devices::get).filter(Objects::nonNull).toList();
+    }
+
+    // Read-only: Hibernate skips the flush, and with replica routing the query goes to the replica
+    @Transactional(readOnly = true)
+    public DevicePage getDevicesPage(String cursor, Integer limit, Set<DeviceField> fields) {
+        int pageSize = resolvePageSize(limit);
+        long afterId = cursor == null ? 0L : DeviceCursor.decode(cursor);
+        // Fetch one extra row to know if there is a next page without a count query
+        List<DeviceView> devices = deviceStore.findViewsAfter(afterId, pageSize + 1, fields);
+        if (devices.size() <= pageSize) {
+            return new DevicePage(devices, null);
+        }
+        List<DeviceView> page = devices.subList(0, pageSize);
+        return new DevicePage(page, DeviceCursor.encode(page.getLast().id()));
+    }
+
+    public void streamAllDevices(Consumer<List<Device>> chunkConsumer) {
+        // Walk the table by id in fixed-size chunks, so only one chunk is held in memory at a time
+        int chunkSize = properties.getPagination().getStreamChunkSize();
+        long afterId = 0L;
+        List<Device> chunk;
+        do {
+            chunk = deviceStore.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(chunkSize));
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunkConsumer.accept(chunk);
+            afterId = chunk.getLast().getId();
+        } while (chunk.size() == chunkSize);
+    }
+
+    private int resolvePageSize(Integer limit) {
+        DevicesProperties.Pagination pagination = properties.getPagination();
+        if (limit == null) {
+            return pagination.getDefaultLimit();
+        }
+        return Math.max(1, Math.min(limit, pagination.getMaxLimit()));
+    }
+
+
+    @Transactional(readOnly = true)
+    public List<DeviceView> getDevicesByCriteria(DeviceSearchCriteria criteria, Set<DeviceField> fields) {
+        checkCreationRange(criteria);
+        return deviceStore.findViews(DeviceSpecifications.matching(criteria), fields);
     }
 
+    // Many searches in one query: duplicate criteria are searched once and the matching devices
+    // are handed to every criterion they match. Results are in the order of the criteria
+    @Transactional(readOnly = true)
+    public List<DeviceSearchBatchResult> getDevicesByCriteriaBatch(List<DeviceSearchCriteria> criteria,
+                                                                   Set<DeviceField> fields) {
+        int maxCriteria = properties.getSearch().getMaxBatchCriteria();
+        if (criteria.isEmpty() || criteria.size() > maxCriteria) {
+            throw new InvalidSearchException("A batch search takes 1 to " + maxCriteria + " criteria");
+        }
+        for (DeviceSearchCriteria criterion : criteria) {
+            if (criterion == null) {
+                throw new InvalidSearchException("A batch search cannot have null criteria");
+            }
+            checkCreationRange(criterion);
+        }
+        List<DeviceSearchCriteria> distinct = List.copyOf(new LinkedHashSet<>(criteria));
+        Map<DeviceSearchCriteria, List<DeviceView>> results = new HashMap<>();
+        distinct.forEach(criterion -> results.put(criterion, new ArrayList<>()));
 
-    public List<Device> getDevicesByCriteria(DeviceSearchCriteria criteria) {
-        if (criteria.getBrand() != null && criteria.getState() != null) {
-            return deviceRepository.findByBrandAndState(criteria.getBrand(), criteria.getState());
-        } else if (criteria.getBrand() != null) {
-            return deviceRepository.findByBrand(criteria.getBrand());
-        } else if (criteria.getState() != null) {
-            return deviceRepository.findByState(criteria.getState());
-        } else {
-            return deviceRepository.findAll();
+        // Brand, state and creation time tell which criteria a device matches, they are read even when not asked for
+        Set<DeviceField> queried = EnumSet.copyOf(fields);
+        queried.addAll(List.of(DeviceField.BRAND, DeviceField.STATE, DeviceField.CREATION_TIME));
+        BatchMatcher matcher = new BatchMatcher(distinct);
+        for (DeviceView device : deviceStore.findViews(DeviceSpecifications.matchingAny(distinct), queried)) {
+            DeviceView selected = queried.equals(fields) ? device : device.select(fields);
+            for (DeviceSearchCriteria criterion : matcher.matching(device)) {
+                results.get(criterion).add(selected);
+            }
         }
+        return criteria.stream().map(criterion -> new DeviceSearchBatchResult(criterion, results.get(criterion))).toList();
     }
 
-    public Device updateDevice(Long id, DeviceRequest device) {
+    // expectedVersion comes from If-Match, null means an unconditional update.
+    // The entry is evicted rather than replaced: two updates can commit in one order and
+    // return in the other, and a put could then leave the older state in the cache
+    @Transactional
+    @CacheEvict(cacheNames = DEVICES_CACHE, key = "#id")
+    public Device updateDevice(Long id, DeviceRequest device, Long expectedVersion) {
         // Improve this method, it is not good
         // why creation time is being tested here, not use device object
-        Device existingDevice = deviceRepository.findById(id)
+        DeviceRules.requireMandatoryFields(device);
+        Device existingDevice = deviceStore.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException(DEVICE_NOT_FOUND_FOR_THIS_ID + id));
 
-        if (existingDevice.getState() == Device.State.IN_USE && (!existingDevice.getName().equals(device.getName()) || !existingDevice.getBrand().equals(device.getBrand()))) {
-            log.error("Device in use cannot have name and brand updated");
-            throw new DeviceInUseException("Name and brand cannot be updated if the device is in use");
-            }
-
+        checkVersion(existingDevice, expectedVersion);
+        DeviceRules.checkUpdateAllowed(existingDevice, device);
 
+        Device before = DeviceChangedEvent.copyOf(existingDevice);
         existingDevice.setName(device.getName());
         existingDevice.setBrand(device.getBrand());
         existingDevice.setState(device.getState());
 
-        return deviceRepository.save(existingDevice);
+        // Flush here so a concurrent change fails inside this call, the UPDATE checks the version
+        Device updatedDevice = deviceStore.saveAndFlush(existingDevice);
+        eventPublisher.publishEvent(DeviceChangedEvent.updated(before, updatedDevice));
+        return updatedDevice;
+    }
+
+    @Transactional
+    @CacheEvict(cacheNames = DEVICES_CACHE, key = "#id")
+    public void deleteDevice(Long id, Long expectedVersion) {
+        Device existingDevice = deviceStore.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException(DEVICE_NOT_FOUND_FOR_THIS_ID + id));
+
+        checkVersion(existingDevice, expectedVersion);
+        DeviceRules.checkDeleteAllowed(existingDevice);
+
+        // The DELETE checks the version too, so the device cannot have become IN_USE in the meantime
+        deviceStore.delete(existingDevice);
+        deviceStore.flush();
+        eventPublisher.publishEvent(DeviceChangedEvent.deleted(existingDevice));
+    }
+
+    private static void checkCreationRange(DeviceSearchCriteria criteria) {
+        if (criteria.getCreatedAfter() != null && criteria.getCreatedBefore() != null
+                && !criteria.getCreatedAfter().isBefore(criteria.getCreatedBefore())) {
+            throw new InvalidSearchException(INVALID_CREATION_RANGE);
+        }
+    }
+
+    // One conditional UPDATE: a device that is not AVAILABLE, or that another client checked out first, fails with 409
+    @Transactional
+    @CacheEvict(cacheNames = DEVICES_CACHE, key = "#id")
+    public Device checkOutDevice(Long id) {
+        return transitionState(id, Device.State.AVAILABLE, Device.State.IN_USE);
+    }
+
+    @Transactional
+    @CacheEvict(cacheNames = DEVICES_CACHE, key = "#id")
+    public Device checkInDevice(Long id) {
+        return transitionState(id, Device.State.IN_USE, Device.State.AVAILABLE);
+    }
+
+    // The first AVAILABLE device of the brand that no concurrent call holds; 409 when there is none
+    @Transactional
+    @CacheEvict(cacheNames = DEVICES_CACHE, key = "#result.id")
+    public Device checkOutAnyDevice(String brand) {
+        if (brand == null || brand.isBlank()) {
+            throw new MissingFieldsException("Device brand is mandatory");
+        }
+        Device checkedOut = deviceStore.updateFirstStateIf(brand, Device.State.AVAILABLE, Device.State.IN_USE)
+                .orElseThrow(() -> new DeviceUnavailableException("No AVAILABLE device of brand " + brand));
+        Device before = DeviceChangedEvent.copyOf(checkedOut);
+        before.setState(Device.State.AVAILABLE);
+        before.setVersion(checkedOut.getVersion() - 1);
+        eventPublisher.publishEvent(DeviceChangedEvent.updated(before, checkedOut));
+        return checkedOut;
     }
 
-    public void deleteDevice(Long id) {
-        Device existingDevice = deviceRepository.findById(id)
+    private Device transitionState(Long id, Device.State from, Device.State to) {
+        if (deviceStore.updateStateIf(id, from, to) == 0) {
+            Device existingDevice = deviceStore.findById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException(DEVICE_NOT_FOUND_FOR_THIS_ID + id));
+            throw new DeviceUnavailableException("Device " + id + " is " + existingDevice.getState() + ", not " + from);
+        }
+        // Read back for the response, in the same transaction as the update
+        Device device = deviceStore.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException(DEVICE_NOT_FOUND_FOR_THIS_ID + id));
+        Device before = DeviceChangedEvent.copyOf(device);
+        before.setState(from);
+        before.setVersion(device.getVersion() - 1);
+        eventPublisher.publishEvent(DeviceChangedEvent.updated(before, device));
+        return device;
+    }
+
+    private static void checkVersion(Device existingDevice, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(existingDevice.getVersion())) {
+            throw new PreconditionFailedException("Device " + existingDevice.getId() + " is at version "
+                    + existingDevice.getVersion() + ", not " + expectedVersion);
+        }
+    }
+
+    // Criteria of a batch indexed by brand and state, so a device is only checked against the ones it may match
+    private static final class BatchMatcher {
 
-        if (existingDevice.getState() == Device.State.IN_USE) {
-            log.error("Devices in use cannot be removed");
-            throw new DeviceInUseException("Devices in use cannot be removed");
+        private final Map<String, List<DeviceSearchCriteria>> byBrand = new HashMap<>();
+        private final Map<Device.State, List<DeviceSearchCriteria>> byState = new EnumMap<>(Device.State.class);
+        private final List<DeviceSearchCriteria> unfiltered = new ArrayList<>();
+
+        private BatchMatcher(List<DeviceSearchCriteria> criteria) {
+            for (DeviceSearchCriteria criterion : criteria) {
+                if (criterion.getBrand() != null) {
+                    byBrand.computeIfAbsent(criterion.getBrand(), brand -> new ArrayList<>()).add(criterion);
+                } else if (criterion.getState() != null) {
+                    byState.computeIfAbsent(criterion.getState(), state -> new ArrayList<>()).add(criterion);
+                } else {
+                    unfiltered.add(criterion);
+                }
+            }
+        }
+
+        private List<DeviceSearchCriteria> matching(DeviceView device) {
+            List<DeviceSearchCriteria> matching = new ArrayList<>();
+            addMatching(matching, byBrand.getOrDefault(device.brand(), List.of()), device);
+            addMatching(matching, byState.getOrDefault(device.state(), List.of()), device);
+            addMatching(matching, unfiltered, device);
+            return matching;
         }
 
-        deviceRepository.deleteById(id);
+        private static void addMatching(List<DeviceSearchCriteria> matching, List<DeviceSearchCriteria> candidates,
+                                        DeviceView device) {
+            for (DeviceSearchCriteria candidate : candidates) {
+                if (candidate.matches(device.brand(), device.state(), device.creationTime())) {
+                    matching.add(candidate);
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceStats;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Device counts by brand and state, kept in memory and moved by every committed create,
+ * update and delete, so reading them never touches the devices table.
+ * <p>
+ * The counters are rebuilt from a GROUP BY query at startup and then every
+ * {@code devices.stats.reconcile-interval}. That corrects what the events cannot see: rows
+ * written by another node or directly in the database.
+ */
+@Slf4j
+@Service
+public class DeviceStatsService {
+
+    private final DeviceStore deviceStore;
+    // Held shared while applying a change and exclusively while swapping in reconciled counters
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // One reconciliation at a time, the scheduled one can overlap with the first read
+    private final Lock reconcileLock = new ReentrantLock();
+    private Map<Group, LongAdder> counts = new ConcurrentHashMap<>();
+    // Changes applied while the GROUP BY runs, replayed on top of its result; null outside a reconciliation
+    private Map<Group, LongAdder> pendingChanges;
+    private volatile Instant reconciledAt;
+    // Bumped by every change; the snapshot is rebuilt on the first read after one, so reads in between cost nothing
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    public DeviceStatsService(DeviceStore deviceStore) {
+        this.deviceStore = deviceStore;
+    }
+
+    public DeviceStats getStats() {
+        if (reconciledAt == null) {
+            reconcile();
+        }
+        Snapshot current = snapshot;
+        if (current == null || current.generation() != generation.get()) {
+            current = buildSnapshot();
+            snapshot = current;
+        }
+        return current.stats();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        lock.readLock().lock();
+        try {
+            if (event.before() != null) {
+                add(event.before(), -1);
+            }
+            if (event.after() != null) {
+                add(event.after(), 1);
+            }
+            generation.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${devices.stats.reconcile-interval}")
+    public void reconcile() {
+        reconcileLock.lock();
+        try {
+            doReconcile();
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    private void doReconcile() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Group, LongAdder> reconciled = new ConcurrentHashMap<>();
+        try {
+            for (DeviceStore.BrandStateCount row : deviceStore.countByBrandAndState()) {
+                reconciled.computeIfAbsent(new Group(row.getBrand(), row.getState()), group -> new LongAdder()).add(row.getCount());
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                // A change committed while the query ran may or may not be in its result; replaying
+                // it can count it twice, which the next reconciliation corrects
+                pendingChanges.forEach((group, change) ->
+                        reconciled.computeIfAbsent(group, g -> new LongAdder()).add(change.sum()));
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            logDrift(reconciled);
+            counts = reconciled;
+            reconciledAt = Instant.now();
+            generation.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Device device, long delta) {
+        Group group = new Group(device.getBrand(), device.getState());
+        counts.computeIfAbsent(group, g -> new LongAdder()).add(delta);
+        Map<Group, LongAdder> pending = pendingChanges;
+        if (pending != null) {
+            pending.computeIfAbsent(group, g -> new LongAdder()).add(delta);
+        }
+    }
+
+    private void logDrift(Map<Group, LongAdder> reconciled) {
+        if (reconciledAt == null) {
+            return;
+        }
+        long drift = 0;
+        Set<Group> groups = new HashSet<>(counts.keySet());
+        groups.addAll(reconciled.keySet());
+        for (Group group : groups) {
+            drift += Math.abs(sum(counts.get(group)) - sum(reconciled.get(group)));
+        }
+        if (drift > 0) {
+            log.warn("Device counters were off by {} and have been reconciled", drift);
+        }
+    }
+
+    private Snapshot buildSnapshot() {
+        lock.readLock().lock();
+        try {
+            // Read first: a change made while building leaves the snapshot one generation behind
+            long builtAt = generation.get();
+            long total = 0;
+            Map<Device.State, Long> byState = new EnumMap<>(Device.State.class);
+            Map<String, Long> byBrand = new TreeMap<>();
+            Map<String, Map<Device.State, Long>> byBrandAndState = new TreeMap<>();
+            for (Map.Entry<Group, LongAdder> entry : counts.entrySet()) {
+                long count = entry.getValue().sum();
+                if (count <= 0) {
+                    continue;
+                }
+                Group group = entry.getKey();
+                total += count;
+                byState.merge(group.state(), count, Long::sum);
+                byBrand.merge(group.brand(), count, Long::sum);
+                byBrandAndState.computeIfAbsent(group.brand(), brand -> new EnumMap<>(Device.State.class))
+                        .put(group.state(), count);
+            }
+            return new Snapshot(builtAt, new DeviceStats(total, byState, byBrand, byBrandAndState, reconciledAt));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private record Group(String brand, Device.State state) {
+    }
+
+    private record Snapshot(long generation, DeviceStats stats) {
+    }
+}
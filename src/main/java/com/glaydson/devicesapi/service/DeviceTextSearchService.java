@@ -0,0 +1,73 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceSearchResults;
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.exception.InvalidSearchException;
+import com.glaydson.devicesapi.repository.DeviceSpecifications;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import com.glaydson.devicesapi.repository.DeviceTextIndex;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Ranked, paginated search on the words of device names and brands. The {@link DeviceTextIndex}
+ * of the database finds and orders the ids of one page, then only those devices are read.
+ */
+@Service
+public class DeviceTextSearchService {
+
+    private final DeviceTextIndex deviceTextIndex;
+    private final DeviceStore deviceStore;
+    private final DevicesProperties properties;
+
+    public DeviceTextSearchService(DeviceTextIndex deviceTextIndex, DeviceStore deviceStore,
+                                   DevicesProperties properties) {
+        this.deviceTextIndex = deviceTextIndex;
+        this.deviceStore = deviceStore;
+        this.properties = properties;
+    }
+
+    @Transactional(readOnly = true)
+    public DeviceSearchResults search(String query, DeviceTextSearchMode mode, Integer page, Integer limit,
+                                      Set<DeviceField> fields) {
+        List<String> words = DeviceTextIndex.words(query);
+        if (words.isEmpty()) {
+            throw new InvalidSearchException("The search needs at least one letter or digit");
+        }
+        int pageSize = limit == null ? properties.getPagination().getDefaultLimit()
+                : Math.clamp(limit, 1, properties.getPagination().getMaxLimit());
+        int pageNumber = page == null ? 0 : page;
+        long offset = (long) pageNumber * pageSize;
+        // Every page is ranked from the start, so deep pages get more expensive: they are capped
+        if (pageNumber < 0 || offset + pageSize > properties.getSearch().getMaxResultWindow()) {
+            throw new InvalidSearchException("Only the first " + properties.getSearch().getMaxResultWindow()
+                    + " results can be paged through, refine the search");
+        }
+
+        // One more than the page, to know whether there is a next one
+        List<Long> ids = deviceTextIndex.search(words, mode, (int) offset, pageSize + 1);
+        boolean hasNext = ids.size() > pageSize;
+        if (hasNext) {
+            ids = ids.subList(0, pageSize);
+        }
+        if (ids.isEmpty()) {
+            return new DeviceSearchResults(List.of(), null);
+        }
+        Map<Long, DeviceView> views = new HashMap<>();
+        for (DeviceView view : deviceStore.findViews(DeviceSpecifications.withIds(ids), fields)) {
+            views.put(view.id(), view);
+        }
+        // Back in rank order; a device deleted since it was ranked is left out
+        List<DeviceView> devices = ids.stream().map(views::get).filter(Objects::nonNull).toList();
+        return new DeviceSearchResults(devices, hasNext ? pageNumber + 1 : null);
+    }
+}
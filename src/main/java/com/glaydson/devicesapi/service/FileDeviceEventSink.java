@@ -0,0 +1,51 @@
+package com.glaydson.devicesapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.glaydson.devicesapi.dto.DeviceChange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends the published changes to a file, one JSON document per line (NDJSON). A batch is
+ * forced to disk before it is acknowledged, so a crash can only repeat lines, not lose them.
+ */
+public class FileDeviceEventSink implements DeviceEventSink {
+
+    private final Path path;
+    private final ObjectWriter writer;
+
+    public FileDeviceEventSink(Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.writer = objectMapper.writer();
+    }
+
+    @Override
+    public synchronized void publish(List<DeviceChange> changes) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                for (DeviceChange change : changes) {
+                    out.write(writer.writeValueAsBytes(change));
+                    out.write('\n');
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append device changes to " + path, e);
+        }
+    }
+}
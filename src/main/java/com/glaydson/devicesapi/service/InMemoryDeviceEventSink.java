@@ -0,0 +1,38 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceChange;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Keeps the last {@code capacity} published changes in memory, for tests and local runs.
+ */
+public class InMemoryDeviceEventSink implements DeviceEventSink {
+
+    private final int capacity;
+    private final ArrayDeque<DeviceChange> changes;
+
+    public InMemoryDeviceEventSink(int capacity) {
+        this.capacity = capacity;
+        this.changes = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    @Override
+    public synchronized void publish(List<DeviceChange> batch) {
+        for (DeviceChange change : batch) {
+            if (changes.size() == capacity) {
+                changes.removeFirst();
+            }
+            changes.addLast(change);
+        }
+    }
+
+    public synchronized List<DeviceChange> getChanges() {
+        return List.copyOf(changes);
+    }
+
+    public synchronized void clear() {
+        changes.clear();
+    }
+}
@@ -0,0 +1,222 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import com.glaydson.devicesapi.repository.DeviceTextIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Text search for databases without a text index of their own (H2): an inverted index of the
+ * words of every device name and brand, kept in memory. Words are sorted, so a prefix is a
+ * range of them.
+ * <p>
+ * The index is built from the devices table on the first search and then follows the committed
+ * changes. Changes committed while it is built are queued and applied on top, as the
+ * reconciliation of {@link DeviceStatsService} does. Builds run one at a time, and one that fails
+ * still applies what it queued and leaves the next search to build again.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "database", havingValue = "h2", matchIfMissing = true)
+public class InMemoryDeviceTextIndex implements DeviceTextIndex {
+
+    private static final Set<DeviceField> INDEXED_FIELDS = EnumSet.of(DeviceField.ID, DeviceField.NAME, DeviceField.BRAND);
+    private static final int BUILD_CHUNK_SIZE = 1000;
+
+    private final DeviceStore deviceStore;
+    // Word -> ids of the devices having it in their name or brand
+    private final ConcurrentSkipListMap<String, Set<Long>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // One build at a time, concurrent first searches wait for it instead of building too
+    private final Lock buildLock = new ReentrantLock();
+    // Held while changing the index or the queue; a ReentrantLock rather than synchronized, so a
+    // virtual thread waiting for it is not pinned to its carrier
+    private final Lock lock = new ReentrantLock();
+    private volatile boolean built;
+    // Changes committed during the build, applied once it is done; null outside a build
+    private List<DeviceChangedEvent> pendingChanges;
+
+    public InMemoryDeviceTextIndex(DeviceStore deviceStore) {
+        this.deviceStore = deviceStore;
+    }
+
+    @Override
+    public List<Long> search(List<String> words, DeviceTextSearchMode mode, int offset, int limit) {
+        if (!built) {
+            build();
+        }
+        Set<Long> matches = null;
+        // Each word narrows the matches of the previous ones
+        for (String word : words) {
+            Set<Long> wordMatches = mode == DeviceTextSearchMode.PREFIX ? prefixMatches(word) : postings.getOrDefault(word, Set.of());
+            if (matches == null) {
+                matches = new HashSet<>(wordMatches);
+            } else {
+                matches.retainAll(wordMatches);
+            }
+            if (matches.isEmpty()) {
+                return List.of();
+            }
+        }
+        if (matches == null) {
+            return List.of();
+        }
+        String phrase = String.join(" ", words);
+        List<Scored> scored = new ArrayList<>(matches.size());
+        for (Long id : matches) {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                scored.add(new Scored(id, entry.score(words, phrase)));
+            }
+        }
+        return scored.stream()
+                .sorted(Comparator.comparingDouble(Scored::score).reversed().thenComparingLong(Scored::id))
+                .skip(offset)
+                .limit(limit)
+                .map(Scored::id)
+                .toList();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        lock.lock();
+        try {
+            if (pendingChanges != null) {
+                pendingChanges.add(event);
+            } else {
+                apply(event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Set<Long> prefixMatches(String prefix) {
+        NavigableMap<String, Set<Long>> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        Set<Long> ids = new HashSet<>();
+        range.values().forEach(ids::addAll);
+        return ids;
+    }
+
+    private void build() {
+        buildLock.lock();
+        try {
+            // Built by the search this one waited for
+            if (built) {
+                return;
+            }
+            doBuild();
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private void doBuild() {
+        lock.lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+        long start = System.nanoTime();
+        try {
+            long afterId = 0;
+            List<DeviceView> chunk;
+            do {
+                chunk = deviceStore.findViewsAfter(afterId, BUILD_CHUNK_SIZE, INDEXED_FIELDS);
+                for (DeviceView device : chunk) {
+                    put(device.id(), device.name(), device.brand());
+                    afterId = device.id();
+                }
+            } while (chunk.size() == BUILD_CHUNK_SIZE);
+        } finally {
+            // Also after a failed read, so the queued changes reach the partial index and later ones are not queued forever
+            lock.lock();
+            try {
+                pendingChanges.forEach(this::apply);
+                pendingChanges = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        // Only now, a search that does not wait for the build must not miss the queued changes
+        built = true;
+        log.info("Text index of {} devices built in {} ms", entries.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void apply(DeviceChangedEvent event) {
+        Device device = event.after();
+        if (device == null) {
+            remove(event.deviceId());
+        } else {
+            put(device.getId(), device.getName(), device.getBrand());
+        }
+    }
+
+    private void put(Long id, String name, String brand) {
+        lock.lock();
+        try {
+            remove(id);
+            Entry entry = new Entry(name.toLowerCase(Locale.ROOT), new HashSet<>(DeviceTextIndex.words(name + " " + brand)));
+            entries.put(id, entry);
+            for (String word : entry.words()) {
+                postings.computeIfAbsent(word, key -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Long id) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(id);
+            if (entry == null) {
+                return;
+            }
+            for (String word : entry.words()) {
+                postings.computeIfPresent(word, (key, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Entry(String name, Set<String> words) {
+
+        // One point per word matched whole, half for a prefix, one more when the name starts with the query
+        double score(List<String> queryWords, String phrase) {
+            double score = 0;
+            for (String word : queryWords) {
+                score += words.contains(word) ? 1 : 0.5;
+            }
+            return name.startsWith(phrase) ? score + 1 : score;
+        }
+    }
+
+    private record Scored(Long id, double score) {
+    }
+}
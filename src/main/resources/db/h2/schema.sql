@@ -1,10 +1,50 @@
 DROP TABLE devices IF EXISTS;
+DROP TABLE device_outbox IF EXISTS;
+DROP TABLE devices_archive IF EXISTS;
+DROP SEQUENCE devices_id_seq IF EXISTS;
+DROP SEQUENCE device_outbox_id_seq IF EXISTS;
 
+-- Same id strategy as the postgres schema, see the comment there
+CREATE SEQUENCE devices_id_seq START WITH 11 INCREMENT BY 50;
 
 CREATE TABLE devices (
-                         id          INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                         id          BIGINT DEFAULT NEXT VALUE FOR devices_id_seq PRIMARY KEY,
                          name        VARCHAR(100) NOT NULL,
                          brand       VARCHAR(100) NOT NULL,
                          state       VARCHAR(50) NOT NULL,
-                         creation_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                         creation_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                         version     BIGINT NOT NULL DEFAULT 0
+);
+
+-- Same indexes as the postgres schema; H2 has no partial indexes, so idx_devices_available is left out
+CREATE INDEX idx_devices_brand_state ON devices (brand, state, creation_time);
+CREATE INDEX idx_devices_state ON devices (state, creation_time);
+CREATE INDEX idx_devices_creation_time ON devices (creation_time);
+
+-- Device changes waiting to be published (see DeviceOutboxPublisher), written in the same
+-- transaction as the change. Ids are taken one by one so they follow the order of the changes
+CREATE SEQUENCE device_outbox_id_seq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE device_outbox (
+                         id                   BIGINT DEFAULT NEXT VALUE FOR device_outbox_id_seq PRIMARY KEY,
+                         device_id            BIGINT NOT NULL,
+                         event_type           VARCHAR(20) NOT NULL,
+                         previous_state       VARCHAR(50),
+                         state                VARCHAR(50),
+                         name                 VARCHAR(100) NOT NULL,
+                         brand                VARCHAR(100) NOT NULL,
+                         device_creation_time TIMESTAMP,
+                         device_version       BIGINT,
+                         created_at           TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- INACTIVE devices past devices.archive.retention, moved out of devices by DeviceArchiver
+CREATE TABLE devices_archive (
+                         id            BIGINT PRIMARY KEY,
+                         name          VARCHAR(100) NOT NULL,
+                         brand         VARCHAR(100) NOT NULL,
+                         state         VARCHAR(50) NOT NULL,
+                         creation_time TIMESTAMP NOT NULL,
+                         version       BIGINT NOT NULL,
+                         archived_at   TIMESTAMP WITH TIME ZONE NOT NULL
 );
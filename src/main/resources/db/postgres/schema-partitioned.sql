@@ -0,0 +1,68 @@
+-- Variant of schema.sql with devices range-partitioned by month on creation_time, used by the
+-- postgres-partitioned profile. Queries with createdAfter/createdBefore only read the months in
+-- the range (partition pruning); archived devices go to devices_archive, partitioned by year.
+-- The monthly and yearly partitions are created ahead by DevicePartitionMaintenance, at startup
+-- before requests are accepted; rows that fall outside of them (such as the seed rows) land in the
+-- default partitions, and are moved out when a partition for their range is created later.
+DROP TABLE IF EXISTS devices;
+DROP TABLE IF EXISTS device_outbox;
+DROP TABLE IF EXISTS devices_archive;
+DROP SEQUENCE IF EXISTS devices_id_seq;
+DROP SEQUENCE IF EXISTS device_outbox_id_seq;
+
+-- Same id strategy as schema.sql, see the comment there
+CREATE SEQUENCE devices_id_seq START WITH 11 INCREMENT BY 50;
+
+-- The partition key has to be part of the primary key, and cannot be null. Ids are still unique:
+-- they come from the sequence, and creation_time is never updated (see Device.creationTime).
+-- Lookups by id alone cannot be pruned and probe the id index of every partition
+CREATE TABLE devices (
+                         id            BIGINT DEFAULT nextval('devices_id_seq'),
+                         name          VARCHAR(100) NOT NULL,
+                         brand         VARCHAR(100) NOT NULL,
+                         state         VARCHAR(50) NOT NULL,
+                         creation_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                         version       BIGINT NOT NULL DEFAULT 0,
+                         PRIMARY KEY (id, creation_time)
+) PARTITION BY RANGE (creation_time);
+
+CREATE TABLE devices_default PARTITION OF devices DEFAULT;
+
+-- Declared on the parent, created on every partition, present and future
+CREATE INDEX idx_devices_brand_state ON devices (brand, state, creation_time);
+CREATE INDEX idx_devices_state ON devices (state, creation_time);
+CREATE INDEX idx_devices_creation_time ON devices (creation_time);
+CREATE INDEX idx_devices_available ON devices (brand, id) WHERE state = 'AVAILABLE';
+CREATE INDEX idx_devices_text ON devices USING gin (to_tsvector('simple', name || ' ' || brand));
+
+-- Same as schema.sql
+CREATE SEQUENCE device_outbox_id_seq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE device_outbox (
+                         id                   BIGINT DEFAULT nextval('device_outbox_id_seq') PRIMARY KEY,
+                         device_id            BIGINT NOT NULL,
+                         event_type           VARCHAR(20) NOT NULL,
+                         previous_state       VARCHAR(50),
+                         state                VARCHAR(50),
+                         name                 VARCHAR(100) NOT NULL,
+                         brand                VARCHAR(100) NOT NULL,
+                         device_creation_time TIMESTAMP,
+                         device_version       BIGINT,
+                         created_at           TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Cold storage: one partition per year of creation_time. Archived years are only written by the
+-- archiving job, so their partitions can be moved to a cheaper tablespace (ALTER TABLE ... SET TABLESPACE)
+-- or detached and dumped without touching the live devices
+CREATE TABLE devices_archive (
+                         id            BIGINT NOT NULL,
+                         name          VARCHAR(100) NOT NULL,
+                         brand         VARCHAR(100) NOT NULL,
+                         state         VARCHAR(50) NOT NULL,
+                         creation_time TIMESTAMP NOT NULL,
+                         version       BIGINT NOT NULL,
+                         archived_at   TIMESTAMP WITH TIME ZONE NOT NULL,
+                         PRIMARY KEY (id, creation_time)
+) PARTITION BY RANGE (creation_time);
+
+CREATE TABLE devices_archive_default PARTITION OF devices_archive DEFAULT;
@@ -1,9 +1,59 @@
 DROP TABLE IF EXISTS devices;
+DROP TABLE IF EXISTS device_outbox;
+DROP TABLE IF EXISTS devices_archive;
+DROP SEQUENCE IF EXISTS devices_id_seq;
+DROP SEQUENCE IF EXISTS device_outbox_id_seq;
+
+-- Hibernate takes ids in blocks of 50 (allocationSize on Device.id), the increment has to match.
+-- The seed rows in data.sql use ids 1 to 10, so the sequence starts right after them
+CREATE SEQUENCE devices_id_seq START WITH 11 INCREMENT BY 50;
 
 CREATE TABLE devices (
-                         id         INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                         id            BIGINT DEFAULT nextval('devices_id_seq') PRIMARY KEY,
+                         name          VARCHAR(100) NOT NULL,
+                         brand         VARCHAR(100) NOT NULL,
+                         state         VARCHAR(50) NOT NULL,
+                         creation_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                         version       BIGINT NOT NULL DEFAULT 0
+);
+
+-- Searches by brand, or by brand and state, use the composite index (brand leads, it is the selective column);
+-- creation_time comes last, so a createdAfter/createdBefore range is read from the index too
+CREATE INDEX idx_devices_brand_state ON devices (brand, state, creation_time);
+-- Searches by state only, and the archiving job looking for INACTIVE devices older than the retention
+CREATE INDEX idx_devices_state ON devices (state, creation_time);
+CREATE INDEX idx_devices_creation_time ON devices (creation_time);
+-- state has only three values, so a full state index is rarely chosen for the big ones;
+-- this partial index only holds the AVAILABLE devices, which is what clients look for
+CREATE INDEX idx_devices_available ON devices (brand, id) WHERE state = 'AVAILABLE';
+-- Text search (PostgresDeviceTextIndex): the words of name and brand, prefixes are matched with to_tsquery ':*'.
+-- The expression has to be the one of the query for the index to be used
+CREATE INDEX idx_devices_text ON devices USING gin (to_tsvector('simple', name || ' ' || brand));
+
+-- Device changes waiting to be published (see DeviceOutboxPublisher), written in the same
+-- transaction as the change. Ids are taken one by one so they follow the order of the changes
+CREATE SEQUENCE device_outbox_id_seq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE device_outbox (
+                         id                   BIGINT DEFAULT nextval('device_outbox_id_seq') PRIMARY KEY,
+                         device_id            BIGINT NOT NULL,
+                         event_type           VARCHAR(20) NOT NULL,
+                         previous_state       VARCHAR(50),
+                         state                VARCHAR(50),
+                         name                 VARCHAR(100) NOT NULL,
+                         brand                VARCHAR(100) NOT NULL,
+                         device_creation_time TIMESTAMP,
+                         device_version       BIGINT,
+                         created_at           TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- INACTIVE devices past devices.archive.retention, moved out of devices by DeviceArchiver
+CREATE TABLE devices_archive (
+                         id            BIGINT PRIMARY KEY,
                          name          VARCHAR(100) NOT NULL,
                          brand         VARCHAR(100) NOT NULL,
                          state         VARCHAR(50) NOT NULL,
-                         creation_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-);
\ No newline at end of file
+                         creation_time TIMESTAMP NOT NULL,
+                         version       BIGINT NOT NULL,
+                         archived_at   TIMESTAMP WITH TIME ZONE NOT NULL
+);
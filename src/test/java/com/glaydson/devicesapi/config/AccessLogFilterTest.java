@@ -0,0 +1,125 @@
+package com.glaydson.devicesapi.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogFilterTest {
+
+    private final Logger accessLogger = (Logger) LoggerFactory.getLogger("devices.access");
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final DevicesProperties.AccessLog properties = new DevicesProperties.AccessLog();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        accessLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        accessLogger.detachAppender(appender);
+    }
+
+    @Test
+    void testWritesOneJsonLinePerRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/api/v1/devices/7");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerMethod handler = new HandlerMethod(this, AccessLogFilterTest.class.getDeclaredMethod("updateDevice"));
+        FilterChain chain = (req, res) -> {
+            // What the dispatcher servlet leaves on the request
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/v1/devices/{id}");
+            req.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("id", "7"));
+            req.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, handler);
+            ((MockHttpServletResponse) res).setStatus(409);
+        };
+
+        new AccessLogFilter(properties, () -> 0.99).doFilter(request, response, chain);
+
+        JsonNode line = objectMapper.readTree(appender.list.getFirst().getFormattedMessage());
+        assertEquals("PUT", line.get("method").asText());
+        assertEquals("/api/v1/devices/{id}", line.get("path").asText());
+        assertEquals("updateDevice", line.get("operation").asText());
+        assertEquals("7", line.get("id").asText());
+        assertEquals(409, line.get("status").asInt());
+        assertTrue(line.get("latencyMs").isNumber());
+        assertFalse(line.has("sampleRate"));
+    }
+
+    @Test
+    void testSuccessfulReadsAreSampled() throws Exception {
+        FilterChain ok = (req, res) -> { };
+        FilterChain notFound = (req, res) -> ((MockHttpServletResponse) res).setStatus(404);
+
+        new AccessLogFilter(properties, () -> 0.5).doFilter(new MockHttpServletRequest("GET", "/api/v1/devices/1"),
+                new MockHttpServletResponse(), ok);
+        assertTrue(appender.list.isEmpty());
+
+        new AccessLogFilter(properties, () -> 0.05).doFilter(new MockHttpServletRequest("GET", "/api/v1/devices/1"),
+                new MockHttpServletResponse(), ok);
+        assertEquals(0.1, objectMapper.readTree(appender.list.getLast().getFormattedMessage()).get("sampleRate").asDouble());
+
+        // Errors and writes are never sampled out
+        new AccessLogFilter(properties, () -> 0.5).doFilter(new MockHttpServletRequest("GET", "/api/v1/devices/1"),
+                new MockHttpServletResponse(), notFound);
+        new AccessLogFilter(properties, () -> 0.5).doFilter(new MockHttpServletRequest("POST", "/api/v1/devices"),
+                new MockHttpServletResponse(), ok);
+        assertEquals(3, appender.list.size());
+    }
+
+    @Test
+    void testPostSearchesAreSampledLikeReads() throws Exception {
+        FilterChain ok = (req, res) -> { };
+
+        new AccessLogFilter(properties, () -> 0.5).doFilter(new MockHttpServletRequest("POST", "/api/v1/devices/search"),
+                new MockHttpServletResponse(), ok);
+        new AccessLogFilter(properties, () -> 0.5).doFilter(new MockHttpServletRequest("POST", "/api/v1/devices/search/batch"),
+                new MockHttpServletResponse(), ok);
+        assertTrue(appender.list.isEmpty());
+    }
+
+    @Test
+    void testSlowReadsAreAlwaysLogged() throws Exception {
+        properties.setSlowThreshold(Duration.ZERO);
+
+        new AccessLogFilter(properties, () -> 0.5).doFilter(new MockHttpServletRequest("GET", "/api/v1/devices"),
+                new MockHttpServletResponse(), (req, res) -> { });
+
+        assertEquals(1, appender.list.size());
+    }
+
+    @Test
+    void testStreamsAreLoggedWhenTheyEnd() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/devices/stream");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new AccessLogFilter(properties, () -> 0).doFilter(request, response, (req, res) -> req.startAsync());
+        assertTrue(appender.list.isEmpty());
+
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+        assertEquals(1, appender.list.size());
+    }
+
+    @SuppressWarnings("unused")
+    private void updateDevice() {
+    }
+}
@@ -0,0 +1,32 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import com.glaydson.devicesapi.dto.DeviceView;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DevicesRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void testRegistersWhatTheNativeImageNeeds() {
+        new DevicesRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/h2/schema.sql").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/postgres/schema-partitioned.sql").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("messages/messages.properties").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("linux/amd64/libzstd-jni-1.5.6-9.so").test(hints));
+        // Nested types are registered with the change event
+        assertTrue(RuntimeHintsPredicates.reflection().onType(DeviceChange.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(DeviceView.class).test(hints));
+        assertTrue(hints.jni().getTypeHint(ZstdOutputStreamNoFinalizer.class).getMemberCategories()
+                .contains(MemberCategory.DECLARED_FIELDS));
+    }
+}
@@ -0,0 +1,82 @@
+package com.glaydson.devicesapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryTokenBucketStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testBurstThenRefillRate() {
+        InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(limits(10, 3), now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Duration.ZERO, store.tryConsume("a"));
+        }
+        // Empty, one token every 100ms
+        assertEquals(Duration.ofMillis(100), store.tryConsume("a"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(Duration.ofMillis(60), store.tryConsume("a"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        assertEquals(Duration.ZERO, store.tryConsume("a"));
+        assertFalse(store.tryConsume("a").isZero());
+    }
+
+    @Test
+    void testRefillStopsAtTheBurst() {
+        InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(limits(10, 2), now::get);
+        store.tryConsume("a");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        assertEquals(Duration.ZERO, store.tryConsume("a"));
+        assertEquals(Duration.ZERO, store.tryConsume("a"));
+        assertFalse(store.tryConsume("a").isZero());
+    }
+
+    @Test
+    void testClientsHaveTheirOwnBucket() {
+        InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(limits(1, 1), now::get);
+
+        assertEquals(Duration.ZERO, store.tryConsume("a"));
+        assertFalse(store.tryConsume("a").isZero());
+        assertEquals(Duration.ZERO, store.tryConsume("b"));
+    }
+
+    @Test
+    void testConcurrentRequestsNeverTakeMoreThanTheBurst() throws Exception {
+        // Clock stopped, so nothing is refilled while the threads race
+        InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(limits(1, 500), now::get);
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            var results = IntStream.range(0, 8)
+                    .mapToObj(i -> executor.submit(() -> IntStream.range(0, 200)
+                            .filter(j -> store.tryConsume("a").isZero())
+                            .count()))
+                    .toList();
+            long taken = 0;
+            for (Future<Long> result : results) {
+                taken += result.get();
+            }
+            assertEquals(500, taken);
+        }
+    }
+
+    private static DevicesProperties.Limits limits(double ratePerSecond, int burst) {
+        DevicesProperties.Limits limits = new DevicesProperties.Limits();
+        limits.setRatePerSecond(ratePerSecond);
+        limits.setBurst(burst);
+        return limits;
+    }
+}
@@ -0,0 +1,81 @@
+package com.glaydson.devicesapi.config;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadYourWritesFilterTest {
+
+    private final ReadYourWritesFilter filter = new ReadYourWritesFilter(replicaProperties());
+
+    @Test
+    void testWriteSetsTheStickyCookie() throws Exception {
+        long before = System.currentTimeMillis();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("PUT", "/api/v1/devices/1"), response, (req, res) -> { });
+
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE);
+        assertNotNull(cookie);
+        assertTrue(Long.parseLong(cookie.getValue()) >= before + 5000);
+        assertEquals(5, cookie.getMaxAge());
+    }
+
+    @Test
+    void testPostSearchesSetNoCookie() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/v1/devices/search"), response, (req, res) -> { });
+        assertNull(response.getCookie(ReadYourWritesFilter.COOKIE));
+
+        response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/v1/devices/search/batch"), response, (req, res) -> { });
+        assertNull(response.getCookie(ReadYourWritesFilter.COOKIE));
+
+        // After a write they read from the primary like any other read
+        MockHttpServletRequest afterWrite = new MockHttpServletRequest("POST", "/api/v1/devices/search");
+        afterWrite.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(System.currentTimeMillis() + 5000)));
+        assertTrue(primaryRequiredDuring(afterWrite));
+    }
+
+    @Test
+    void testReadAfterWriteRequiresThePrimary() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/devices");
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(System.currentTimeMillis() + 5000)));
+
+        assertTrue(primaryRequiredDuring(request));
+        // Only for the request
+        assertFalse(ReplicaRouting.isPrimaryRequired());
+    }
+
+    @Test
+    void testOtherReadsMayUseTheReplica() throws Exception {
+        assertFalse(primaryRequiredDuring(new MockHttpServletRequest("GET", "/api/v1/devices")));
+
+        MockHttpServletRequest expired = new MockHttpServletRequest("GET", "/api/v1/devices");
+        expired.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(System.currentTimeMillis() - 1)));
+        assertFalse(primaryRequiredDuring(expired));
+
+        MockHttpServletRequest malformed = new MockHttpServletRequest("GET", "/api/v1/devices");
+        malformed.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, "soon"));
+        assertFalse(primaryRequiredDuring(malformed));
+    }
+
+    private boolean primaryRequiredDuring(MockHttpServletRequest request) throws Exception {
+        AtomicBoolean primaryRequired = new AtomicBoolean();
+        filter.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> primaryRequired.set(ReplicaRouting.isPrimaryRequired()));
+        return primaryRequired.get();
+    }
+
+    private static DevicesProperties.Replica replicaProperties() {
+        DevicesProperties.Replica properties = new DevicesProperties.Replica();
+        properties.setStickyWindow(Duration.ofSeconds(5));
+        return properties;
+    }
+}
@@ -0,0 +1,114 @@
+package com.glaydson.devicesapi.config;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.service.DeviceService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two H2 databases stand in for the primary and the replica; they do not replicate, so where a
+// read went shows in what it returns. The replica's copy of device 1 is renamed before each test
+@SpringBootTest(properties = {
+        "devices.replica.enabled=true",
+        "devices.replica.initialize=true",
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "devices.replica.datasource.jdbc-url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+        "devices.replica.datasource.username=sa",
+        "devices.replica.health-check-interval=PT1H"})
+class ReplicaRoutingTest {
+
+    private static final DeviceSearchCriteria BRAND_A = new DeviceSearchCriteria("BrandA", null);
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+
+    @Autowired
+    private ReplicaHealth replicaHealth;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        new JdbcTemplate(replicaDataSource).update("UPDATE devices SET name = 'OnReplica' WHERE id = 1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicaHealth.check();
+    }
+
+    @Test
+    void testReadOnlyTransactionsGoToTheReplica() {
+        assertEquals("OnReplica", searchBrandA().name());
+        assertEquals("OnReplica", deviceService.getDevicesPage(null, 1, DeviceField.all()).getDevices().getFirst().name());
+    }
+
+    @Test
+    void testWritesGoToThePrimary() {
+        deviceService.updateDevice(4L, new DeviceRequest("Written", "BrandD", Device.State.AVAILABLE), null);
+
+        JdbcTemplate primary = new JdbcTemplate(primaryDataSource);
+        JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+        assertEquals("Written", primary.queryForObject("SELECT name FROM devices WHERE id = 4", String.class));
+        assertEquals("Device4", replica.queryForObject("SELECT name FROM devices WHERE id = 4", String.class));
+    }
+
+    @Test
+    void testPrimaryRequiredReadsGoToThePrimary() {
+        assertEquals("Device1", ReplicaRouting.onPrimary(this::searchBrandA).name());
+        // Cache loads are never read from the replica
+        assertEquals("Device1", deviceService.getDeviceById(1L).getName());
+    }
+
+    @Test
+    void testReadsFallBackToThePrimaryWhileTheReplicaIsDown() {
+        replicaHealth.markDown(new IllegalStateException("test"));
+        assertEquals("Device1", searchBrandA().name());
+        assertEquals(0.0, meterRegistry.get(ReplicaConfig.REPLICA_UP_METRIC).gauge().value());
+
+        replicaHealth.check();
+        assertEquals("OnReplica", searchBrandA().name());
+        assertEquals(1.0, meterRegistry.get(ReplicaConfig.REPLICA_UP_METRIC).gauge().value());
+    }
+
+    @Test
+    @DirtiesContext
+    void testFailingReplicaConnectionFallsBackToThePrimary() {
+        replicaDataSource.close();
+
+        assertEquals("Device1", searchBrandA().name());
+        assertFalse(replicaHealth.isUp());
+        assertEquals(1.0, meterRegistry.get(ReadWriteRoutingDataSource.CONNECTIONS_METRIC)
+                .tag("target", "fallback").counter().count());
+    }
+
+    private DeviceView searchBrandA() {
+        List<DeviceView> devices = deviceService.getDevicesByCriteria(BRAND_A, DeviceField.all());
+        assertEquals(1, devices.size());
+        return devices.getFirst();
+    }
+}
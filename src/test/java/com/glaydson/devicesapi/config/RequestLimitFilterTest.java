@@ -0,0 +1,165 @@
+package com.glaydson.devicesapi.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DevicesProperties.Limits properties = new DevicesProperties.Limits();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final FilterChain chain = (req, res) -> calls.incrementAndGet();
+
+    @Test
+    void testEndpointClasses() {
+        assertEquals(RequestLimitFilter.EndpointClass.LOOKUP, RequestLimitFilter.classify(request("GET", "/api/v1/devices/7")));
+        assertEquals(RequestLimitFilter.EndpointClass.LOOKUP, RequestLimitFilter.classify(request("GET", "/api/v1/devices/stats")));
+        assertEquals(RequestLimitFilter.EndpointClass.QUERY, RequestLimitFilter.classify(request("GET", "/api/v1/devices")));
+        assertEquals(RequestLimitFilter.EndpointClass.QUERY, RequestLimitFilter.classify(request("GET", "/api/v1/devices/search")));
+        assertEquals(RequestLimitFilter.EndpointClass.QUERY, RequestLimitFilter.classify(request("GET", "/api/v1/devices/stream")));
+        assertEquals(RequestLimitFilter.EndpointClass.QUERY, RequestLimitFilter.classify(request("POST", "/api/v1/devices/search")));
+        assertEquals(RequestLimitFilter.EndpointClass.QUERY, RequestLimitFilter.classify(request("POST", "/api/v1/devices/search/batch")));
+        assertEquals(RequestLimitFilter.EndpointClass.WRITE, RequestLimitFilter.classify(request("PUT", "/api/v1/devices/7")));
+        assertEquals(RequestLimitFilter.EndpointClass.WRITE, RequestLimitFilter.classify(request("POST", "/api/v1/devices/bulk")));
+        assertNull(RequestLimitFilter.classify(request("GET", "/api/v1/devices/changes")));
+    }
+
+    @Test
+    void testRateLimitedClientGets429() throws Exception {
+        RequestLimitFilter filter = filter(client -> "a".equals(client) ? Duration.ofMillis(1500) : Duration.ZERO,
+                new ConnectionPoolPressure(properties, meterRegistry));
+        MockHttpServletRequest limited = request("GET", "/api/v1/devices/1");
+        limited.setRemoteAddr("a");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(limited, response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(0, calls.get());
+        assertEquals(1.0, meterRegistry.get(RequestLimitFilter.REJECTED_METRIC).tag("reason", "rate").counter().count());
+
+        MockHttpServletRequest other = request("GET", "/api/v1/devices/1");
+        other.setRemoteAddr("b");
+        filter.doFilter(other, new MockHttpServletResponse(), chain);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testClientHeaderNamesTheClient() throws Exception {
+        properties.setClientHeader("X-Client-Id");
+        RequestLimitFilter filter = filter(client -> "gateway-user".equals(client) ? Duration.ofSeconds(1) : Duration.ZERO,
+                new ConnectionPoolPressure(properties, meterRegistry));
+        MockHttpServletRequest request = request("GET", "/api/v1/devices/1");
+        request.addHeader("X-Client-Id", "gateway-user");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(429, response.getStatus());
+    }
+
+    @Test
+    void testConcurrencyLimitPerEndpointClass() throws Exception {
+        properties.setQueryConcurrency(1);
+        RequestLimitFilter filter = filter(client -> Duration.ZERO, new ConnectionPoolPressure(properties, meterRegistry));
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        MockHttpServletResponse lookup = new MockHttpServletResponse();
+
+        // The second query arrives while the first one runs
+        filter.doFilter(request("GET", "/api/v1/devices"), new MockHttpServletResponse(), (req, res) -> {
+            filter.doFilter(request("GET", "/api/v1/devices/search"), rejected, chain);
+            filter.doFilter(request("GET", "/api/v1/devices/1"), lookup, chain);
+        });
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(200, lookup.getStatus());
+        // Released once the first query is done
+        filter.doFilter(request("GET", "/api/v1/devices"), new MockHttpServletResponse(), chain);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testStreamedResponseHoldsItsPermitUntilComplete() throws Exception {
+        properties.setQueryConcurrency(1);
+        RequestLimitFilter filter = filter(client -> Duration.ZERO, new ConnectionPoolPressure(properties, meterRegistry));
+        MockHttpServletRequest stream = request("GET", "/api/v1/devices/stream");
+        stream.setAsyncSupported(true);
+
+        filter.doFilter(stream, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        MockHttpServletResponse whileStreaming = new MockHttpServletResponse();
+        filter.doFilter(request("GET", "/api/v1/devices"), whileStreaming, chain);
+        assertEquals(503, whileStreaming.getStatus());
+
+        ((MockAsyncContext) stream.getAsyncContext()).complete();
+        MockHttpServletResponse afterStreaming = new MockHttpServletResponse();
+        filter.doFilter(request("GET", "/api/v1/devices"), afterStreaming, chain);
+        assertEquals(200, afterStreaming.getStatus());
+    }
+
+    @Test
+    void testQueriesAreShedWhileThePoolWaitIsHigh() throws Exception {
+        ConnectionPoolPressure pressure = new ConnectionPoolPressure(properties, meterRegistry);
+        Timer acquire = meterRegistry.timer(ConnectionPoolPressure.ACQUIRE_METRIC, "pool", "primary");
+        acquire.record(1, TimeUnit.MILLISECONDS);
+        pressure.check();
+        // 10 connections taken since the last check, 300ms each: three times max-pool-wait
+        for (int i = 0; i < 10; i++) {
+            acquire.record(300, TimeUnit.MILLISECONDS);
+        }
+        pressure.check();
+        assertEquals(1.0, pressure.shedRatio());
+        RequestLimitFilter filter = filter(client -> Duration.ZERO, pressure);
+
+        MockHttpServletResponse query = new MockHttpServletResponse();
+        filter.doFilter(request("GET", "/api/v1/devices"), query, chain);
+        MockHttpServletResponse lookup = new MockHttpServletResponse();
+        filter.doFilter(request("GET", "/api/v1/devices/1"), lookup, chain);
+
+        assertEquals(503, query.getStatus());
+        assertEquals(200, lookup.getStatus());
+        assertEquals(1.0, meterRegistry.get(RequestLimitFilter.REJECTED_METRIC).tag("reason", "shed").counter().count());
+    }
+
+    @Test
+    void testShedRatioFollowsThePoolWait() {
+        ConnectionPoolPressure pressure = new ConnectionPoolPressure(properties, meterRegistry);
+        Timer acquire = meterRegistry.timer(ConnectionPoolPressure.ACQUIRE_METRIC, "pool", "primary");
+        pressure.check();
+
+        acquire.record(150, TimeUnit.MILLISECONDS);
+        pressure.check();
+        assertEquals(0.5, pressure.shedRatio(), 0.001);
+
+        acquire.record(20, TimeUnit.MILLISECONDS);
+        pressure.check();
+        assertEquals(0.0, pressure.shedRatio());
+
+        // Nothing acquired, but requests are waiting: the pool is exhausted
+        Gauge.builder(ConnectionPoolPressure.PENDING_METRIC, () -> 3).register(meterRegistry);
+        pressure.check();
+        assertEquals(1.0, pressure.shedRatio());
+    }
+
+    private RequestLimitFilter filter(TokenBucketStore buckets, ConnectionPoolPressure pressure) {
+        return new RequestLimitFilter(properties, buckets, pressure, meterRegistry);
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        return new MockHttpServletRequest(method, path);
+    }
+}
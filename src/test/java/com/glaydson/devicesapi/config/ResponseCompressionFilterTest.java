@@ -0,0 +1,162 @@
+package com.glaydson.devicesapi.config;
+
+import com.github.luben.zstd.ZstdInputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionFilterTest {
+
+    private static final String LARGE_BODY = "[" + "{\"name\":\"Device\",\"brand\":\"Brand\"},".repeat(200) + "{}]";
+
+    private final ResponseCompressionFilter filter = new ResponseCompressionFilter(new DevicesProperties.Compression());
+
+    @Test
+    void testLargeJsonIsEncodedWithZstd() throws Exception {
+        MockHttpServletResponse response = filter("zstd, gzip", "application/json", LARGE_BODY);
+
+        assertEquals("zstd", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertTrue(response.getContentAsByteArray().length < LARGE_BODY.length());
+        assertEquals(LARGE_BODY, decode(new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    void testGzipIsUsedWhenPreferred() throws Exception {
+        MockHttpServletResponse response = filter("gzip;q=1, zstd;q=0.5", "application/json", LARGE_BODY);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(LARGE_BODY, decode(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    void testSmallResponseIsSentAsIs() throws Exception {
+        MockHttpServletResponse response = filter("zstd", "application/json", "{\"id\":1}");
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(8, response.getContentLength());
+        assertEquals("{\"id\":1}", response.getContentAsString());
+    }
+
+    @Test
+    void testUnlistedMediaTypeIsSentAsIs() throws Exception {
+        MockHttpServletResponse response = filter("zstd", "image/png", LARGE_BODY);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(LARGE_BODY, response.getContentAsString());
+    }
+
+    @Test
+    void testRefusedEncodingsAreNotUsed() throws Exception {
+        MockHttpServletResponse response = filter("zstd;q=0, gzip;q=0", "application/json", LARGE_BODY);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Vary"));
+        assertEquals(LARGE_BODY, response.getContentAsString());
+    }
+
+    @Test
+    void testNonBlockingResponseIsSentAsIsThroughTheResponseStream() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/devices");
+        request.addHeader("Accept-Encoding", "zstd");
+        request.setAsyncSupported(true);
+        NonBlockingResponse response = new NonBlockingResponse();
+        WriteListener listener = new WriteListener() {
+            @Override
+            public void onWritePossible() {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        };
+        FilterChain chain = (req, res) -> {
+            req.startAsync();
+            res.setContentType("application/json");
+            ServletOutputStream out = res.getOutputStream();
+            out.setWriteListener(listener);
+            assertFalse(out.isReady());
+            response.ready = true;
+            assertTrue(out.isReady());
+            out.write(LARGE_BODY.getBytes(StandardCharsets.UTF_8));
+        };
+
+        filter.doFilter(request, response, chain);
+
+        assertSame(listener, response.listener);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(LARGE_BODY, response.getContentAsString());
+    }
+
+    @Test
+    void testPreferredEncoding() {
+        assertEquals("zstd", ResponseCompressionFilter.preferredEncoding("gzip, deflate, br, zstd"));
+        assertEquals("gzip", ResponseCompressionFilter.preferredEncoding("gzip, deflate, br"));
+        assertEquals("gzip", ResponseCompressionFilter.preferredEncoding("zstd;q=0.2, gzip;q=0.8"));
+        assertNull(ResponseCompressionFilter.preferredEncoding("br"));
+        assertNull(ResponseCompressionFilter.preferredEncoding(null));
+    }
+
+    private MockHttpServletResponse filter(String acceptEncoding, String contentType, String body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/devices");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            res.setContentType(contentType);
+            res.setContentLength(bytes.length);
+            res.getOutputStream().write(bytes);
+        };
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static String decode(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // The mock's own stream does not take a WriteListener
+    private static class NonBlockingResponse extends MockHttpServletResponse {
+
+        private WriteListener listener;
+        private boolean ready;
+        private ServletOutputStream outputStream;
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return ready;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        listener = writeListener;
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
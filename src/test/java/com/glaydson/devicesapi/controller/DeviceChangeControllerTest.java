@@ -0,0 +1,70 @@
+package com.glaydson.devicesapi.controller;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.exception.GlobalExceptionHandler;
+import com.glaydson.devicesapi.service.DeviceChangeFeed;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class DeviceChangeControllerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DeviceChangeFeed deviceChangeFeed;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        DevicesProperties properties = new DevicesProperties();
+        properties.getChanges().setHeartbeatInterval(Duration.ofMillis(10));
+        deviceChangeFeed = new DeviceChangeFeed(properties, meterRegistry);
+        mockMvc = MockMvcBuilders.standaloneSetup(new DeviceChangeController(deviceChangeFeed, properties))
+                .setControllerAdvice(new GlobalExceptionHandler(meterRegistry))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deviceChangeFeed.close();
+    }
+
+    @Test
+    void testTimeoutEndsTheStreamNormally() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/devices/changes"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // Like a stream that has been open for a while, the heartbeats have committed the response
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!result.getResponse().getContentAsString().contains(":heartbeat") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // What the container does once devices.changes.timeout has passed
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(":heartbeat")));
+        assertNull(meterRegistry.find(GlobalExceptionHandler.ERRORS_METRIC).counter());
+    }
+}
@@ -1,30 +1,67 @@
 // src/test/java/com/glaydson/devicesapi/controller/DeviceControllerTest.java
 package com.glaydson.devicesapi.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.BulkItemResult;
+import com.glaydson.devicesapi.dto.BulkOperationResult;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DevicePage;
 import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.dto.DeviceSearchBatchResult;
 import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceSearchResults;
+import com.glaydson.devicesapi.dto.DeviceStats;
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+import com.glaydson.devicesapi.dto.DeviceView;
 import com.glaydson.devicesapi.exception.DeviceInUseException;
+import com.glaydson.devicesapi.exception.DeviceUnavailableException;
 import com.glaydson.devicesapi.exception.GlobalExceptionHandler;
+import com.glaydson.devicesapi.exception.InvalidCursorException;
+import com.glaydson.devicesapi.exception.PreconditionFailedException;
 import com.glaydson.devicesapi.exception.ResourceNotFoundException;
 import com.glaydson.devicesapi.model.Device;
 import com.glaydson.devicesapi.repository.DeviceRepository;
+import com.glaydson.devicesapi.service.DeviceBulkService;
+import com.glaydson.devicesapi.service.DeviceCollectionVersion;
+import com.glaydson.devicesapi.service.DeviceQueryCache;
 import com.glaydson.devicesapi.service.DeviceService;
+import com.glaydson.devicesapi.service.DeviceStatsService;
+import com.glaydson.devicesapi.service.DeviceTextSearchService;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.json.JsonCompareMode;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -32,25 +69,49 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 class DeviceControllerTest {
 
     public static final String BASE_PATH = "/api/v1/devices";
+    private static final Instant LAST_WRITE = Instant.parse("2024-01-01T10:00:00Z");
+    // Of the watermark returned by the collectionVersion mock
+    private static final String COLLECTION_ETAG = "W/\"1-7\"";
     private MockMvc mockMvc;
 
     @Mock
     private DeviceService deviceService;
 
+    @Mock
+    private DeviceBulkService deviceBulkService;
+
+    @Mock
+    private DeviceStatsService deviceStatsService;
+
+    @Mock
+    private DeviceTextSearchService deviceTextSearchService;
+
     @Mock
     private DeviceRepository deviceRepository;
 
-    @InjectMocks
+    @Mock
+    private DeviceCollectionVersion collectionVersion;
+
     private DeviceController deviceController;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private DeviceRequest device1;
     private DeviceRequest device2;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        DevicesProperties properties = new DevicesProperties();
+        when(collectionVersion.current()).thenReturn(new DeviceCollectionVersion.Watermark(1L, 7L, LAST_WRITE));
+        deviceController = new DeviceController(deviceService, deviceBulkService, deviceStatsService, deviceTextSearchService,
+                new DeviceQueryCache(deviceService, properties), collectionVersion, properties,
+                Jackson2ObjectMapperBuilder.json().build(), observationRegistry);
         mockMvc = MockMvcBuilders.standaloneSetup(deviceController)
-                .setControllerAdvice(new GlobalExceptionHandler())
+                .setControllerAdvice(new GlobalExceptionHandler(meterRegistry))
                 .build();
         device1 = new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE);
         device2 = new DeviceRequest("Device2", "Brand2", Device.State.IN_USE);
@@ -82,6 +143,121 @@ class DeviceControllerTest {
                 .andExpect(jsonPath("$.brand").value("Brand1"));
     }
 
+    @Test
+    void testGetAllDevicesAsCbor() throws Exception {
+        when(deviceService.getDevicesPage(isNull(), isNull(), eq(DeviceField.all()))).thenReturn(new DevicePage(
+                List.of(new DeviceView(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now(), 0L)), null));
+
+        MvcResult result = mockMvc.perform(get(BASE_PATH).accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn();
+
+        JsonNode page = new CBORMapper().readTree(result.getResponse().getContentAsByteArray());
+        assertEquals("Device1", page.get("devices").get(0).get("name").asText());
+        assertEquals("AVAILABLE", page.get("devices").get(0).get("state").asText());
+    }
+
+    @Test
+    void testCheckOutDeviceConflict() throws Exception {
+        when(deviceService.checkOutDevice(2L)).thenThrow(new DeviceUnavailableException("Device 2 is IN_USE, not AVAILABLE"));
+
+        mockMvc.perform(post(BASE_PATH + "/2/checkout"))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Device 2 is IN_USE, not AVAILABLE"));
+    }
+
+    @Test
+    void testCheckOutAnyDevice() throws Exception {
+        Device device = new Device(4L, "Device4", "Brand1", Device.State.IN_USE, LocalDateTime.now());
+        device.setVersion(1L);
+        when(deviceService.checkOutAnyDevice("Brand1")).thenReturn(device);
+
+        mockMvc.perform(post(BASE_PATH + "/checkout").param("brand", "Brand1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(jsonPath("$.id").value(4))
+                .andExpect(jsonPath("$.state").value("IN_USE"));
+    }
+
+    @Test
+    void testGetDeviceByIdReturnsETag() throws Exception {
+        Device device = new Device(1L, device1.getName(), device1.getBrand(), device1.getState(), LocalDateTime.now());
+        device.setVersion(4L);
+        when(deviceService.getDeviceById(1L)).thenReturn(device);
+
+        mockMvc.perform(get(BASE_PATH + "/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    @Test
+    void testGetDeviceByIdNotModified() throws Exception {
+        Device device = new Device(1L, device1.getName(), device1.getBrand(), device1.getState(), LocalDateTime.now());
+        device.setVersion(4L);
+        when(deviceService.getDeviceById(1L)).thenReturn(device);
+
+        mockMvc.perform(get(BASE_PATH + "/1").header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get(BASE_PATH + "/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(4));
+    }
+
+    @Test
+    void testUpdateDeviceWithIfMatch() throws Exception {
+        Device updated = new Device(1L, "UpdatedName", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+        updated.setVersion(5L);
+        when(deviceService.updateDevice(eq(1L), any(DeviceRequest.class), eq(4L))).thenReturn(updated);
+
+        mockMvc.perform(put(BASE_PATH + "/1")
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UpdatedName\",\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+    }
+
+    @Test
+    void testUpdateDeviceWithStaleIfMatch() throws Exception {
+        when(deviceService.updateDevice(eq(1L), any(DeviceRequest.class), eq(3L)))
+                .thenThrow(new PreconditionFailedException("Device 1 is at version 4, not 3"));
+
+        mockMvc.perform(put(BASE_PATH + "/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UpdatedName\",\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"}"))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put(BASE_PATH + "/1")
+                        .header(HttpHeaders.IF_MATCH, "W/\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UpdatedName\",\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void testUpdateDeviceConcurrentModification() throws Exception {
+        when(deviceService.updateDevice(eq(1L), any(DeviceRequest.class), isNull()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Device.class, 1L));
+
+        mockMvc.perform(put(BASE_PATH + "/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"UpdatedName\",\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void testQueryTimeoutIsServiceUnavailable() throws Exception {
+        when(deviceService.getDevicesPage(isNull(), isNull(), any())).thenThrow(new QueryTimeoutException("cancelled"));
+
+        mockMvc.perform(get(BASE_PATH))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
     @Test
     void testGetDeviceByIdNotFound() throws Exception {
 
@@ -93,29 +269,254 @@ class DeviceControllerTest {
                 .andExpect(result -> assertInstanceOf(ResourceNotFoundException.class, result.getResolvedException()));
     }
 
+    @Test
+    void testErrorsAreCountedAndTimed() throws Exception {
+        when(deviceService.getDeviceById(anyLong())).thenThrow(new ResourceNotFoundException("Device not found for this id :: 1"));
+
+        mockMvc.perform(get(BASE_PATH + "/1"))
+                .andExpect(status().isNotFound());
+
+        assertEquals(1, meterRegistry.get(GlobalExceptionHandler.ERRORS_METRIC)
+                .tag("exception", "ResourceNotFoundException").tag("status", "404").counter().count());
+        assertEquals(1, meterRegistry.get(DeviceController.OPERATION_METRIC)
+                .tag("operation", "getById").tag("error", "ResourceNotFoundException").timer().count());
+    }
+
     @Test
     void testGetAllDevices() throws Exception {
         Device device = new Device(1L, device1.getName(), device1.getBrand(), device1.getState(), LocalDateTime.now());
-        when(deviceService.getAllDevices()).thenReturn(List.of(device));
+        when(deviceService.getDevicesPage(isNull(), isNull(), eq(DeviceField.all())))
+                .thenReturn(new DevicePage(List.of(DeviceView.of(device)), null));
 
         mockMvc.perform(get(BASE_PATH)
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].name").value("Device1"))
-                .andExpect(jsonPath("$[0].brand").value("Brand1"));
+                .andExpect(jsonPath("$.devices[0].name").value("Device1"))
+                .andExpect(jsonPath("$.devices[0].brand").value("Brand1"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void testGetAllDevicesCarriesTheCollectionVersion() throws Exception {
+        when(deviceService.getDevicesPage(isNull(), isNull(), eq(DeviceField.all()))).thenReturn(new DevicePage(List.of(), null));
+
+        mockMvc.perform(get(BASE_PATH))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, COLLECTION_ETAG))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, LAST_WRITE.toEpochMilli()))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=0, must-revalidate"));
+    }
+
+    @Test
+    void testGetAllDevicesNotModifiedWithoutQuery() throws Exception {
+        mockMvc.perform(get(BASE_PATH).header(HttpHeaders.IF_NONE_MATCH, "\"0-1\", " + COLLECTION_ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, COLLECTION_ETAG))
+                .andExpect(content().string(""));
+        mockMvc.perform(get(BASE_PATH).header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 01 Jan 2024 10:00:00 GMT"))
+                .andExpect(status().isNotModified());
+        verify(deviceService, never()).getDevicesPage(any(), any(), any());
+
+        // Any write moves the version
+        when(collectionVersion.current()).thenReturn(new DeviceCollectionVersion.Watermark(1L, 8L, LAST_WRITE.plusSeconds(5)));
+        when(deviceService.getDevicesPage(isNull(), isNull(), eq(DeviceField.all()))).thenReturn(new DevicePage(List.of(), null));
+        mockMvc.perform(get(BASE_PATH).header(HttpHeaders.IF_NONE_MATCH, COLLECTION_ETAG))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"1-8\""));
+        mockMvc.perform(get(BASE_PATH).header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 01 Jan 2024 10:00:00 GMT"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testSearchNotModifiedWithoutQuery() throws Exception {
+        mockMvc.perform(get(BASE_PATH + "/search").param("brand", "Brand1").header(HttpHeaders.IF_NONE_MATCH, COLLECTION_ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, COLLECTION_ETAG));
+        verify(deviceService, never()).getDevicesByCriteria(any(), any());
+    }
+
+    @Test
+    void testGetDevicesByIds() throws Exception {
+        when(deviceService.getDevicesByIds(eq(List.of(2L, 1L)), eq(EnumSet.of(DeviceField.ID, DeviceField.NAME))))
+                .thenReturn(List.of(new DeviceView(2L, "Device2", null, null, null, null),
+                        new DeviceView(1L, "Device1", null, null, null, null)));
+
+        mockMvc.perform(get(BASE_PATH).param("ids", "2,1").param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.devices[0].id").value(2))
+                .andExpect(jsonPath("$.devices[1].name").value("Device1"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        verify(deviceService, never()).getDevicesPage(any(), any(), any());
+
+        mockMvc.perform(get(BASE_PATH).param("ids", "1,x"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetAllDevicesWithCursorAndLimit() throws Exception {
+        Device device = new Device(2L, device2.getName(), device2.getBrand(), device2.getState(), LocalDateTime.now());
+        when(deviceService.getDevicesPage(eq("abc"), eq(1), eq(DeviceField.all())))
+                .thenReturn(new DevicePage(List.of(DeviceView.of(device)), "def"));
+
+        mockMvc.perform(get(BASE_PATH)
+                        .param("cursor", "abc")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.devices[0].name").value("Device2"))
+                .andExpect(jsonPath("$.nextCursor").value("def"));
+    }
+
+    @Test
+    void testGetAllDevicesInvalidCursor() throws Exception {
+        when(deviceService.getDevicesPage(eq("bad"), isNull(), any())).thenThrow(new InvalidCursorException("Invalid cursor :: bad"));
+
+        mockMvc.perform(get(BASE_PATH).param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamAllDevicesAsNdjson() throws Exception {
+        Device first = new Device(1L, device1.getName(), device1.getBrand(), device1.getState(), LocalDateTime.now());
+        Device second = new Device(2L, device2.getName(), device2.getBrand(), device2.getState(), LocalDateTime.now());
+        doAnswer(invocation -> {
+            java.util.function.Consumer<List<Device>> consumer = invocation.getArgument(0);
+            consumer.accept(List.of(first));
+            consumer.accept(List.of(second));
+            return null;
+        }).when(deviceService).streamAllDevices(any());
+
+        MvcResult result = mockMvc.perform(get(BASE_PATH + "/stream").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":1"));
+        assertTrue(lines[1].startsWith("{\"id\":2"));
     }
 
     @Test
     void testSearchByBrandAndState() throws Exception {
         Device device = new Device(1L, device1.getName(), device1.getBrand(), device1.getState(), LocalDateTime.now());
-        when(deviceService.getDevicesByCriteria(any(DeviceSearchCriteria.class))).thenReturn(List.of(device));
+        when(deviceService.getDevicesByCriteria(any(DeviceSearchCriteria.class), eq(DeviceField.all())))
+                .thenReturn(List.of(DeviceView.of(device)));
 
-        mockMvc.perform(get(BASE_PATH + "/search")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content("{\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"}"))
+        mockMvc.perform(get(BASE_PATH + "/search").param("brand", "Brand1").param("state", "AVAILABLE")
+                        .param("createdAfter", "2024-01-01T00:00:00"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[0].name").value("Device1"))
                 .andExpect(jsonPath("$[0].brand").value("Brand1"));
+
+        verify(deviceService).getDevicesByCriteria(eq(new DeviceSearchCriteria("Brand1", Device.State.AVAILABLE,
+                LocalDateTime.of(2024, 1, 1, 0, 0), null)), eq(DeviceField.all()));
+    }
+
+    @Test
+    void testSearchWithCriteriaInBody() throws Exception {
+        when(deviceService.getDevicesByCriteria(any(DeviceSearchCriteria.class), eq(DeviceField.all()))).thenReturn(List.of());
+
+        // Refused on GET, a client that still sends a body would otherwise get every device
+        mockMvc.perform(get(BASE_PATH + "/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"brand\":\"Brand1\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post(BASE_PATH + "/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"brand\":\"Brand1\"}"))
+                .andExpect(status().isOk());
+
+        verify(deviceService).getDevicesByCriteria(eq(new DeviceSearchCriteria("Brand1", null)), eq(DeviceField.all()));
+    }
+
+    @Test
+    void testSearchWithInvalidState() throws Exception {
+        mockMvc.perform(get(BASE_PATH + "/search").param("state", "BROKEN"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid value for state: BROKEN"));
+    }
+
+    @Test
+    void testBatchSearch() throws Exception {
+        DeviceSearchCriteria byBrand = new DeviceSearchCriteria("Brand1", null);
+        DeviceSearchCriteria byState = new DeviceSearchCriteria(null, Device.State.IN_USE);
+        when(deviceService.getDevicesByCriteriaBatch(List.of(byBrand, byState), EnumSet.of(DeviceField.ID, DeviceField.NAME)))
+                .thenReturn(List.of(
+                        new DeviceSearchBatchResult(byBrand, List.of(new DeviceView(1L, "Device1", null, null, null, null))),
+                        new DeviceSearchBatchResult(byState, List.of())));
+
+        mockMvc.perform(post(BASE_PATH + "/search/batch").param("fields", "name")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"brand\":\"Brand1\"},{\"state\":\"IN_USE\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].criteria.brand").value("Brand1"))
+                .andExpect(jsonPath("$[0].devices[0].name").value("Device1"))
+                .andExpect(jsonPath("$[1].criteria.state").value("IN_USE"))
+                .andExpect(jsonPath("$[1].devices").isEmpty());
+    }
+
+    @Test
+    void testSearchWithSparseFieldset() throws Exception {
+        when(deviceService.getDevicesByCriteria(any(DeviceSearchCriteria.class), eq(EnumSet.of(DeviceField.ID, DeviceField.STATE))))
+                .thenReturn(List.of(new DeviceView(1L, null, null, Device.State.AVAILABLE, null, null)));
+
+        mockMvc.perform(get(BASE_PATH + "/search").param("brand", "Brand1").param("fields", "state"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":1,\"state\":\"AVAILABLE\"}]", JsonCompareMode.STRICT));
+    }
+
+    @Test
+    void testGetAllDevicesWithUnknownField() throws Exception {
+        mockMvc.perform(get(BASE_PATH).param("fields", "id,owner"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(startsWith("Unknown field :: owner")));
+    }
+
+    @Test
+    void testSearchIsTimedByCriteriaShape() throws Exception {
+        when(deviceService.getDevicesByCriteria(any(DeviceSearchCriteria.class), any())).thenReturn(List.of());
+
+        mockMvc.perform(get(BASE_PATH + "/search").param("state", "AVAILABLE"))
+                .andExpect(status().isOk());
+
+        assertEquals(1, meterRegistry.get(DeviceController.OPERATION_METRIC)
+                .tag("operation", "search").tag("criteria", "state").timer().count());
+    }
+
+    @Test
+    void testTextSearch() throws Exception {
+        when(deviceTextSearchService.search(eq("app iph"), eq(DeviceTextSearchMode.PREFIX), eq(1), eq(2), eq(DeviceField.all())))
+                .thenReturn(new DeviceSearchResults(List.of(
+                        new DeviceView(7L, "iPhone", "Apple", Device.State.AVAILABLE, LocalDateTime.now(), 0L)), 2));
+
+        mockMvc.perform(get(BASE_PATH + "/text-search").param("q", "app iph").param("page", "1").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.devices[0].id").value(7))
+                .andExpect(jsonPath("$.nextPage").value(2));
+    }
+
+    @Test
+    void testTextSearchWithUnknownMode() throws Exception {
+        mockMvc.perform(get(BASE_PATH + "/text-search").param("q", "apple").param("mode", "fuzzy"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetDeviceStats() throws Exception {
+        when(deviceStatsService.getStats()).thenReturn(new DeviceStats(3,
+                Map.of(Device.State.AVAILABLE, 2L, Device.State.IN_USE, 1L),
+                Map.of("Brand1", 3L),
+                Map.of("Brand1", Map.of(Device.State.AVAILABLE, 2L, Device.State.IN_USE, 1L)),
+                Instant.parse("2025-01-01T00:00:00Z")));
+
+        mockMvc.perform(get(BASE_PATH + "/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(3))
+                .andExpect(jsonPath("$.byState.AVAILABLE").value(2))
+                .andExpect(jsonPath("$.byBrand.Brand1").value(3))
+                .andExpect(jsonPath("$.byBrandAndState.Brand1.IN_USE").value(1));
     }
 
     @Test
@@ -123,7 +524,7 @@ class DeviceControllerTest {
         Device expectedDevice = new Device(1L, "UpdatedName", "Brand2", Device.State.AVAILABLE, LocalDateTime.now());
         Device existingDevice = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
         when(deviceService.getDeviceById(anyLong())).thenReturn(existingDevice);
-        when(deviceService.updateDevice(anyLong(), any(DeviceRequest.class))).thenReturn(expectedDevice);
+        when(deviceService.updateDevice(anyLong(), any(DeviceRequest.class), isNull())).thenReturn(expectedDevice);
 
         mockMvc.perform(put(BASE_PATH + "/1")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -137,7 +538,7 @@ class DeviceControllerTest {
     void testUpdateDeviceInUse() throws Exception {
         Device existingDevice = new Device(1L, "Device1", "Brand1", Device.State.IN_USE, LocalDateTime.now());
         when(deviceService.getDeviceById(anyLong())).thenReturn(existingDevice);
-        when(deviceService.updateDevice(anyLong(), any(DeviceRequest.class))).thenThrow(new DeviceInUseException("Name and brand cannot be updated if the device is in use"));
+        when(deviceService.updateDevice(anyLong(), any(DeviceRequest.class), isNull())).thenThrow(new DeviceInUseException("Name and brand cannot be updated if the device is in use"));
 
         mockMvc.perform(put(BASE_PATH + "/1")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -150,11 +551,67 @@ class DeviceControllerTest {
     void testDeleteDeviceInUse() throws Exception {
         Device existingDevice = new Device(1L, "Device1", "Brand1", Device.State.IN_USE, LocalDateTime.now());
         when(deviceService.getDeviceById(anyLong())).thenReturn(existingDevice);
-        doThrow(new DeviceInUseException("Devices in use cannot be removed")).when(deviceService).deleteDevice(anyLong());
+        doThrow(new DeviceInUseException("Devices in use cannot be removed")).when(deviceService).deleteDevice(anyLong(), isNull());
 
         mockMvc.perform(delete(BASE_PATH + "/2")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
                 .andExpect(result -> assertInstanceOf(DeviceInUseException.class, result.getResolvedException()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBulkCreateDevices() throws Exception {
+        BulkOperationResult result = new BulkOperationResult();
+        result.add(BulkItemResult.succeeded(0, 11L, BulkItemResult.Status.CREATED));
+        result.add(BulkItemResult.failed(1, null, "Device brand, name and state are mandatory"));
+        when(deviceBulkService.createDevices(any())).thenReturn(result);
+
+        mockMvc.perform(post(BASE_PATH + "/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Device1\",\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"},{\"name\":\"Device2\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.results[0].id").value(11))
+                .andExpect(jsonPath("$.results[1].status").value("FAILED"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBulkCreateDevicesFromNdjson() throws Exception {
+        List<DeviceRequest> received = new java.util.ArrayList<>();
+        when(deviceBulkService.createDevices(any())).thenAnswer(invocation -> {
+            Iterable<DeviceRequest> items = invocation.getArgument(0);
+            items.forEach(received::add);
+            return new BulkOperationResult();
+        });
+
+        mockMvc.perform(post(BASE_PATH + "/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"name\":\"Device1\",\"brand\":\"Brand1\",\"state\":\"AVAILABLE\"}\n"
+                                + "not json\n"
+                                + "\n"
+                                + "{\"name\":\"Device2\",\"brand\":\"Brand2\",\"state\":\"IN_USE\"}\n"))
+                .andExpect(status().isOk());
+
+        assertEquals(3, received.size());
+        assertEquals("Device1", received.get(0).getName());
+        assertNull(received.get(1));
+        assertEquals(Device.State.IN_USE, received.get(2).getState());
+    }
+
+    @Test
+    void testBulkDeleteDevices() throws Exception {
+        BulkOperationResult result = new BulkOperationResult();
+        result.add(BulkItemResult.succeeded(0, 1L, BulkItemResult.Status.DELETED));
+        result.add(BulkItemResult.failed(1, 2L, "Devices in use cannot be removed"));
+        when(deviceBulkService.deleteDevices(List.of(1L, 2L))).thenReturn(result);
+
+        mockMvc.perform(post(BASE_PATH + "/bulk/delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].status").value("DELETED"))
+                .andExpect(jsonPath("$.results[1].error").value("Devices in use cannot be removed"));
+    }
+}
@@ -0,0 +1,236 @@
+package com.glaydson.devicesapi.loadtest;
+
+import com.glaydson.devicesapi.DevicesapiApplication;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test comparing platform and virtual request threads on the /api/v1/devices endpoints.
+ * It starts the application twice on an in-memory H2 database, once per mode, and drives each
+ * endpoint with the same number of concurrent clients, then prints throughput and latency
+ * percentiles and writes them to target/loadtest/results.csv.
+ * <p>
+ * H2 answers in microseconds, which would hide what the thread model changes, so every JDBC
+ * statement is delayed by a fixed amount to stand in for the network round trip to Postgres.
+ * <p>
+ * Skipped by default, run it with:
+ * <pre>
+ * ./mvnw test -Dtest=DevicesLoadTest -Dloadtest=true [-Dloadtest.concurrency=400]
+ *     [-Dloadtest.duration=10] [-Dloadtest.warmup=3] [-Dloadtest.db-latency-ms=2] [-Dloadtest.devices=5000]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class DevicesLoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 400);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 10);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 3);
+    private static final int DB_LATENCY_MS = Integer.getInteger("loadtest.db-latency-ms", 2);
+    private static final int DEVICES = Integer.getInteger("loadtest.devices", 5000);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    @Test
+    void comparePlatformAndVirtualThreads() throws Exception {
+        List<Result> results = new ArrayList<>();
+        for (String mode : List.of("platform", "virtual")) {
+            try (ConfigurableApplicationContext context = start(mode.equals("virtual"))) {
+                String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort()
+                        + "/api/v1/devices";
+                seed(baseUrl);
+                results.add(run(mode, "GET /{id}", id -> get(baseUrl + "/" + id)));
+                results.add(run(mode, "GET ?limit=50", id -> get(baseUrl + "?limit=50")));
+                results.add(run(mode, "GET /search", id -> search(baseUrl, "Brand" + (id % 20))));
+            }
+        }
+        report(results);
+        assertTrue(results.stream().allMatch(result -> result.requests() > 0));
+    }
+
+    private ConfigurableApplicationContext start(boolean virtualThreads) {
+        return new SpringApplicationBuilder(DevicesapiApplication.class)
+                .initializers(context -> context.getBeanFactory().addBeanPostProcessor(new DatabaseLatency()))
+                // Command line arguments, so they win over application.properties
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.hikari.maximum-pool-size=50",
+                        "--spring.datasource.hikari.minimum-idle=50",
+                        "--spring.datasource.hikari.connection-timeout=30000",
+                        // All the clients share one address, measure the thread model, not the limits
+                        "--devices.limits.enabled=false",
+                        // Measure the request threads, not the synchronous console logging
+                        "--logging.level.com.glaydson.devicesapi=WARN");
+    }
+
+    private void seed(String baseUrl) throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < DEVICES; i++) {
+            ndjson.append("{\"name\":\"Device").append(i).append("\",\"brand\":\"Brand").append(i % 20)
+                    .append("\",\"state\":\"").append(i % 3 == 0 ? "IN_USE" : "AVAILABLE").append("\"}\n");
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/bulk"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                .build();
+        client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private Result run(String mode, String scenario, Function<Long, HttpRequest> requests) throws Exception {
+        drive(requests, WARMUP_SECONDS);
+        long start = System.nanoTime();
+        List<Recorder> recorders = drive(requests, DURATION_SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = recorders.stream().flatMapToLong(recorder -> Arrays.stream(recorder.latencies, 0, recorder.count))
+                .sorted().toArray();
+        long errors = recorders.stream().mapToLong(recorder -> recorder.errors).sum();
+        return new Result(mode, scenario, latencies.length, latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), errors);
+    }
+
+    private List<Recorder> drive(Function<Long, HttpRequest> requests, int seconds) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Future<Recorder>> clients = new ArrayList<>(CONCURRENCY);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CONCURRENCY; i++) {
+                clients.add(executor.submit(() -> {
+                    Recorder recorder = new Recorder();
+                    while (System.nanoTime() < deadline) {
+                        long id = 11 + ThreadLocalRandom.current().nextLong(DEVICES);
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(requests.apply(id), HttpResponse.BodyHandlers.discarding());
+                            recorder.record(System.nanoTime() - sent, response.statusCode() >= 400);
+                        } catch (IOException e) {
+                            recorder.record(System.nanoTime() - sent, true);
+                        }
+                    }
+                    return recorder;
+                }));
+            }
+        }
+        List<Recorder> recorders = new ArrayList<>(CONCURRENCY);
+        for (Future<Recorder> future : clients) {
+            recorders.add(future.get());
+        }
+        return recorders;
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+
+    private static HttpRequest search(String baseUrl, String brand) {
+        return get(baseUrl + "/search?brand=" + brand + "&state=AVAILABLE");
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    private static void report(List<Result> results) throws IOException {
+        StringBuilder table = new StringBuilder(String.format("%nconcurrency=%d duration=%ds db-latency=%dms devices=%d%n",
+                CONCURRENCY, DURATION_SECONDS, DB_LATENCY_MS, DEVICES));
+        table.append(String.format("%-9s %-14s %10s %12s %9s %9s %7s%n", "mode", "scenario", "requests", "req/s", "p50 ms", "p99 ms", "errors"));
+        StringBuilder csv = new StringBuilder("mode,scenario,requests,throughput,p50_ms,p99_ms,errors\n");
+        for (Result result : results) {
+            table.append(String.format("%-9s %-14s %10d %12.1f %9.2f %9.2f %7d%n", result.mode(), result.scenario(),
+                    result.requests(), result.throughput(), result.p50(), result.p99(), result.errors()));
+            csv.append(String.format("%s,%s,%d,%.1f,%.3f,%.3f,%d%n", result.mode(), result.scenario(),
+                    result.requests(), result.throughput(), result.p50(), result.p99(), result.errors()));
+        }
+        System.out.println(table);
+        Path output = Path.of("target", "loadtest", "results.csv");
+        Files.createDirectories(output.getParent());
+        Files.writeString(output, csv);
+    }
+
+    private record Result(String mode, String scenario, long requests, double throughput, double p50, double p99, long errors) {
+    }
+
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        void record(long latencyNanos, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            if (error) {
+                errors++;
+            }
+        }
+    }
+
+    // Delays every statement execution, as if the database were one network round trip away
+    private static final class DatabaseLatency implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource) {
+                return proxy(DataSource.class, dataSource);
+            }
+            return bean;
+        }
+
+        private static <T> T proxy(Class<T> type, T target) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (method.getName().startsWith("execute")) {
+                    Thread.sleep(DB_LATENCY_MS);
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection connection && method.getReturnType() == Connection.class) {
+                    return proxy(Connection.class, connection);
+                }
+                if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    @SuppressWarnings("unchecked")
+                    Class<Statement> statementType = (Class<Statement>) method.getReturnType();
+                    return proxy(statementType, statementType.cast(result));
+                }
+                return result;
+            }));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the H2 schema and data in src/main/resources/db/h2
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.glaydson.devicesapi.repository.DeviceRepositoryTest$CapturingStatementInspector")
+class DeviceRepositoryTest {
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testSearchByBrandAndState() {
+        List<Device> devices = deviceRepository.findAll(
+                DeviceSpecifications.matching(new DeviceSearchCriteria("BrandA", Device.State.AVAILABLE)), Sort.by("id"));
+        assertEquals(1, devices.size());
+        assertEquals("Device1", devices.getFirst().getName());
+
+        devices = deviceRepository.findAll(
+                DeviceSpecifications.matching(new DeviceSearchCriteria("BrandA", Device.State.IN_USE)), Sort.by("id"));
+        assertTrue(devices.isEmpty());
+    }
+
+    @Test
+    void testSearchByBrand() {
+        List<Device> devices = deviceRepository.findAll(
+                DeviceSpecifications.matching(new DeviceSearchCriteria("BrandB", null)), Sort.by("id"));
+        assertEquals(1, devices.size());
+        assertEquals("Device2", devices.getFirst().getName());
+    }
+
+    @Test
+    void testSearchByState() {
+        List<Device> devices = deviceRepository.findAll(
+                DeviceSpecifications.matching(new DeviceSearchCriteria(null, Device.State.AVAILABLE)), Sort.by("id"));
+        assertEquals(List.of(1L, 4L, 7L, 10L), devices.stream().map(Device::getId).toList());
+    }
+
+    @Test
+    void testSearchWithoutCriteriaReturnsAll() {
+        List<Device> devices = deviceRepository.findAll(
+                DeviceSpecifications.matching(new DeviceSearchCriteria(null, null)), Sort.by("id"));
+        assertEquals(10, devices.size());
+    }
+
+    @Test
+    void testSearchByCreationRange() {
+        // Half-open range: createdAfter is included, createdBefore is not
+        List<Device> devices = deviceRepository.findAll(DeviceSpecifications.matching(new DeviceSearchCriteria(null, null,
+                LocalDateTime.of(2023, 1, 3, 12, 0), LocalDateTime.of(2023, 1, 6, 15, 0))), Sort.by("id"));
+        assertEquals(List.of(3L, 4L, 5L), devices.stream().map(Device::getId).toList());
+
+        devices = deviceRepository.findAll(DeviceSpecifications.matching(new DeviceSearchCriteria(null, Device.State.INACTIVE,
+                LocalDateTime.of(2023, 1, 4, 0, 0), null)), Sort.by("id"));
+        assertEquals(List.of(6L, 9L), devices.stream().map(Device::getId).toList());
+    }
+
+    @Test
+    void testSearchMatchingAnyCriteria() {
+        List<Device> devices = deviceRepository.findAll(DeviceSpecifications.matchingAny(List.of(
+                new DeviceSearchCriteria("BrandA", null),
+                // Already covered by the brand alone
+                new DeviceSearchCriteria("BrandA", Device.State.AVAILABLE),
+                new DeviceSearchCriteria("BrandB", Device.State.IN_USE),
+                new DeviceSearchCriteria("BrandC", Device.State.AVAILABLE),
+                new DeviceSearchCriteria(null, Device.State.INACTIVE, LocalDateTime.of(2023, 1, 4, 0, 0), null),
+                new DeviceSearchCriteria(null, null, LocalDateTime.of(2023, 1, 3, 12, 0), LocalDateTime.of(2023, 1, 6, 15, 0)))),
+                Sort.by("id"));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 9L), devices.stream().map(Device::getId).toList());
+    }
+
+    @Test
+    void testFindInactiveCreatedBefore() {
+        List<Device> devices = deviceRepository.findByStateAndCreationTimeBeforeOrderByIdAsc(
+                Device.State.INACTIVE, LocalDateTime.of(2023, 1, 7, 0, 0), Limit.of(10));
+        assertEquals(List.of(3L, 6L), devices.stream().map(Device::getId).toList());
+    }
+
+    @Test
+    void testFindViewsSelectsOnlyRequestedColumns() {
+        CapturingStatementInspector.lastSql = null;
+        List<DeviceView> views = deviceRepository.findViews(
+                DeviceSpecifications.matching(new DeviceSearchCriteria(null, Device.State.AVAILABLE)), DeviceField.parse("state"));
+
+        assertEquals(List.of(1L, 4L, 7L, 10L), views.stream().map(DeviceView::id).toList());
+        assertEquals(Device.State.AVAILABLE, views.getFirst().state());
+        assertNull(views.getFirst().name());
+        String select = CapturingStatementInspector.lastSql.toLowerCase();
+        select = select.substring(0, select.indexOf(" from "));
+        assertFalse(select.contains("name") || select.contains("brand") || select.contains("creation_time"), select);
+    }
+
+    @Test
+    void testFindViewsAfterIsKeysetPaginated() {
+        List<DeviceView> views = deviceRepository.findViewsAfter(3L, 2, DeviceField.all());
+        assertEquals(List.of(4L, 5L), views.stream().map(DeviceView::id).toList());
+        assertEquals("Device4", views.getFirst().name());
+    }
+
+    @Test
+    void testCountByBrandAndState() {
+        List<DeviceStore.BrandStateCount> counts = deviceRepository.countByBrandAndState();
+        assertEquals(10, counts.size());
+        assertEquals(10, counts.stream().mapToLong(DeviceStore.BrandStateCount::getCount).sum());
+        assertEquals(4, counts.stream().filter(count -> count.getState() == Device.State.AVAILABLE)
+                .mapToLong(DeviceStore.BrandStateCount::getCount).sum());
+    }
+
+    @Test
+    void testUpdateStateIfIsConditional() {
+        assertEquals(1, deviceRepository.updateStateIf(1L, Device.State.AVAILABLE, Device.State.IN_USE));
+        // Already checked out: the second compare-and-set finds no row
+        assertEquals(0, deviceRepository.updateStateIf(1L, Device.State.AVAILABLE, Device.State.IN_USE));
+
+        Device device = deviceRepository.findById(1L).orElseThrow();
+        assertEquals(Device.State.IN_USE, device.getState());
+        assertEquals(1L, device.getVersion());
+    }
+
+    @Test
+    void testFindFirstAvailableOfBrand() {
+        assertEquals(1L, deviceRepository.findFirstByBrandAndStateOrderByIdAsc("BrandA", Device.State.AVAILABLE)
+                .map(Device::getId).orElseThrow());
+        assertTrue(deviceRepository.findFirstByBrandAndStateOrderByIdAsc("BrandB", Device.State.AVAILABLE).isEmpty());
+    }
+
+    @Test
+    void testUpdateFirstStateIfChecksOutTheFirstAvailable() {
+        JpaDeviceStore deviceStore = new JpaDeviceStore(deviceRepository);
+
+        Device device = deviceStore.updateFirstStateIf("BrandA", Device.State.AVAILABLE, Device.State.IN_USE).orElseThrow();
+        assertEquals(1L, device.getId());
+        assertEquals(Device.State.IN_USE, device.getState());
+        assertEquals(1L, device.getVersion());
+        assertTrue(deviceStore.updateFirstStateIf("BrandA", Device.State.AVAILABLE, Device.State.IN_USE).isEmpty());
+    }
+
+    @Test
+    void testPlannerUsesBrandStateIndex() {
+        String plan = explainSearch(new DeviceSearchCriteria("BrandA", Device.State.AVAILABLE), "BrandA", "AVAILABLE");
+        assertTrue(plan.contains("IDX_DEVICES_BRAND_STATE"), plan);
+
+        plan = explainSearch(new DeviceSearchCriteria("BrandA", null), "BrandA");
+        assertTrue(plan.contains("IDX_DEVICES_BRAND_STATE"), plan);
+    }
+
+    @Test
+    void testPlannerUsesBrandStateIndexForCreationRange() {
+        LocalDateTime after = LocalDateTime.of(2023, 1, 1, 0, 0);
+        String plan = explainSearch(new DeviceSearchCriteria("BrandA", Device.State.AVAILABLE, after, null),
+                "BrandA", "AVAILABLE", after);
+        assertTrue(plan.contains("IDX_DEVICES_BRAND_STATE"), plan);
+    }
+
+    @Test
+    void testPlannerUsesStateIndex() {
+        String plan = explainSearch(new DeviceSearchCriteria(null, Device.State.AVAILABLE), "AVAILABLE");
+        assertTrue(plan.contains("IDX_DEVICES_STATE"), plan);
+    }
+
+    // Runs the search through the specification, then asks H2 for the plan of the SQL Hibernate generated
+    private String explainSearch(DeviceSearchCriteria criteria, Object... parameters) {
+        CapturingStatementInspector.lastSql = null;
+        deviceRepository.findAll(DeviceSpecifications.matching(criteria), Sort.by("id"));
+        String sql = CapturingStatementInspector.lastSql;
+        assertNotNull(sql);
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters).toUpperCase();
+    }
+
+    public static class CapturingStatementInspector implements StatementInspector {
+        static volatile String lastSql;
+
+        @Override
+        public String inspect(String sql) {
+            lastSql = sql;
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.glaydson.devicesapi.repository;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryDeviceStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<InMemoryDeviceStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        // The stores a test abandons to simulate a crash are left open
+        opened.forEach(InMemoryDeviceStore::close);
+    }
+
+    @Test
+    void testIndexesFollowTheChanges() {
+        InMemoryDeviceStore store = open(List.of());
+        Device a = store.save(new Device("A", "Apple", Device.State.AVAILABLE));
+        Device b = store.save(new Device("B", "Apple", Device.State.IN_USE));
+        Device c = store.save(new Device("C", "Samsung", Device.State.AVAILABLE));
+
+        assertEquals(List.of(a.getId(), b.getId()), search(store, "Apple", null));
+        assertEquals(List.of(a.getId(), c.getId()), search(store, null, Device.State.AVAILABLE));
+        assertEquals(List.of(a.getId()), search(store, "Apple", Device.State.AVAILABLE));
+
+        a.setBrand("Samsung");
+        store.save(a);
+
+        assertEquals(List.of(b.getId()), search(store, "Apple", null));
+        assertEquals(List.of(a.getId(), c.getId()), search(store, "Samsung", Device.State.AVAILABLE));
+
+        store.delete(store.findById(b.getId()).orElseThrow());
+        assertTrue(search(store, "Apple", null).isEmpty());
+        assertEquals(Map.of("Samsung/AVAILABLE", 2L), counts(store));
+    }
+
+    @Test
+    void testSearchesAndPages() {
+        LocalDateTime day = LocalDateTime.of(2024, 1, 1, 0, 0);
+        InMemoryDeviceStore store = open(List.of(
+                new Device(1L, "D1", "Apple", Device.State.AVAILABLE, day, 0L),
+                new Device(2L, "D2", "Apple", Device.State.AVAILABLE, day.plusDays(1), 0L),
+                new Device(3L, "D3", "Apple", Device.State.INACTIVE, day.plusDays(2), 0L),
+                new Device(4L, "D4", "Google", Device.State.AVAILABLE, day.plusDays(3), 0L)));
+
+        List<DeviceView> found = store.findViews(DeviceSpecifications.matching(new DeviceSearchCriteria(
+                "Apple", Device.State.AVAILABLE, day.plusDays(1), day.plusDays(5))), DeviceField.all());
+        assertEquals(List.of(2L), found.stream().map(DeviceView::id).toList());
+
+        List<DeviceView> anyOf = store.findViews(DeviceSpecifications.matchingAny(List.of(
+                new DeviceSearchCriteria("Google", null), new DeviceSearchCriteria(null, Device.State.INACTIVE))), DeviceField.all());
+        assertEquals(List.of(3L, 4L), anyOf.stream().map(DeviceView::id).toList());
+
+        List<DeviceView> byIds = store.findViews(DeviceSpecifications.withIds(List.of(4L, 9L, 1L)),
+                DeviceField.parse("state"));
+        assertEquals(List.of(1L, 4L), byIds.stream().map(DeviceView::id).toList());
+        assertNull(byIds.getFirst().name());
+
+        assertEquals(List.of(2L, 3L), store.findViewsAfter(1L, 2, DeviceField.all()).stream().map(DeviceView::id).toList());
+        assertEquals(List.of(4L), ids(store.findByIdGreaterThanOrderByIdAsc(3L, Limit.of(10))));
+        assertEquals(List.of(3L), ids(store.findByStateAndCreationTimeBeforeOrderByIdAsc(
+                Device.State.INACTIVE, day.plusDays(3), Limit.of(10))));
+    }
+
+    @Test
+    void testStaleWritesFail() {
+        InMemoryDeviceStore store = open(List.of());
+        Device saved = store.save(new Device("A", "Apple", Device.State.AVAILABLE));
+        Device first = store.findById(saved.getId()).orElseThrow();
+        Device second = store.findById(saved.getId()).orElseThrow();
+
+        first.setName("First");
+        assertEquals(1L, store.save(first).getVersion());
+        second.setName("Second");
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> store.save(second));
+
+        // A batch is checked before any of it is applied
+        Device other = store.save(new Device("B", "Apple", Device.State.AVAILABLE));
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> store.deleteAll(List.of(store.findById(other.getId()).orElseThrow(), second)));
+        assertTrue(store.findById(other.getId()).isPresent());
+        assertEquals("First", store.findById(saved.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void testUpdateStateIf() {
+        InMemoryDeviceStore store = open(List.of());
+        Long id = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+
+        assertEquals(1, store.updateStateIf(id, Device.State.AVAILABLE, Device.State.IN_USE));
+        assertEquals(0, store.updateStateIf(id, Device.State.AVAILABLE, Device.State.IN_USE));
+        assertEquals(0, store.updateStateIf(99L, Device.State.AVAILABLE, Device.State.IN_USE));
+
+        Device device = store.findById(id).orElseThrow();
+        assertEquals(Device.State.IN_USE, device.getState());
+        assertEquals(1L, device.getVersion());
+        assertEquals(List.of(id), search(store, null, Device.State.IN_USE));
+    }
+
+    @Test
+    void testUpdateFirstStateIf() {
+        InMemoryDeviceStore store = open(List.of());
+        store.save(new Device("A", "Apple", Device.State.IN_USE));
+        Long first = store.save(new Device("B", "Apple", Device.State.AVAILABLE)).getId();
+        Long second = store.save(new Device("C", "Apple", Device.State.AVAILABLE)).getId();
+
+        Device device = store.updateFirstStateIf("Apple", Device.State.AVAILABLE, Device.State.IN_USE).orElseThrow();
+        assertEquals(first, device.getId());
+        assertEquals(Device.State.IN_USE, device.getState());
+        assertEquals(1L, device.getVersion());
+        assertEquals(second, store.updateFirstStateIf("Apple", Device.State.AVAILABLE, Device.State.IN_USE)
+                .orElseThrow().getId());
+        assertTrue(store.updateFirstStateIf("Apple", Device.State.AVAILABLE, Device.State.IN_USE).isEmpty());
+        assertTrue(store.updateFirstStateIf("Google", Device.State.AVAILABLE, Device.State.IN_USE).isEmpty());
+    }
+
+    @Test
+    void testConcurrentCheckOutsGetDifferentDevices() throws Exception {
+        InMemoryDeviceStore store = open(List.of());
+        for (int i = 0; i < 50; i++) {
+            store.save(new Device("D" + i, "Apple", Device.State.AVAILABLE));
+        }
+
+        int callers = 64;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<Device>>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return store.updateFirstStateIf("Apple", Device.State.AVAILABLE, Device.State.IN_USE);
+                }));
+            }
+            start.countDown();
+            List<Long> checkedOut = new ArrayList<>();
+            for (Future<Optional<Device>> result : results) {
+                result.get(10, TimeUnit.SECONDS).ifPresent(device -> checkedOut.add(device.getId()));
+            }
+
+            // Every device went to exactly one caller, the callers after them found none left
+            assertEquals(50, checkedOut.size());
+            assertEquals(50, Set.copyOf(checkedOut).size());
+            assertTrue(search(store, "Apple", Device.State.AVAILABLE).isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testRecoversFromTheLogAfterACrash() {
+        InMemoryDeviceStore store = open(List.of());
+        Long kept = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+        Long deleted = store.save(new Device("B", "Apple", Device.State.INACTIVE)).getId();
+        store.updateStateIf(kept, Device.State.AVAILABLE, Device.State.IN_USE);
+        store.delete(store.findById(deleted).orElseThrow());
+        // The flusher ran, then the process died without closing the store
+        store.syncLog();
+        opened.remove(store);
+
+        InMemoryDeviceStore recovered = open(List.of());
+
+        assertEquals(List.of(kept), ids(all(recovered)));
+        assertEquals(Device.State.IN_USE, recovered.findById(kept).orElseThrow().getState());
+        assertEquals(List.of(kept), search(recovered, "Apple", null));
+        // Ids are not reused, not even the one of the deleted device
+        assertTrue(recovered.save(new Device("C", "Apple", Device.State.AVAILABLE)).getId() > deleted);
+    }
+
+    @Test
+    void testRecoversFromTheSnapshotAndTheLogAfterIt() throws IOException {
+        InMemoryDeviceStore store = open(List.of());
+        Long before = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+        store.snapshot();
+        Long after = store.save(new Device("B", "Google", Device.State.AVAILABLE)).getId();
+        store.syncLog();
+        opened.remove(store);
+
+        // The older snapshot and the log written before the snapshot were dropped
+        assertEquals(1, files("snapshot-"));
+        assertEquals(1, files("wal-"));
+        InMemoryDeviceStore recovered = open(List.of());
+
+        assertEquals(List.of(before, after), ids(all(recovered)));
+        assertEquals(Map.of("Apple/AVAILABLE", 1L, "Google/AVAILABLE", 1L), counts(recovered));
+    }
+
+    @Test
+    void testTornRecordAtTheEndIsDropped() throws IOException {
+        InMemoryDeviceStore store = open(List.of());
+        Long id = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+        store.syncLog();
+        opened.remove(store);
+        Path segment;
+        try (Stream<Path> paths = Files.list(directory)) {
+            segment = paths.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().toList().getLast();
+        }
+        // Half of a record: a length and a few bytes
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        InMemoryDeviceStore recovered = open(List.of());
+
+        assertEquals(List.of(id), ids(all(recovered)));
+    }
+
+    @Test
+    void testStartsFromTheDatabaseOnlyWhenEmpty() {
+        AtomicInteger imports = new AtomicInteger();
+        List<Device> table = List.of(new Device(7L, "D7", "Apple", Device.State.AVAILABLE, LocalDateTime.now(), 3L));
+        InMemoryDeviceStore store = open(() -> {
+            imports.incrementAndGet();
+            return table;
+        });
+        assertEquals(3L, store.findById(7L).orElseThrow().getVersion());
+        assertEquals(8L, store.save(new Device("New", "Apple", Device.State.AVAILABLE)).getId());
+        store.close();
+
+        InMemoryDeviceStore restarted = open(() -> {
+            imports.incrementAndGet();
+            return table;
+        });
+
+        assertEquals(1, imports.get());
+        assertEquals(List.of(7L, 8L), ids(all(restarted)));
+    }
+
+    @Test
+    void testRolledBackChangesAreUndone() {
+        InMemoryDeviceStore store = open(List.of());
+        Long kept = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+        Long deleted = store.save(new Device("B", "Apple", Device.State.AVAILABLE)).getId();
+
+        assertThrows(IllegalStateException.class, () -> transaction().executeWithoutResult(status -> {
+            Device renamed = store.findById(kept).orElseThrow();
+            renamed.setName("Renamed");
+            store.save(renamed);
+            store.updateStateIf(kept, Device.State.AVAILABLE, Device.State.IN_USE);
+            store.delete(store.findById(deleted).orElseThrow());
+            store.save(new Device("C", "Google", Device.State.AVAILABLE));
+            // Like the outbox insert failing after the device was written
+            throw new IllegalStateException("Outbox insert failed");
+        }));
+
+        Device restored = store.findById(kept).orElseThrow();
+        assertEquals("A", restored.getName());
+        assertEquals(Device.State.AVAILABLE, restored.getState());
+        assertEquals(0L, restored.getVersion());
+        assertEquals(List.of(kept, deleted), ids(all(store)));
+        assertEquals(Map.of("Apple/AVAILABLE", 2L), counts(store));
+
+        // The undo is in the log too
+        store.syncLog();
+        opened.remove(store);
+        InMemoryDeviceStore recovered = open(List.of());
+        assertEquals(List.of(kept, deleted), ids(all(recovered)));
+        assertEquals("A", recovered.findById(kept).orElseThrow().getName());
+    }
+
+    @Test
+    void testRollbackKeepsLaterChangesOfOthers() {
+        InMemoryDeviceStore store = open(List.of());
+        Long id = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+        Long other = store.save(new Device("B", "Apple", Device.State.AVAILABLE)).getId();
+
+        assertThrows(IllegalStateException.class, () -> transaction().executeWithoutResult(status -> {
+            store.updateStateIf(id, Device.State.AVAILABLE, Device.State.IN_USE);
+            store.updateStateIf(other, Device.State.AVAILABLE, Device.State.IN_USE);
+            // Another request, outside this transaction, checks the device in again before the rollback
+            CompletableFuture.runAsync(() -> store.updateStateIf(id, Device.State.IN_USE, Device.State.AVAILABLE)).join();
+            throw new IllegalStateException("Outbox insert failed");
+        }));
+
+        assertEquals(2L, store.findById(id).orElseThrow().getVersion());
+        assertEquals(Device.State.AVAILABLE, store.findById(other).orElseThrow().getState());
+        assertEquals(0L, store.findById(other).orElseThrow().getVersion());
+    }
+
+    @Test
+    void testCommittedChangesStay() {
+        InMemoryDeviceStore store = open(List.of());
+        Long id = store.save(new Device("A", "Apple", Device.State.AVAILABLE)).getId();
+
+        transaction().executeWithoutResult(status -> store.updateStateIf(id, Device.State.AVAILABLE, Device.State.IN_USE));
+
+        assertEquals(Device.State.IN_USE, store.findById(id).orElseThrow().getState());
+        // The next transaction starts with nothing to undo
+        assertThrows(IllegalStateException.class, () -> transaction().executeWithoutResult(status -> {
+            throw new IllegalStateException("Rolled back");
+        }));
+        assertEquals(Device.State.IN_USE, store.findById(id).orElseThrow().getState());
+    }
+
+    private InMemoryDeviceStore open(List<Device> initialDevices) {
+        return open(() -> initialDevices);
+    }
+
+    private InMemoryDeviceStore open(Supplier<List<Device>> initialDevices) {
+        DevicesProperties.Memory properties = new DevicesProperties.Memory();
+        properties.setDirectory(directory);
+        InMemoryDeviceStore store = new InMemoryDeviceStore(properties, initialDevices);
+        opened.add(store);
+        return store;
+    }
+
+    private long files(String prefix) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    private static List<Long> ids(List<Device> devices) {
+        return devices.stream().map(Device::getId).toList();
+    }
+
+    private static List<Device> all(InMemoryDeviceStore store) {
+        return store.findByIdGreaterThanOrderByIdAsc(0L, Limit.unlimited());
+    }
+
+    private static List<Long> search(InMemoryDeviceStore store, String brand, Device.State state) {
+        return store.findViews(DeviceSpecifications.matching(new DeviceSearchCriteria(brand, state)), DeviceField.all())
+                .stream().map(DeviceView::id).toList();
+    }
+
+    private static TransactionTemplate transaction() {
+        return new TransactionTemplate(new SynchronizationOnlyTransactionManager());
+    }
+
+    private static Map<String, Long> counts(InMemoryDeviceStore store) {
+        return store.countByBrandAndState().stream().collect(Collectors.toMap(
+                count -> count.getBrand() + "/" + count.getState(), DeviceStore.BrandStateCount::getCount));
+    }
+
+    // Transactions without a resource behind them, only their synchronizations run
+    private static class SynchronizationOnlyTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
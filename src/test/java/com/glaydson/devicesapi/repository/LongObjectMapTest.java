@@ -0,0 +1,32 @@
+package com.glaydson.devicesapi.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongObjectMapTest {
+
+    @Test
+    void testBehavesLikeAHashMap() {
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        // Few distinct keys, so removals often shift the entries that collided with them
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000) * (random.nextBoolean() ? 1L : 1L << 32);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertNull(map.get(-1L));
+    }
+}
@@ -0,0 +1,93 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceArchiveRepository;
+import com.glaydson.devicesapi.repository.DeviceRepository;
+import com.glaydson.devicesapi.repository.JpaDeviceStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// Runs against the H2 schema and data in src/main/resources/db/h2, inside the test transaction
+@DataJpaTest
+@Import(DeviceArchiveRepository.class)
+class DeviceArchiverTest {
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private DeviceArchiveRepository deviceArchiveRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private Cache devicesCache;
+    private DeviceArchiver archiver;
+
+    @BeforeEach
+    void setUp() {
+        DevicesProperties properties = new DevicesProperties();
+        properties.getArchive().setBatchSize(1);
+        properties.getArchive().setMaxBatchesPerRun(20);
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(DeviceService.DEVICES_CACHE);
+        devicesCache = cacheManager.getCache(DeviceService.DEVICES_CACHE);
+        archiver = new DeviceArchiver(new JpaDeviceStore(deviceRepository), deviceArchiveRepository, properties, transactionManager,
+                cacheManager, eventPublisher, meterRegistry);
+    }
+
+    @Test
+    void testMovesInactiveDevicesBeforeCutoffInBatches() {
+        devicesCache.put(3L, deviceRepository.findById(3L).orElseThrow());
+
+        // INACTIVE seed devices are 3, 6 and 9, created on January 3rd, 6th and 9th
+        int archived = archiver.archiveInactive(LocalDateTime.of(2023, 1, 7, 0, 0));
+        entityManager.flush();
+
+        assertEquals(2, archived);
+        assertEquals(List.of(3L, 6L), jdbcTemplate.queryForList("SELECT id FROM devices_archive ORDER BY id", Long.class));
+        assertEquals("Device3", jdbcTemplate.queryForObject("SELECT name FROM devices_archive WHERE id = 3", String.class));
+        assertTrue(deviceRepository.findById(3L).isEmpty());
+        assertTrue(deviceRepository.findById(6L).isEmpty());
+        assertEquals(Device.State.INACTIVE, deviceRepository.findById(9L).orElseThrow().getState());
+        assertNull(devicesCache.get(3L));
+        verify(eventPublisher, times(2)).publishEvent(any(DeviceChangedEvent.class));
+        assertEquals(2.0, meterRegistry.get(DeviceArchiver.ARCHIVED_METRIC).counter().count());
+    }
+
+    @Test
+    void testLeavesOtherStatesAlone() {
+        int archived = archiver.archiveInactive(LocalDateTime.of(2024, 1, 1, 0, 0));
+        entityManager.flush();
+
+        assertEquals(3, archived);
+        assertEquals(3, deviceArchiveRepository.count());
+        assertEquals(7, deviceRepository.count());
+        assertTrue(deviceRepository.findAll().stream().noneMatch(device -> device.getState() == Device.State.INACTIVE));
+    }
+}
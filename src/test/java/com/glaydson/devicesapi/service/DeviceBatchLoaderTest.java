@@ -0,0 +1,140 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DeviceBatchLoaderTest {
+
+    @Mock
+    private DeviceStore deviceStore;
+
+    private DevicesProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        properties = new DevicesProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        // Returns the devices asked for, except id 99
+        when(deviceStore.findAllById(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(id -> id != 99L).map(DeviceBatchLoaderTest::device).toList();
+        });
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneQuery() throws Exception {
+        properties.getLoader().setWindow(Duration.ofMillis(300));
+        DeviceBatchLoader loader = new DeviceBatchLoader(deviceStore, properties, meterRegistry);
+
+        List<Optional<Device>> results = loadConcurrently(loader, 1L, 2L, 2L, 99L, 3L);
+
+        assertEquals(List.of(1L, 2L, 2L), results.subList(0, 3).stream().map(device -> device.orElseThrow().getId()).toList());
+        assertTrue(results.get(3).isEmpty());
+        assertEquals(3L, results.get(4).orElseThrow().getId());
+        // Duplicates are read once
+        verify(deviceStore).findAllById(any());
+        verify(deviceStore, never()).findById(any());
+        assertEquals(4.0, meterRegistry.get(DeviceBatchLoader.BATCH_SIZE_METRIC).summary().totalAmount());
+        assertEquals(1, meterRegistry.get(DeviceBatchLoader.WAIT_METRIC).timer().count());
+    }
+
+    @Test
+    void testFullBatchStartsANewOne() throws Exception {
+        properties.getLoader().setMaxBatchSize(2);
+        properties.getLoader().setWindow(Duration.ofSeconds(10));
+        DeviceBatchLoader loader = new DeviceBatchLoader(deviceStore, properties, meterRegistry);
+
+        long start = System.nanoTime();
+        List<Optional<Device>> results = loadConcurrently(loader, 1L, 2L, 3L, 4L);
+
+        assertTrue(results.stream().allMatch(Optional::isPresent));
+        verify(deviceStore, times(2)).findAllById(any());
+        // Full batches run at once instead of waiting out the window
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+    }
+
+    @Test
+    void testLonelyLookupRunsAfterTheWindow() {
+        properties.getLoader().setWindow(Duration.ofMillis(20));
+        DeviceBatchLoader loader = new DeviceBatchLoader(deviceStore, properties, meterRegistry);
+
+        assertEquals(5L, loader.load(5L).orElseThrow().getId());
+        assertTrue(loader.load(99L).isEmpty());
+        verify(deviceStore, times(2)).findAllById(any());
+    }
+
+    @Test
+    void testQueryFailureReachesEveryCaller() throws Exception {
+        properties.getLoader().setWindow(Duration.ofMillis(200));
+        properties.getLoader().setMaxBatchSize(2);
+        doThrow(new IllegalStateException("database down")).when(deviceStore).findAllById(any());
+        DeviceBatchLoader loader = new DeviceBatchLoader(deviceStore, properties, meterRegistry);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<Device>> first = executor.submit(() -> loader.load(1L));
+            Future<Optional<Device>> second = executor.submit(() -> loader.load(2L));
+            for (Future<Optional<Device>> result : List.of(first, second)) {
+                Exception e = assertThrows(Exception.class, result::get);
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    void testDisabledLoaderReadsEachDevice() {
+        properties.getLoader().setEnabled(false);
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device(1L)));
+        DeviceBatchLoader loader = new DeviceBatchLoader(deviceStore, properties, meterRegistry);
+
+        assertEquals(1L, loader.load(1L).orElseThrow().getId());
+        verify(deviceStore, never()).findAllById(any());
+    }
+
+    private static List<Optional<Device>> loadConcurrently(DeviceBatchLoader loader, Long... ids) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<Device>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Long id : ids) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return loader.load(id);
+                }));
+            }
+            start.countDown();
+        }
+        List<Optional<Device>> results = new ArrayList<>();
+        for (Future<Optional<Device>> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static Device device(Long id) {
+        Device device = new Device(id, "Device" + id, "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+        device.setVersion(0L);
+        return device;
+    }
+}
@@ -0,0 +1,159 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.BulkItemResult;
+import com.glaydson.devicesapi.dto.BulkOperationResult;
+import com.glaydson.devicesapi.dto.DeviceBulkUpdateRequest;
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import com.glaydson.devicesapi.repository.InMemoryDeviceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class DeviceBulkServiceTest {
+
+    @Mock
+    private DeviceStore deviceStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @TempDir
+    Path directory;
+
+    private CacheManager cacheManager;
+    private DeviceBulkService deviceBulkService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        cacheManager = new ConcurrentMapCacheManager(DeviceService.DEVICES_CACHE);
+        DevicesProperties properties = new DevicesProperties();
+        properties.getBulk().setBatchSize(2);
+        deviceBulkService = new DeviceBulkService(deviceStore, properties, transactionManager, cacheManager, eventPublisher);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCreateDevicesInBatches() {
+        AtomicLong ids = new AtomicLong(10);
+        when(deviceStore.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Device> devices = invocation.getArgument(0);
+            devices.forEach(device -> device.setId(ids.incrementAndGet()));
+            return devices;
+        });
+
+        BulkOperationResult result = deviceBulkService.createDevices(Arrays.asList(
+                new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE),
+                new DeviceRequest("Device2", null, Device.State.AVAILABLE),
+                new DeviceRequest("Device3", "Brand3", Device.State.IN_USE),
+                null,
+                new DeviceRequest("Device5", "Brand5", Device.State.INACTIVE)));
+
+        assertEquals(3, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        assertEquals(List.of(0, 1, 2, 3, 4), result.getResults().stream().map(BulkItemResult::getIndex).toList());
+        assertEquals(BulkItemResult.Status.CREATED, result.getResults().get(0).getStatus());
+        assertEquals(BulkItemResult.Status.FAILED, result.getResults().get(1).getStatus());
+        assertEquals(DeviceBulkService.MALFORMED_ITEM, result.getResults().get(3).getError());
+        assertEquals(13L, result.getResults().get(4).getId());
+        // two full chunks of valid items: [Device1, Device3] and [Device5]
+        verify(deviceStore, times(2)).saveAll(anyList());
+        assertNotNull(cacheManager.getCache(DeviceService.DEVICES_CACHE).get(11L));
+    }
+
+    @Test
+    void testCreateDevicesFailedChunkIsReported() {
+        when(deviceStore.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("constraint"));
+
+        BulkOperationResult result = deviceBulkService.createDevices(List.of(
+                new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE),
+                new DeviceRequest("Device2", "Brand2", Device.State.AVAILABLE)));
+
+        assertEquals(0, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+    }
+
+    @Test
+    void testUpdateDevices() {
+        Device available = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+        Device inUse = new Device(2L, "Device2", "Brand2", Device.State.IN_USE, LocalDateTime.now());
+        when(deviceStore.findAllById(any())).thenReturn(List.of(available, inUse));
+
+        BulkOperationResult result = deviceBulkService.updateDevices(List.of(
+                new DeviceBulkUpdateRequest(1L, "Renamed", "Brand1", Device.State.IN_USE),
+                new DeviceBulkUpdateRequest(2L, "Renamed", "Brand2", Device.State.IN_USE),
+                new DeviceBulkUpdateRequest(3L, "Device3", "Brand3", Device.State.AVAILABLE),
+                new DeviceBulkUpdateRequest(null, "Device4", "Brand4", Device.State.AVAILABLE)));
+
+        assertEquals(1, result.getSucceeded());
+        assertEquals(BulkItemResult.Status.UPDATED, result.getResults().get(0).getStatus());
+        assertEquals("Name and brand cannot be updated if the device is in use", result.getResults().get(1).getError());
+        assertEquals(DeviceService.DEVICE_NOT_FOUND_FOR_THIS_ID + 3, result.getResults().get(2).getError());
+        assertEquals(DeviceBulkService.MISSING_ID, result.getResults().get(3).getError());
+        assertEquals("Renamed", available.getName());
+        assertEquals("Device2", inUse.getName());
+        verify(deviceStore).saveAll(List.of(available));
+    }
+
+    @Test
+    void testUpdateDevicesInMemory() {
+        DevicesProperties.Memory memory = new DevicesProperties.Memory();
+        memory.setDirectory(directory);
+        try (InMemoryDeviceStore store = new InMemoryDeviceStore(memory, List::of)) {
+            Long id = store.save(new Device("Device1", "Brand1", Device.State.AVAILABLE)).getId();
+            DeviceBulkService inMemory = new DeviceBulkService(store, new DevicesProperties(), transactionManager,
+                    cacheManager, eventPublisher);
+
+            BulkOperationResult result = inMemory.updateDevices(List.of(
+                    new DeviceBulkUpdateRequest(id, "Renamed", "Brand2", Device.State.IN_USE)));
+
+            // The store hands out copies, the update is only there if the service saved it
+            assertEquals(BulkItemResult.Status.UPDATED, result.getResults().getFirst().getStatus());
+            Device stored = store.findById(id).orElseThrow();
+            assertEquals("Renamed", stored.getName());
+            assertEquals("Brand2", stored.getBrand());
+            assertEquals(Device.State.IN_USE, stored.getState());
+            assertEquals(1L, stored.getVersion());
+        }
+    }
+
+    @Test
+    void testDeleteDevices() {
+        Device available = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+        Device inUse = new Device(2L, "Device2", "Brand2", Device.State.IN_USE, LocalDateTime.now());
+        when(deviceStore.findAllById(any())).thenReturn(List.of(available, inUse));
+        cacheManager.getCache(DeviceService.DEVICES_CACHE).put(1L, available);
+
+        BulkOperationResult result = deviceBulkService.deleteDevices(List.of(1L, 2L));
+
+        assertEquals(1, result.getSucceeded());
+        assertEquals(BulkItemResult.Status.DELETED, result.getResults().get(0).getStatus());
+        assertEquals("Devices in use cannot be removed", result.getResults().get(1).getError());
+        verify(deviceStore).deleteAll(List.of(available));
+        assertNull(cacheManager.getCache(DeviceService.DEVICES_CACHE).get(1L));
+    }
+}
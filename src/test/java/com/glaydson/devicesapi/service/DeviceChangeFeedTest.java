@@ -0,0 +1,119 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import com.glaydson.devicesapi.model.Device;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceChangeFeedTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DeviceChangeFeed deviceChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        DevicesProperties properties = new DevicesProperties();
+        properties.getChanges().setReplayBufferSize(3);
+        properties.getChanges().setSubscriberQueueSize(2);
+        meterRegistry = new SimpleMeterRegistry();
+        deviceChangeFeed = new DeviceChangeFeed(properties, meterRegistry);
+    }
+
+    @Test
+    void testSubscriberReceivesChangesInOrder() throws Exception {
+        DeviceChangeFeed.Subscription subscription = deviceChangeFeed.subscribe(null);
+
+        deviceChangeFeed.onDeviceChanged(DeviceChangedEvent.created(device(1L, Device.State.AVAILABLE)));
+        deviceChangeFeed.onDeviceChanged(DeviceChangedEvent.updated(device(1L, Device.State.AVAILABLE),
+                device(1L, Device.State.IN_USE)));
+
+        DeviceChange created = subscription.next(Duration.ZERO);
+        assertEquals(1, created.sequence());
+        assertEquals(DeviceChangedEvent.Type.CREATED, created.type());
+        assertNull(created.previousState());
+        DeviceChange updated = subscription.next(Duration.ZERO);
+        assertEquals(2, updated.sequence());
+        assertEquals(Device.State.AVAILABLE, updated.previousState());
+        assertEquals(Device.State.IN_USE, updated.state());
+        assertNull(subscription.next(Duration.ZERO));
+        assertFalse(subscription.isEnded());
+    }
+
+    @Test
+    void testResumeReplaysMissedChanges() throws Exception {
+        publishCreations(3);
+
+        DeviceChangeFeed.Subscription subscription = deviceChangeFeed.subscribe(1L);
+        deviceChangeFeed.onDeviceChanged(DeviceChangedEvent.deleted(device(1L, Device.State.AVAILABLE)));
+
+        assertFalse(subscription.isReset());
+        assertEquals(2, subscription.next(Duration.ZERO).sequence());
+        assertEquals(3, subscription.next(Duration.ZERO).sequence());
+        DeviceChange deleted = subscription.next(Duration.ZERO);
+        assertEquals(4, deleted.sequence());
+        assertNull(deleted.state());
+        assertEquals(1L, deleted.device().id());
+    }
+
+    @Test
+    void testResumeFromBeforeTheReplayBufferIsAReset() throws Exception {
+        publishCreations(5);
+
+        DeviceChangeFeed.Subscription tooOld = deviceChangeFeed.subscribe(1L);
+        DeviceChangeFeed.Subscription fromAnotherRun = deviceChangeFeed.subscribe(42L);
+
+        assertTrue(tooOld.isReset());
+        assertEquals(5, tooOld.getStartSequence());
+        assertNull(tooOld.next(Duration.ZERO));
+        assertTrue(fromAnotherRun.isReset());
+        // The oldest change still buffered is 3, so resuming after 2 is complete
+        assertFalse(deviceChangeFeed.subscribe(2L).isReset());
+    }
+
+    @Test
+    void testSlowSubscriberIsEvicted() throws Exception {
+        DeviceChangeFeed.Subscription slow = deviceChangeFeed.subscribe(null);
+
+        publishCreations(3);
+
+        assertTrue(slow.isEnded());
+        assertEquals(1, slow.next(Duration.ZERO).sequence());
+        assertEquals(2, slow.next(Duration.ZERO).sequence());
+        assertNull(slow.next(Duration.ofSeconds(1)));
+        assertEquals(1.0, meterRegistry.get(DeviceChangeFeed.EVICTIONS_METRIC).counter().count());
+        assertEquals(0.0, meterRegistry.get(DeviceChangeFeed.SUBSCRIBERS_METRIC).gauge().value());
+
+        // It catches up from where it stopped
+        DeviceChangeFeed.Subscription resumed = deviceChangeFeed.subscribe(2L);
+        assertEquals(3, resumed.next(Duration.ZERO).sequence());
+    }
+
+    @Test
+    void testCloseEndsSubscriptions() throws Exception {
+        DeviceChangeFeed.Subscription subscription = deviceChangeFeed.subscribe(null);
+
+        deviceChangeFeed.close();
+
+        assertTrue(subscription.isEnded());
+        assertNull(subscription.next(Duration.ofSeconds(1)));
+    }
+
+    private void publishCreations(int count) {
+        for (long id = 1; id <= count; id++) {
+            deviceChangeFeed.onDeviceChanged(DeviceChangedEvent.created(device(id, Device.State.AVAILABLE)));
+        }
+    }
+
+    private static Device device(Long id, Device.State state) {
+        Device device = new Device(id, "Device" + id, "Brand1", state, LocalDateTime.now());
+        device.setVersion(0L);
+        return device;
+    }
+}
@@ -0,0 +1,131 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceChange;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.model.OutboxEvent;
+import com.glaydson.devicesapi.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class DeviceOutboxPublisherTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private InMemoryDeviceEventSink sink;
+    private SimpleMeterRegistry meterRegistry;
+    private DeviceOutboxPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        DevicesProperties properties = new DevicesProperties();
+        properties.getOutbox().setBatchSize(2);
+        properties.getOutbox().setMaxBatchesPerPoll(2);
+        sink = spy(new InMemoryDeviceEventSink(100));
+        meterRegistry = new SimpleMeterRegistry();
+        publisher = new DeviceOutboxPublisher(outboxEventRepository, sink, properties, transactionManager, meterRegistry);
+    }
+
+    @Test
+    void testPublishesInBatchesAndDeletesPublishedRows() {
+        List<OutboxEvent> first = List.of(outboxEvent(1L), outboxEvent(2L));
+        List<OutboxEvent> second = List.of(outboxEvent(3L));
+        when(outboxEventRepository.findByOrderByIdAsc(any(Limit.class))).thenReturn(first).thenReturn(second);
+
+        publisher.publishPending();
+
+        assertEquals(List.of(1L, 2L, 3L), sink.getChanges().stream().map(DeviceChange::sequence).toList());
+        verify(outboxEventRepository).deleteAllInBatch(first);
+        verify(outboxEventRepository).deleteAllInBatch(second);
+        assertEquals(3.0, meterRegistry.get(DeviceOutboxPublisher.PUBLISHED_METRIC).counter().count());
+        assertEquals(0.0, meterRegistry.get(DeviceOutboxPublisher.PENDING_METRIC).gauge().value());
+        // The outbox was drained, the backlog is known without querying it
+        verify(outboxEventRepository, never()).count();
+    }
+
+    @Test
+    void testChangeCarriesTheDevice() {
+        OutboxEvent deleted = outboxEvent(7L);
+        deleted.setType(OutboxEvent.Type.DELETED);
+        deleted.setPreviousState(Device.State.INACTIVE);
+        deleted.setState(null);
+        when(outboxEventRepository.findByOrderByIdAsc(any(Limit.class))).thenReturn(List.of(deleted));
+
+        publisher.publishPending();
+
+        DeviceChange change = sink.getChanges().getFirst();
+        assertEquals(DeviceChangedEvent.Type.DELETED, change.type());
+        assertEquals(Device.State.INACTIVE, change.previousState());
+        assertNull(change.state());
+        assertEquals(Device.State.INACTIVE, change.device().state());
+        assertEquals("Brand1", change.device().brand());
+    }
+
+    @Test
+    void testFailedBatchStaysInTheOutbox() {
+        OutboxEvent oldest = outboxEvent(1L);
+        oldest.setCreatedAt(Instant.now().minus(Duration.ofSeconds(30)));
+        when(outboxEventRepository.findByOrderByIdAsc(any(Limit.class))).thenReturn(List.of(oldest));
+        doThrow(new IllegalStateException("sink down")).when(sink).publish(anyList());
+        when(outboxEventRepository.count()).thenReturn(1L);
+        when(outboxEventRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.of(oldest));
+
+        publisher.publishPending();
+
+        verify(outboxEventRepository, never()).deleteAllInBatch(anyList());
+        verify(transactionManager).rollback(any());
+        assertEquals(1.0, meterRegistry.get(DeviceOutboxPublisher.FAILURES_METRIC).counter().count());
+        assertEquals(1.0, meterRegistry.get(DeviceOutboxPublisher.PENDING_METRIC).gauge().value());
+        assertTrue(meterRegistry.get(DeviceOutboxPublisher.LAG_METRIC).gauge().value() >= 30);
+    }
+
+    @Test
+    void testStopsAfterMaxBatchesPerPoll() {
+        when(outboxEventRepository.findByOrderByIdAsc(any(Limit.class))).thenAnswer(invocation ->
+                LongStream.rangeClosed(1, 2).mapToObj(DeviceOutboxPublisherTest::outboxEvent).toList());
+        when(outboxEventRepository.count()).thenReturn(10L);
+        when(outboxEventRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.of(outboxEvent(5L)));
+
+        publisher.publishPending();
+
+        verify(outboxEventRepository, times(2)).findByOrderByIdAsc(any(Limit.class));
+        assertEquals(10.0, meterRegistry.get(DeviceOutboxPublisher.PENDING_METRIC).gauge().value());
+    }
+
+    private static OutboxEvent outboxEvent(Long id) {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setDeviceId(id);
+        event.setType(OutboxEvent.Type.UPDATED);
+        event.setPreviousState(Device.State.AVAILABLE);
+        event.setState(Device.State.IN_USE);
+        event.setName("Device" + id);
+        event.setBrand("Brand1");
+        event.setDeviceCreationTime(LocalDateTime.now());
+        event.setDeviceVersion(1L);
+        event.setCreatedAt(Instant.now());
+        return event;
+    }
+}
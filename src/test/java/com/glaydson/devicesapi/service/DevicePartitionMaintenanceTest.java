@@ -0,0 +1,97 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class DevicePartitionMaintenanceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DevicePartitionMaintenance maintenance;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        DevicesProperties properties = new DevicesProperties();
+        properties.getPartitioning().setMonthsAhead(2);
+        maintenance = new DevicePartitionMaintenance(jdbcTemplate, transactionManager, properties);
+    }
+
+    @Test
+    void testCreatesMonthlyAndYearlyPartitions() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(LocalDateTime.class))).thenReturn(LocalDateTime.of(2024, 6, 1, 0, 0));
+
+        maintenance.createPartitions(YearMonth.of(2025, 11));
+
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(5)).execute(statements.capture());
+        assertEquals(List.of(
+                "CREATE TABLE IF NOT EXISTS devices_y2025m11 PARTITION OF devices FOR VALUES FROM ('2025-11-01') TO ('2025-12-01')",
+                "CREATE TABLE IF NOT EXISTS devices_y2025m12 PARTITION OF devices FOR VALUES FROM ('2025-12-01') TO ('2026-01-01')",
+                "CREATE TABLE IF NOT EXISTS devices_y2026m01 PARTITION OF devices FOR VALUES FROM ('2026-01-01') TO ('2026-02-01')",
+                "CREATE TABLE IF NOT EXISTS devices_archive_y2024 PARTITION OF devices_archive FOR VALUES FROM ('2024-01-01') TO ('2025-01-01')",
+                "CREATE TABLE IF NOT EXISTS devices_archive_y2025 PARTITION OF devices_archive FOR VALUES FROM ('2025-01-01') TO ('2026-01-01')"),
+                statements.getAllValues());
+    }
+
+    @Test
+    void testMovesRowsOutOfTheDefaultPartition() {
+        // Devices of November were written before its partition existed
+        when(jdbcTemplate.queryForObject(contains("FROM devices_default WHERE creation_time >= '2025-11-01'"), eq(Boolean.class)))
+                .thenReturn(true);
+        when(jdbcTemplate.update(startsWith("INSERT"))).thenReturn(4);
+
+        maintenance.createPartitions(YearMonth.of(2025, 11));
+
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(5)).execute(statements.capture());
+        assertEquals(List.of(
+                "ALTER TABLE devices DETACH PARTITION devices_default",
+                "CREATE TABLE IF NOT EXISTS devices_y2025m11 PARTITION OF devices FOR VALUES FROM ('2025-11-01') TO ('2025-12-01')",
+                "ALTER TABLE devices ATTACH PARTITION devices_default DEFAULT",
+                "CREATE TABLE IF NOT EXISTS devices_y2025m12 PARTITION OF devices FOR VALUES FROM ('2025-12-01') TO ('2026-01-01')",
+                "CREATE TABLE IF NOT EXISTS devices_y2026m01 PARTITION OF devices FOR VALUES FROM ('2026-01-01') TO ('2026-02-01')"),
+                statements.getAllValues());
+        verify(jdbcTemplate).update("INSERT INTO devices SELECT * FROM devices_default"
+                + " WHERE creation_time >= '2025-11-01' AND creation_time < '2025-12-01'");
+        verify(jdbcTemplate).update("DELETE FROM devices_default"
+                + " WHERE creation_time >= '2025-11-01' AND creation_time < '2025-12-01'");
+        // In one transaction, the default partition is never left detached
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testFailedPartitionDoesNotStopTheOthers() {
+        doThrow(new DataIntegrityViolationException("default partition holds rows of that range"))
+                .when(jdbcTemplate).execute(contains("devices_y2025m11"));
+
+        maintenance.createPartitions(YearMonth.of(2025, 11));
+
+        verify(jdbcTemplate).execute(contains("devices_y2026m01"));
+        // No devices yet, nothing to archive
+        verify(jdbcTemplate, never()).execute(contains("devices_archive"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DevicePage;
+import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.model.Device;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Exercises the cache annotations of DeviceQueryCache through a Spring proxy
+@SpringJUnitConfig
+class DeviceQueryCacheTest {
+
+    @Configuration
+    @EnableCaching
+    static class Config {
+        @Bean
+        CacheManager cacheManager() {
+            return new CaffeineCacheManager(DeviceQueryCache.QUERIES_CACHE);
+        }
+
+        @Bean
+        DeviceService deviceService() {
+            return mock(DeviceService.class);
+        }
+
+        @Bean
+        DeviceQueryCache deviceQueryCache(DeviceService deviceService) {
+            return new DeviceQueryCache(deviceService, new DevicesProperties());
+        }
+    }
+
+    @Autowired
+    private DeviceQueryCache deviceQueryCache;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private final DeviceCollectionVersion collectionVersion = new DeviceCollectionVersion();
+
+    @BeforeEach
+    void setUp() {
+        reset(deviceService);
+        cacheManager.getCache(DeviceQueryCache.QUERIES_CACHE).clear();
+    }
+
+    @Test
+    void testSearchIsCachedUntilTheVersionMoves() {
+        when(deviceService.getDevicesByCriteria(any(), any())).thenReturn(List.of());
+
+        deviceQueryCache.getDevicesByCriteria(collectionVersion.current(),
+                new DeviceSearchCriteria("Brand1", Device.State.AVAILABLE), DeviceField.all());
+        deviceQueryCache.getDevicesByCriteria(collectionVersion.current(),
+                new DeviceSearchCriteria("Brand1", Device.State.AVAILABLE), DeviceField.all());
+        // Other criteria or other fields are other entries
+        deviceQueryCache.getDevicesByCriteria(collectionVersion.current(),
+                new DeviceSearchCriteria("Brand2", Device.State.AVAILABLE), DeviceField.all());
+        deviceQueryCache.getDevicesByCriteria(collectionVersion.current(),
+                new DeviceSearchCriteria("Brand1", Device.State.AVAILABLE), DeviceField.parse("name"));
+        verify(deviceService, times(3)).getDevicesByCriteria(any(), any());
+
+        collectionVersion.onDeviceChanged(DeviceChangedEvent.deleted(new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, null)));
+        deviceQueryCache.getDevicesByCriteria(collectionVersion.current(),
+                new DeviceSearchCriteria("Brand1", Device.State.AVAILABLE), DeviceField.all());
+        verify(deviceService, times(4)).getDevicesByCriteria(any(), any());
+    }
+
+    @Test
+    void testPagesAreCachedByCursorAndLimit() {
+        when(deviceService.getDevicesPage(any(), any(), any())).thenReturn(new DevicePage(List.of(), null));
+        DeviceCollectionVersion.Watermark watermark = collectionVersion.current();
+
+        DevicePage first = deviceQueryCache.getDevicesPage(watermark, null, 10, DeviceField.all());
+        assertSame(first, deviceQueryCache.getDevicesPage(watermark, null, 10, DeviceField.all()));
+        deviceQueryCache.getDevicesPage(watermark, null, 20, DeviceField.all());
+
+        verify(deviceService, times(1)).getDevicesPage(isNull(), eq(10), eq(DeviceField.all()));
+        verify(deviceService, times(1)).getDevicesPage(isNull(), eq(20), eq(DeviceField.all()));
+    }
+
+    @Test
+    void testEveryWriteMovesTheVersion() {
+        DeviceCollectionVersion.Watermark before = collectionVersion.current();
+        Device device = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, null);
+
+        collectionVersion.onDeviceChanged(DeviceChangedEvent.created(device));
+        collectionVersion.onDeviceChanged(DeviceChangedEvent.deleted(device));
+
+        DeviceCollectionVersion.Watermark after = collectionVersion.current();
+        assertEquals(before.epoch(), after.epoch());
+        assertEquals(before.version() + 2, after.version());
+        assertFalse(after.lastModified().isBefore(before.lastModified()));
+    }
+}
@@ -0,0 +1,148 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.exception.ResourceNotFoundException;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// Exercises the cache annotations of DeviceService through a Spring proxy
+@SpringJUnitConfig
+class DeviceServiceCacheTest {
+
+    @Configuration
+    @EnableCaching
+    static class Config {
+        @Bean
+        CacheManager cacheManager() {
+            return new CaffeineCacheManager(DeviceService.DEVICES_CACHE);
+        }
+
+        @Bean
+        DeviceStore deviceStore() {
+            return mock(DeviceStore.class);
+        }
+
+        @Bean
+        DeviceService deviceService(DeviceStore deviceStore) {
+            return new DeviceService(deviceStore, new DevicesProperties(), event -> {
+            }, DeviceServiceTest.directLoader(deviceStore));
+        }
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceStore deviceStore;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Device device1;
+
+    @BeforeEach
+    void setUp() {
+        reset(deviceStore);
+        cacheManager.getCache(DeviceService.DEVICES_CACHE).clear();
+        device1 = new Device(1L, "Device1", "Brand1", Device.State.AVAILABLE, LocalDateTime.now());
+    }
+
+    @Test
+    void testGetDeviceByIdIsCached() {
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
+        deviceService.getDeviceById(1L);
+        Device cached = deviceService.getDeviceById(1L);
+        assertEquals("Device1", cached.getName());
+        verify(deviceStore, times(1)).findById(1L);
+    }
+
+    @Test
+    void testNotFoundIsNotCached() {
+        when(deviceStore.findById(1L)).thenReturn(Optional.empty());
+        assertThrows(ResourceNotFoundException.class, () -> deviceService.getDeviceById(1L));
+        assertThrows(ResourceNotFoundException.class, () -> deviceService.getDeviceById(1L));
+        verify(deviceStore, times(2)).findById(1L);
+    }
+
+    @Test
+    void testUpdateDeviceEvictsCache() {
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
+        deviceService.getDeviceById(1L);
+
+        Device updated = new Device(1L, "Device1", "Brand1", Device.State.IN_USE, device1.getCreationTime());
+        when(deviceStore.saveAndFlush(any(Device.class))).thenReturn(updated);
+        deviceService.updateDevice(1L, new DeviceRequest("Device1", "Brand1", Device.State.IN_USE), null);
+
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(updated));
+        assertEquals(Device.State.IN_USE, deviceService.getDeviceById(1L).getState());
+        // first read, the read inside updateDevice, and the reload after the eviction
+        verify(deviceStore, times(3)).findById(1L);
+    }
+
+    @Test
+    void testCreateDevicePopulatesCache() {
+        when(deviceStore.save(any(Device.class))).thenReturn(device1);
+        deviceService.createDevice(new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE));
+
+        assertEquals("Device1", deviceService.getDeviceById(1L).getName());
+        verify(deviceStore, never()).findById(1L);
+    }
+
+    @Test
+    void testDeleteDeviceEvictsCache() {
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
+        deviceService.getDeviceById(1L);
+        deviceService.deleteDevice(1L, null);
+
+        when(deviceStore.findById(1L)).thenReturn(Optional.empty());
+        assertThrows(ResourceNotFoundException.class, () -> deviceService.getDeviceById(1L));
+    }
+
+    @Test
+    void testConcurrentMissesLoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        when(deviceStore.findById(1L)).thenAnswer(invocation -> {
+            loading.await();
+            return Optional.of(device1);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Device>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> deviceService.getDeviceById(1L)));
+            }
+            Thread.sleep(100);
+            loading.countDown();
+            for (Future<Device> result : results) {
+                assertEquals("Device1", result.get().getName());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(deviceStore, times(1)).findById(1L);
+    }
+}
@@ -1,32 +1,50 @@
 package com.glaydson.devicesapi.service;
 
+import com.glaydson.devicesapi.config.DevicesProperties;
+import com.glaydson.devicesapi.dto.DeviceField;
+import com.glaydson.devicesapi.dto.DevicePage;
 import com.glaydson.devicesapi.dto.DeviceRequest;
+import com.glaydson.devicesapi.dto.DeviceSearchBatchResult;
 import com.glaydson.devicesapi.dto.DeviceSearchCriteria;
+import com.glaydson.devicesapi.dto.DeviceView;
 import com.glaydson.devicesapi.exception.DeviceInUseException;
+import com.glaydson.devicesapi.exception.DeviceUnavailableException;
+import com.glaydson.devicesapi.exception.InvalidCursorException;
+import com.glaydson.devicesapi.exception.InvalidSearchException;
 import com.glaydson.devicesapi.exception.MissingFieldsException;
+import com.glaydson.devicesapi.exception.PreconditionFailedException;
 import com.glaydson.devicesapi.exception.ResourceNotFoundException;
 import com.glaydson.devicesapi.model.Device;
-import com.glaydson.devicesapi.repository.DeviceRepository;
+import com.glaydson.devicesapi.repository.DeviceSpecifications;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class DeviceServiceTest {
 
     @Mock
-    private DeviceRepository deviceRepository;
+    private DeviceStore deviceStore;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
-    @InjectMocks
     private DeviceService deviceService;
 
     private Device device1;
@@ -37,6 +55,7 @@ class DeviceServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        deviceService = new DeviceService(deviceStore, new DevicesProperties(), eventPublisher, directLoader(deviceStore));
         device1 = new Device("Device1", "Brand1", Device.State.AVAILABLE);
         device2 = new Device(2L, "Device2", "Brand2", Device.State.IN_USE, LocalDateTime.now());
         device3 = new Device(3L, "Device3", "Brand3", Device.State.INACTIVE, LocalDateTime.now());
@@ -45,7 +64,7 @@ class DeviceServiceTest {
 
     @Test
     void testCreateDevice() {
-        when(deviceRepository.save(any(Device.class))).thenReturn(device1);
+        when(deviceStore.save(any(Device.class))).thenReturn(device1);
         DeviceRequest deviceRequest = new DeviceRequest("Device1", "Brand1", Device.State.AVAILABLE);
         Device createdDevice = deviceService.createDevice(deviceRequest);
         assertNotNull(createdDevice);
@@ -62,7 +81,7 @@ class DeviceServiceTest {
 
     @Test
     void testGetDeviceById() {
-        when(deviceRepository.findById(1L)).thenReturn(Optional.of(device1));
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
         Device foundDevice = deviceService.getDeviceById(1L);
         assertNotNull(foundDevice);
         assertEquals(device1.getName(), foundDevice.getName());
@@ -70,70 +89,294 @@ class DeviceServiceTest {
 
     @Test
     void testGetDeviceByIdNotFound() {
-        when(deviceRepository.findById(1L)).thenReturn(Optional.empty());
+        when(deviceStore.findById(1L)).thenReturn(Optional.empty());
         assertThrows(ResourceNotFoundException.class, () -> deviceService.getDeviceById(1L));
     }
 
     @Test
+    void testGetDevicesPageReturnsNextCursor() {
+        when(deviceStore.findViewsAfter(0L, 3, DeviceField.all()))
+                .thenReturn(List.of(DeviceView.of(device2), DeviceView.of(device3), DeviceView.of(device4)));
+        DevicePage page = deviceService.getDevicesPage(null, 2, DeviceField.all());
+        assertEquals(2, page.getDevices().size());
+        assertNotNull(page.getNextCursor());
+
+        when(deviceStore.findViewsAfter(3L, 3, DeviceField.all())).thenReturn(List.of(DeviceView.of(device4)));
+        DevicePage next = deviceService.getDevicesPage(page.getNextCursor(), 2, DeviceField.all());
+        assertEquals(1, next.getDevices().size());
+        assertEquals(4L, next.getDevices().getFirst().id());
+        assertNull(next.getNextCursor());
+    }
+
+    @Test
+    void testGetDevicesPageClampsLimit() {
+        DevicesProperties properties = new DevicesProperties();
+        int maxLimit = properties.getPagination().getMaxLimit();
+        when(deviceStore.findViewsAfter(0L, maxLimit + 1, DeviceField.all())).thenReturn(List.of(DeviceView.of(device2)));
+        DevicePage page = deviceService.getDevicesPage(null, maxLimit * 10, DeviceField.all());
+        assertEquals(1, page.getDevices().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetDevicesPageInvalidCursor() {
+        assertThrows(InvalidCursorException.class, () -> deviceService.getDevicesPage("not-a-cursor", 10, DeviceField.all()));
+    }
+
+    @Test
+    void testStreamAllDevicesInChunks() {
+        DevicesProperties properties = new DevicesProperties();
+        properties.getPagination().setStreamChunkSize(2);
+        deviceService = new DeviceService(deviceStore, properties, eventPublisher, directLoader(deviceStore));
+        when(deviceStore.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(List.of(device2, device3));
+        when(deviceStore.findByIdGreaterThanOrderByIdAsc(3L, Limit.of(2))).thenReturn(List.of(device4));
+
+        List<List<Device>> chunks = new ArrayList<>();
+        deviceService.streamAllDevices(chunks::add);
+
+        assertEquals(2, chunks.size());
+        assertEquals(4L, chunks.get(1).getFirst().getId());
+        verify(deviceStore, never()).findByIdGreaterThanOrderByIdAsc(4L, Limit.of(2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
     void testSearchDevicesByBrandAndState() {
-        when(deviceRepository.findByBrandAndState("Brand1", null)).thenReturn(List.of(device1));
-        when(deviceRepository.findByBrandAndState("Brand2", Device.State.IN_USE)).thenReturn(List.of(device2));
-        when(deviceRepository.findByBrand("Brand1")).thenReturn(List.of(device1));
-        when(deviceRepository.findByState(Device.State.AVAILABLE)).thenReturn(List.of(device1, device4));
-        List<Device> devices = deviceService.getDevicesByCriteria(new DeviceSearchCriteria("Brand1", null));
+        Set<DeviceField> fields = DeviceField.parse("brand");
+        when(deviceStore.findViews(any(DeviceSpecifications.Filter.class), eq(fields))).thenReturn(List.of(DeviceView.of(device2)));
+        List<DeviceView> devices = deviceService.getDevicesByCriteria(new DeviceSearchCriteria("Brand2", Device.State.IN_USE), fields);
         assertEquals(1, devices.size());
-        assertEquals("Brand1", devices.getFirst().getBrand());
+        assertEquals("Brand2", devices.getFirst().brand());
+        verify(deviceStore, times(1)).findViews(any(DeviceSpecifications.Filter.class), eq(fields));
+    }
 
-        devices = deviceService.getDevicesByCriteria(new DeviceSearchCriteria("Brand2", Device.State.IN_USE));
-        assertEquals(1, devices.size());
-        assertEquals("Brand2", devices.getFirst().getBrand());
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetDevicesByIdsKeepsTheRequestedOrder() {
+        Set<DeviceField> fields = DeviceField.all();
+        when(deviceStore.findViews(any(DeviceSpecifications.Filter.class), eq(fields)))
+                .thenReturn(List.of(DeviceView.of(device2), DeviceView.of(device3), DeviceView.of(device4)));
 
-        devices = deviceService.getDevicesByCriteria(new DeviceSearchCriteria("Brand1", null));
-        assertEquals(1, devices.size());
-        assertEquals("Brand1", devices.getFirst().getBrand());
+        List<DeviceView> devices = deviceService.getDevicesByIds(List.of(4L, 2L, 404L, 3L, 4L), fields);
+
+        assertEquals(List.of(4L, 2L, 3L), devices.stream().map(DeviceView::id).toList());
+        verify(deviceStore, times(1)).findViews(any(DeviceSpecifications.Filter.class), eq(fields));
+    }
+
+    @Test
+    void testGetDevicesByIdsIsBounded() {
+        DevicesProperties properties = new DevicesProperties();
+        properties.getPagination().setMaxLimit(2);
+        deviceService = new DeviceService(deviceStore, properties, eventPublisher, directLoader(deviceStore));
+
+        assertThrows(InvalidSearchException.class, () -> deviceService.getDevicesByIds(List.of(1L, 2L, 3L), DeviceField.all()));
+        verifyNoInteractions(deviceStore);
+    }
 
-        devices = deviceService.getDevicesByCriteria(new DeviceSearchCriteria(null, Device.State.AVAILABLE));
-        assertEquals(2, devices.size());
+    @Test
+    void testSearchRejectsEmptyCreationRange() {
+        LocalDateTime time = LocalDateTime.of(2023, 1, 5, 0, 0);
+        DeviceSearchCriteria criteria = new DeviceSearchCriteria(null, null, time, time);
+        InvalidSearchException exception = assertThrows(InvalidSearchException.class,
+                () -> deviceService.getDevicesByCriteria(criteria, DeviceField.all()));
+        assertEquals(DeviceService.INVALID_CREATION_RANGE, exception.getMessage());
+        verifyNoInteractions(deviceStore);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchSearchRunsOneQueryAndGroupsTheResults() {
+        LocalDateTime created = LocalDateTime.of(2023, 1, 5, 0, 0);
+        Device device5 = new Device(5L, "Device5", "Brand2", Device.State.AVAILABLE, created);
+        when(deviceStore.findViews(any(DeviceSpecifications.Filter.class), any()))
+                .thenReturn(List.of(DeviceView.of(device2), DeviceView.of(device3), DeviceView.of(device5)));
+        DeviceSearchCriteria byBrand = new DeviceSearchCriteria("Brand2", null);
+        DeviceSearchCriteria byBrandAndState = new DeviceSearchCriteria("Brand2", Device.State.IN_USE);
+        DeviceSearchCriteria byState = new DeviceSearchCriteria(null, Device.State.INACTIVE);
+        DeviceSearchCriteria byRange = new DeviceSearchCriteria(null, null, created, created.plusDays(1));
+
+        List<DeviceSearchBatchResult> results = deviceService.getDevicesByCriteriaBatch(
+                List.of(byBrand, byBrandAndState, byState, byRange, new DeviceSearchCriteria("Brand2", null)),
+                DeviceField.parse("name"));
+
+        assertEquals(5, results.size());
+        assertEquals(List.of(2L, 5L), ids(results.get(0)));
+        assertEquals(List.of(2L), ids(results.get(1)));
+        assertEquals(List.of(3L), ids(results.get(2)));
+        assertEquals(List.of(5L), ids(results.get(3)));
+        // A duplicate criterion gets the same devices
+        assertEquals(List.of(2L, 5L), ids(results.get(4)));
+        // The columns read to tell the criteria apart are not returned
+        assertNull(results.getFirst().getDevices().getFirst().brand());
+        assertEquals("Device2", results.getFirst().getDevices().getFirst().name());
+        verify(deviceStore, times(1)).findViews(any(DeviceSpecifications.Filter.class),
+                eq(Set.of(DeviceField.ID, DeviceField.NAME, DeviceField.BRAND, DeviceField.STATE, DeviceField.CREATION_TIME)));
+    }
+
+    @Test
+    void testBatchSearchIsBounded() {
+        DevicesProperties properties = new DevicesProperties();
+        properties.getSearch().setMaxBatchCriteria(1);
+        deviceService = new DeviceService(deviceStore, properties, eventPublisher, directLoader(deviceStore));
+        List<DeviceSearchCriteria> withNull = new ArrayList<>();
+        withNull.add(null);
+
+        assertThrows(InvalidSearchException.class, () -> deviceService.getDevicesByCriteriaBatch(List.of(), DeviceField.all()));
+        assertThrows(InvalidSearchException.class, () -> deviceService.getDevicesByCriteriaBatch(
+                List.of(new DeviceSearchCriteria("Brand1", null), new DeviceSearchCriteria("Brand2", null)), DeviceField.all()));
+        assertThrows(InvalidSearchException.class, () -> deviceService.getDevicesByCriteriaBatch(withNull, DeviceField.all()));
+        verifyNoInteractions(deviceStore);
+    }
 
+    private static List<Long> ids(DeviceSearchBatchResult result) {
+        return result.getDevices().stream().map(DeviceView::id).toList();
     }
 
     @Test
     void testUpdateDevice() {
-        when(deviceRepository.findById(1L)).thenReturn(Optional.of(device1));
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
         Device savedDevice = new Device(1L, "UpdatedName", device1.getBrand(), device1.getState(), device1.getCreationTime());
-        when(deviceRepository.save(any(Device.class))).thenReturn(savedDevice);
+        when(deviceStore.saveAndFlush(any(Device.class))).thenReturn(savedDevice);
         DeviceRequest preUpdated = new DeviceRequest("UpdatedName", device1.getBrand(), Device.State.IN_USE);
-        Device updatedDevice = deviceService.updateDevice(1L, preUpdated);
+        Device updatedDevice = deviceService.updateDevice(1L, preUpdated, null);
         assertEquals("UpdatedName", updatedDevice.getName());
     }
 
     @Test
     void testUpdateDeviceInUse() {
-        when(deviceRepository.findById(2L)).thenReturn(Optional.of(device2));
+        when(deviceStore.findById(2L)).thenReturn(Optional.of(device2));
         DeviceRequest preUpdated = new DeviceRequest( "UpdatedName", device2.getBrand(), Device.State.IN_USE);
-        assertThrows(DeviceInUseException.class, () -> deviceService.updateDevice(2L, preUpdated));
+        assertThrows(DeviceInUseException.class, () -> deviceService.updateDevice(2L, preUpdated, null));
         device2 = deviceService.getDeviceById(2L);
         assertEquals("Device2", device2.getName());
     }
 
+    @Test
+    void testUpdateDeviceWithStaleVersion() {
+        device4.setVersion(3L);
+        when(deviceStore.findById(4L)).thenReturn(Optional.of(device4));
+        DeviceRequest preUpdated = new DeviceRequest("UpdatedName", device4.getBrand(), Device.State.AVAILABLE);
+        assertThrows(PreconditionFailedException.class, () -> deviceService.updateDevice(4L, preUpdated, 2L));
+        verify(deviceStore, never()).saveAndFlush(any(Device.class));
+    }
+
+    @Test
+    void testUpdateDeviceWithMatchingVersion() {
+        device4.setVersion(3L);
+        when(deviceStore.findById(4L)).thenReturn(Optional.of(device4));
+        when(deviceStore.saveAndFlush(device4)).thenReturn(device4);
+        DeviceRequest preUpdated = new DeviceRequest("UpdatedName", device4.getBrand(), Device.State.AVAILABLE);
+        assertEquals("UpdatedName", deviceService.updateDevice(4L, preUpdated, 3L).getName());
+    }
+
+    @Test
+    void testUpdateDevicePublishesPreviousAndNewState() {
+        when(deviceStore.findById(4L)).thenReturn(Optional.of(device4));
+        when(deviceStore.saveAndFlush(device4)).thenReturn(device4);
+        deviceService.updateDevice(4L, new DeviceRequest("Device4", "Brand4", Device.State.IN_USE), null);
+
+        ArgumentCaptor<DeviceChangedEvent> event = ArgumentCaptor.forClass(DeviceChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(DeviceChangedEvent.Type.UPDATED, event.getValue().type());
+        assertEquals(Device.State.AVAILABLE, event.getValue().before().getState());
+        assertEquals(Device.State.IN_USE, event.getValue().after().getState());
+    }
+
+    @Test
+    void testDeleteDeviceWithStaleVersion() {
+        device4.setVersion(3L);
+        when(deviceStore.findById(4L)).thenReturn(Optional.of(device4));
+        assertThrows(PreconditionFailedException.class, () -> deviceService.deleteDevice(4L, 1L));
+        verify(deviceStore, never()).delete(any(Device.class));
+    }
+
     @Test
     void testDeleteDevice() {
-        when(deviceRepository.findById(1L)).thenReturn(Optional.of(device1));
-        doNothing().when(deviceRepository).deleteById(1L);
-        deviceService.deleteDevice(1L);
-        verify(deviceRepository, times(1)).deleteById(1L);
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
+        deviceService.deleteDevice(1L, null);
+        verify(deviceStore, times(1)).delete(device1);
     }
 
     @Test
     void testDeleteDeviceInUse() {
         device1.setState(Device.State.IN_USE);
-        when(deviceRepository.findById(1L)).thenReturn(Optional.of(device1));
-        assertThrows(DeviceInUseException.class, () -> deviceService.deleteDevice(1L));
+        when(deviceStore.findById(1L)).thenReturn(Optional.of(device1));
+        assertThrows(DeviceInUseException.class, () -> deviceService.deleteDevice(1L, null));
     }
 
     @Test
     void testDeleteDeviceNotFound() {
-        when(deviceRepository.findById(1L)).thenReturn(Optional.empty());
-        assertThrows(ResourceNotFoundException.class, () -> deviceService.deleteDevice(1L));
+        when(deviceStore.findById(1L)).thenReturn(Optional.empty());
+        assertThrows(ResourceNotFoundException.class, () -> deviceService.deleteDevice(1L, null));
+    }
+
+    @Test
+    void testCheckOutDevice() {
+        Device checkedOut = new Device(4L, "Device4", "Brand4", Device.State.IN_USE, LocalDateTime.now());
+        checkedOut.setVersion(3L);
+        when(deviceStore.updateStateIf(4L, Device.State.AVAILABLE, Device.State.IN_USE)).thenReturn(1);
+        when(deviceStore.findById(4L)).thenReturn(Optional.of(checkedOut));
+
+        Device device = deviceService.checkOutDevice(4L);
+
+        assertEquals(Device.State.IN_USE, device.getState());
+        ArgumentCaptor<DeviceChangedEvent> event = ArgumentCaptor.forClass(DeviceChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(Device.State.AVAILABLE, event.getValue().before().getState());
+        assertEquals(2L, event.getValue().before().getVersion());
+        assertEquals(Device.State.IN_USE, event.getValue().after().getState());
+        verify(deviceStore, never()).save(any(Device.class));
+    }
+
+    @Test
+    void testCheckOutDeviceInUse() {
+        when(deviceStore.updateStateIf(2L, Device.State.AVAILABLE, Device.State.IN_USE)).thenReturn(0);
+        when(deviceStore.findById(2L)).thenReturn(Optional.of(device2));
+
+        DeviceUnavailableException exception = assertThrows(DeviceUnavailableException.class,
+                () -> deviceService.checkOutDevice(2L));
+        assertEquals("Device 2 is IN_USE, not AVAILABLE", exception.getMessage());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void testCheckInDeviceNotFound() {
+        when(deviceStore.updateStateIf(99L, Device.State.IN_USE, Device.State.AVAILABLE)).thenReturn(0);
+        when(deviceStore.findById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> deviceService.checkInDevice(99L));
+    }
+
+    @Test
+    void testCheckOutAnyDevice() {
+        device4.setState(Device.State.IN_USE);
+        device4.setVersion(1L);
+        when(deviceStore.updateFirstStateIf("Brand4", Device.State.AVAILABLE, Device.State.IN_USE))
+                .thenReturn(Optional.of(device4));
+
+        Device device = deviceService.checkOutAnyDevice("Brand4");
+
+        assertEquals(4L, device.getId());
+        assertEquals(Device.State.IN_USE, device.getState());
+        ArgumentCaptor<DeviceChangedEvent> event = ArgumentCaptor.forClass(DeviceChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(Device.State.AVAILABLE, event.getValue().before().getState());
+        assertEquals(0L, event.getValue().before().getVersion());
+        assertEquals(Device.State.IN_USE, event.getValue().after().getState());
+    }
+
+    @Test
+    void testCheckOutAnyDeviceNoneAvailable() {
+        when(deviceStore.updateFirstStateIf("Brand2", Device.State.AVAILABLE, Device.State.IN_USE))
+                .thenReturn(Optional.empty());
+
+        assertThrows(DeviceUnavailableException.class, () -> deviceService.checkOutAnyDevice("Brand2"));
+    }
+
+    // Without batching, lookups are plain findById calls
+    static DeviceBatchLoader directLoader(DeviceStore deviceStore) {
+        DevicesProperties properties = new DevicesProperties();
+        properties.getLoader().setEnabled(false);
+        return new DeviceBatchLoader(deviceStore, properties, new SimpleMeterRegistry());
     }
-}
\ No newline at end of file
+}
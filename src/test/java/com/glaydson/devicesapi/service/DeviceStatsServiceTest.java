@@ -0,0 +1,104 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceStats;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeviceStatsServiceTest {
+
+    @Mock
+    private DeviceStore deviceStore;
+
+    private DeviceStatsService deviceStatsService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deviceStatsService = new DeviceStatsService(deviceStore);
+        when(deviceStore.countByBrandAndState()).thenReturn(List.of(
+                count("Brand1", Device.State.AVAILABLE, 2),
+                count("Brand1", Device.State.IN_USE, 1),
+                count("Brand2", Device.State.AVAILABLE, 3)));
+    }
+
+    @Test
+    void testFirstReadReconciles() {
+        DeviceStats stats = deviceStatsService.getStats();
+        assertEquals(6, stats.getTotal());
+        assertEquals(5, stats.getByState().get(Device.State.AVAILABLE));
+        assertEquals(3, stats.getByBrand().get("Brand1"));
+        assertEquals(1, stats.getByBrandAndState().get("Brand1").get(Device.State.IN_USE));
+        assertNotNull(stats.getReconciledAt());
+    }
+
+    @Test
+    void testChangesMoveCountersWithoutQuerying() {
+        deviceStatsService.getStats();
+
+        deviceStatsService.onDeviceChanged(DeviceChangedEvent.created(device(1L, "Brand3", Device.State.INACTIVE)));
+        deviceStatsService.onDeviceChanged(DeviceChangedEvent.updated(device(2L, "Brand1", Device.State.IN_USE),
+                device(2L, "Brand1", Device.State.AVAILABLE)));
+        deviceStatsService.onDeviceChanged(DeviceChangedEvent.deleted(device(3L, "Brand2", Device.State.AVAILABLE)));
+
+        DeviceStats stats = deviceStatsService.getStats();
+        assertEquals(6, stats.getTotal());
+        assertEquals(5, stats.getByState().get(Device.State.AVAILABLE));
+        assertNull(stats.getByState().get(Device.State.IN_USE));
+        assertEquals(1, stats.getByBrand().get("Brand3"));
+        assertEquals(2, stats.getByBrand().get("Brand2"));
+        assertEquals(3, stats.getByBrandAndState().get("Brand1").get(Device.State.AVAILABLE));
+        verify(deviceStore, times(1)).countByBrandAndState();
+    }
+
+    @Test
+    void testReadsBetweenChangesReuseTheSnapshot() {
+        assertSame(deviceStatsService.getStats(), deviceStatsService.getStats());
+    }
+
+    @Test
+    void testReconcileReplacesDriftedCounters() {
+        deviceStatsService.getStats();
+        // A change the database never saw, e.g. its transaction was rolled back on another path
+        deviceStatsService.onDeviceChanged(DeviceChangedEvent.created(device(1L, "Brand9", Device.State.AVAILABLE)));
+        assertEquals(7, deviceStatsService.getStats().getTotal());
+
+        deviceStatsService.reconcile();
+
+        DeviceStats stats = deviceStatsService.getStats();
+        assertEquals(6, stats.getTotal());
+        assertFalse(stats.getByBrand().containsKey("Brand9"));
+    }
+
+    private static Device device(Long id, String brand, Device.State state) {
+        return new Device(id, "Device" + id, brand, state, LocalDateTime.now());
+    }
+
+    private static DeviceStore.BrandStateCount count(String brand, Device.State state, long count) {
+        return new DeviceStore.BrandStateCount() {
+            @Override
+            public String getBrand() {
+                return brand;
+            }
+
+            @Override
+            public Device.State getState() {
+                return state;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package com.glaydson.devicesapi.service;
+
+import com.glaydson.devicesapi.dto.DeviceTextSearchMode;
+import com.glaydson.devicesapi.dto.DeviceView;
+import com.glaydson.devicesapi.model.Device;
+import com.glaydson.devicesapi.repository.DeviceStore;
+import com.glaydson.devicesapi.repository.DeviceTextIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InMemoryDeviceTextIndexTest {
+
+    @Mock
+    private DeviceStore deviceStore;
+
+    private InMemoryDeviceTextIndex index;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(deviceStore.findViewsAfter(eq(0L), anyInt(), any())).thenReturn(List.of(
+                view(1L, "iPhone 15", "Apple"),
+                view(2L, "Galaxy S24", "Samsung"),
+                view(3L, "iPad Pro", "Apple"),
+                view(4L, "Apple Studio Display", "Apple")));
+        index = new InMemoryDeviceTextIndex(deviceStore);
+    }
+
+    @Test
+    void testPrefixSearch() {
+        assertEquals(List.of(1L, 3L), search("ip", DeviceTextSearchMode.PREFIX));
+        assertEquals(List.of(1L), search("app iph", DeviceTextSearchMode.PREFIX));
+        assertEquals(List.of(), search("app gal", DeviceTextSearchMode.PREFIX));
+    }
+
+    @Test
+    void testTokensSearchMatchesWholeWords() {
+        assertEquals(List.of(2L), search("samsung galaxy", DeviceTextSearchMode.TOKENS));
+        assertEquals(List.of(), search("sams", DeviceTextSearchMode.TOKENS));
+    }
+
+    @Test
+    void testRanksWholeWordsAndNamePrefixFirst() {
+        // Every device of the brand matches, the one named after it comes first
+        assertEquals(List.of(4L, 1L, 3L), search("apple", DeviceTextSearchMode.TOKENS));
+    }
+
+    @Test
+    void testPagination() {
+        assertEquals(List.of(1L, 3L), index.search(List.of("apple"), DeviceTextSearchMode.PREFIX, 1, 2));
+    }
+
+    @Test
+    void testFollowsCommittedChanges() {
+        search("apple", DeviceTextSearchMode.TOKENS);
+
+        index.onDeviceChanged(DeviceChangedEvent.updated(device(2L, "Galaxy S24", "Samsung"), device(2L, "Galaxy Tab", "Samsung")));
+        index.onDeviceChanged(DeviceChangedEvent.deleted(device(3L, "iPad Pro", "Apple")));
+        index.onDeviceChanged(DeviceChangedEvent.created(device(5L, "Pixel 9", "Google")));
+
+        assertEquals(List.of(), search("s24", DeviceTextSearchMode.PREFIX));
+        assertEquals(List.of(2L), search("tab", DeviceTextSearchMode.PREFIX));
+        assertEquals(List.of(1L), search("ip", DeviceTextSearchMode.PREFIX));
+        assertEquals(List.of(5L), search("pix", DeviceTextSearchMode.PREFIX));
+        // Built once, on the first search
+        verify(deviceStore).findViewsAfter(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void testConcurrentFirstSearchesBuildOnce() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(deviceStore.findViewsAfter(eq(0L), anyInt(), any())).thenAnswer(invocation -> {
+            reading.countDown();
+            release.await();
+            return List.of(view(1L, "iPhone 15", "Apple"), view(2L, "Galaxy S24", "Samsung"));
+        });
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<List<Long>> first = executor.submit(() -> search("apple", DeviceTextSearchMode.TOKENS));
+            reading.await();
+            Future<List<Long>> second = executor.submit(() -> search("apple", DeviceTextSearchMode.TOKENS));
+            // Committed while the first build reads, queued and applied on top of it
+            index.onDeviceChanged(DeviceChangedEvent.created(device(5L, "Apple Watch", "Apple")));
+            release.countDown();
+
+            assertEquals(List.of(5L, 1L), first.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of(5L, 1L), second.get(5, TimeUnit.SECONDS));
+        }
+        verify(deviceStore).findViewsAfter(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void testFailedBuildIsRetriedAndDoesNotHoldBackChanges() {
+        when(deviceStore.findViewsAfter(eq(0L), anyInt(), any()))
+                .thenThrow(new QueryTimeoutException("Statement timed out"))
+                .thenReturn(List.of(view(1L, "iPhone 15", "Apple")));
+
+        assertThrows(QueryTimeoutException.class, () -> search("iph", DeviceTextSearchMode.PREFIX));
+        index.onDeviceChanged(DeviceChangedEvent.created(device(5L, "Pixel 9", "Google")));
+
+        assertEquals(List.of(1L), search("iph", DeviceTextSearchMode.PREFIX));
+        assertEquals(List.of(5L), search("pix", DeviceTextSearchMode.PREFIX));
+    }
+
+    @Test
+    void testWords() {
+        assertEquals(List.of("apple", "iphone", "15", "pro"), DeviceTextIndex.words(" Apple iPhone-15 (Pro)"));
+    }
+
+    private List<Long> search(String query, DeviceTextSearchMode mode) {
+        return index.search(DeviceTextIndex.words(query), mode, 0, 10);
+    }
+
+    private static DeviceView view(Long id, String name, String brand) {
+        return new DeviceView(id, name, brand, null, null, null);
+    }
+
+    private static Device device(Long id, String name, String brand) {
+        Device device = new Device(id, name, brand, Device.State.AVAILABLE, LocalDateTime.now());
+        device.setVersion(0L);
+        return device;
+    }
+}